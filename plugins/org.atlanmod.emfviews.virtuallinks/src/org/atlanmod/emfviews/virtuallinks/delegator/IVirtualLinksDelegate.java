@@ -22,7 +22,23 @@ import org.eclipse.emf.ecore.resource.Resource;
 
 public interface IVirtualLinksDelegate {
 
+  /**
+   * Prepare the links DSL file before the input models are loaded, so that a
+   * view can parse it while it loads its contributing models.  Called from
+   * another thread than init, and before it.  By default, nothing is done and
+   * init does all the work.
+   */
+  default void parse(URI linksDslFile) {}
+
   void init(URI linksDslFile, Map<String, Resource> inputModels);
   List<EObject> executeMatchRule(String ruleName, EObject param, boolean rightHand) throws Exception;
 
+  /**
+   * Whether the links DSL file has a rule named ruleName.  Called after init.
+   * By default, any rule may exist.
+   */
+  default boolean hasMatchRule(String ruleName) {
+    return true;
+  }
+
 }
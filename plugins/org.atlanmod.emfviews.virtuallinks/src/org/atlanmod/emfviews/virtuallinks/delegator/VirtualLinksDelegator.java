@@ -75,6 +75,11 @@ public class VirtualLinksDelegator {
     }
   }
 
+  /** Parse the matching model ahead of init.  See IVirtualLinksDelegate.parse. */
+  public void parse() {
+    delegate.parse(matchingModelURI);
+  }
+
   public void init(Map<String, Resource> contributingModels) {
     delegate.init(matchingModelURI, contributingModels);
   }
@@ -83,4 +88,8 @@ public class VirtualLinksDelegator {
     return delegate.executeMatchRule(ruleName, param, rightHand);
   }
 
+  public boolean hasMatchRule(String ruleName) {
+    return delegate.hasMatchRule(ruleName);
+  }
+
 }
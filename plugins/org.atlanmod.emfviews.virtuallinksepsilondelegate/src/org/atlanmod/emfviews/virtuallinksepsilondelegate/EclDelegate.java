@@ -73,9 +73,53 @@ public class EclDelegate implements IVirtualLinksDelegate {
     Object exec(Object ...args) throws EolRuntimeException;
   }
 
+  // Module parsed by parse, and not yet used by init
+  private EclModule parsed;
+  private URI parsedURI;
+
+  @Override
+  public void parse(URI linksDslURI) {
+    EclModule m = parseModule(linksDslURI);
+    synchronized (this) {
+      parsed = m;
+      parsedURI = linksDslURI;
+    }
+  }
+
   @Override
   public void init(URI linksDslURI, Map<String, Resource> inputModels) {
+    // Use the module prepared by parse if it is for the same file.  A module
+    // is used only once, since init adds the input models to its context.
+    synchronized (this) {
+      if (parsed != null && linksDslURI.equals(parsedURI)) {
+        module = parsed;
+      } else {
+        module = null;
+      }
+      parsed = null;
+      parsedURI = null;
+    }
+    if (module == null) {
+      module = parseModule(linksDslURI);
+    }
 
+    module.getContext().setOperationFactory(new EclOperationFactory());
+
+    // Add input models and grab the metamodel URI
+    for (Entry<String, Resource> e : inputModels.entrySet()) {
+      String name = e.getKey();
+      Resource modelResource = e.getValue();
+      EmfModel inputModel = new InMemoryEmfModel(name, modelResource);
+      module.getContext().getModelRepository().addModel(inputModel);
+    }
+
+    compiledRules = new HashMap<>();
+    for (MatchRule m: module.getMatchRules()) {
+      compiledRules.put(m.getName(), EclPartialEvaluator.compileMatchRule(m, module.getContext()));
+    }
+  }
+
+  private static EclModule parseModule(URI linksDslURI) {
     File f;
 
     // Need to turn an EMF URI into an actual File location. We cannot use the
@@ -92,7 +136,7 @@ public class EclDelegate implements IVirtualLinksDelegate {
     }
 
     // Prepare the ECL Module
-    module = new EclModule();
+    EclModule module = new EclModule();
     try {
       module.parse(f);
       if (module.getParseProblems().size() > 0) {
@@ -106,20 +150,7 @@ public class EclDelegate implements IVirtualLinksDelegate {
       throw new RuntimeException("Error in parsing ECL file", ex);
     }
 
-    module.getContext().setOperationFactory(new EclOperationFactory());
-
-    // Add input models and grab the metamodel URI
-    for (Entry<String, Resource> e : inputModels.entrySet()) {
-      String name = e.getKey();
-      Resource modelResource = e.getValue();
-      EmfModel inputModel = new InMemoryEmfModel(name, modelResource);
-      module.getContext().getModelRepository().addModel(inputModel);
-    }
-
-    compiledRules = new HashMap<>();
-    for (MatchRule m: module.getMatchRules()) {
-      compiledRules.put(m.getName(), EclPartialEvaluator.compileMatchRule(m, module.getContext()));
-    }
+    return module;
   }
 
   /**
@@ -166,4 +197,9 @@ public class EclDelegate implements IVirtualLinksDelegate {
       .collect(Collectors.toList());
   }
 
+  @Override
+  public boolean hasMatchRule(String ruleName) {
+    return compiledRules != null && compiledRules.containsKey(ruleName);
+  }
+
 }
@@ -0,0 +1,339 @@
+/*******************************************************************************
+ * Copyright (c) 2017--2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import org.atlanmod.emfviews.elements.VirtualEReference;
+import org.atlanmod.emfviews.util.OpenAddressingIndex;
+
+/**
+ * Holds the values of many-valued virtual associations of a view, outside of
+ * its virtual objects.
+ *
+ * Normally, each link of a virtual association is an element of a list in the
+ * source virtual object, and another one in the target if the association has
+ * an opposite.  Both objects are then retained by the view (see
+ * View@VirtualCache).  The store instead numbers the concrete objects taking
+ * part in links, and keeps the links as arrays of ints outside of the Java
+ * heap: for each association, the targets of each source are contiguous
+ * (compressed sparse rows), and likewise for the sources of each target.  A
+ * link costs 8 bytes, and the garbage collector never sees it.
+ *
+ * Virtual objects serve the values of stored associations from the store,
+ * without being retained, until the values are modified (see VirtualEObject).
+ * The store is built once, with the view, and never changes.
+ */
+public final class AssociationStore {
+
+  private final Virtualizer virtualizer;
+  private final EObject[] objects;        // concrete objects, by number
+  private final OpenAddressingIndex ids;  // from concrete object to number
+  private final OpenAddressingIndex featureIds;
+  private final Rows[] forward;           // by feature: source -> targets
+  private final Rows[] inverse;           // by feature: target -> sources
+  private final int links;
+
+  private AssociationStore(Virtualizer virtualizer, EObject[] objects, EReference[] features,
+                           Rows[] forward, Rows[] inverse, int links) {
+    this.virtualizer = virtualizer;
+    this.objects = objects;
+    this.forward = forward;
+    this.inverse = inverse;
+    this.links = links;
+
+    ids = OpenAddressingIndex.byIdentity(objects.length);
+    for (int i = 0; i < objects.length; ++i) {
+      ids.putIfAbsent(objects[i], i);
+    }
+    featureIds = OpenAddressingIndex.byIdentity(features.length);
+    for (int i = 0; i < features.length; ++i) {
+      featureIds.putIfAbsent(features[i], i);
+    }
+  }
+
+  /**
+   * Whether the values of feature can be kept in a store.  Only many-valued
+   * virtual associations qualify, and their opposite, if any, must be one as
+   * well.
+   */
+  public static boolean canStore(EStructuralFeature feature) {
+    if (!(feature instanceof VirtualEReference) || !feature.isMany()) {
+      return false;
+    }
+    VirtualEReference ref = (VirtualEReference) feature;
+    if (!ref.isSynthetic()) {
+      return false;
+    }
+    EReference opposite = ref.getEOpposite();
+    return opposite == null
+      || (opposite == ref.virtualOpposite && opposite.isMany()
+          && ((VirtualEReference) opposite).isSynthetic());
+  }
+
+  /**
+   * The virtual values of feature in the concrete object o, or null if the
+   * store has none.  Sources of links of the opposite feature come after the
+   * targets of links of feature, as if the list kept its opposite in sync.
+   */
+  public List<EObject> get(EObject o, EStructuralFeature feature) {
+    int id = ids.get(o);
+    if (id < 0) {
+      return null;
+    }
+
+    int f = featureIds.get(feature);
+    Rows fwd = f >= 0 ? forward[f] : null;
+    int fr = fwd != null ? fwd.row(id) : -1;
+
+    Rows inv = null;
+    int ir = -1;
+    if (feature instanceof EReference) {
+      int g = featureIds.get(((EReference) feature).getEOpposite());
+      inv = g >= 0 ? inverse[g] : null;
+      ir = inv != null ? inv.row(id) : -1;
+    }
+
+    if (fr < 0 && ir < 0) {
+      return null;
+    }
+    return new Values(fwd, fr, inv, ir);
+  }
+
+  /** Number of links in this store. */
+  public int size() {
+    return links;
+  }
+
+  /** Number of bytes this store holds outside of the Java heap. */
+  public long offHeapBytes() {
+    long n = 0;
+    for (Rows r : forward) {
+      n += r.bytes();
+    }
+    for (Rows r : inverse) {
+      if (r != null) {
+        n += r.bytes();
+      }
+    }
+    return n;
+  }
+
+  // The values of one object, read from the rows of a feature and of its
+  // opposite
+  private final class Values extends AbstractList<EObject> implements RandomAccess {
+    private final Rows fwd;
+    private final int fwdStart;
+    private final int fwdSize;
+    private final Rows inv;
+    private final int invStart;
+    private final int invSize;
+
+    Values(Rows fwd, int fwdRow, Rows inv, int invRow) {
+      this.fwd = fwd;
+      this.fwdStart = fwdRow >= 0 ? fwd.start(fwdRow) : 0;
+      this.fwdSize = fwdRow >= 0 ? fwd.end(fwdRow) - fwdStart : 0;
+      this.inv = inv;
+      this.invStart = invRow >= 0 ? inv.start(invRow) : 0;
+      this.invSize = invRow >= 0 ? inv.end(invRow) - invStart : 0;
+    }
+
+    @Override
+    public EObject get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+      }
+      int id = index < fwdSize ? fwd.value(fwdStart + index)
+                               : inv.value(invStart + index - fwdSize);
+      return virtualizer.getVirtual(objects[id]);
+    }
+
+    @Override
+    public int size() {
+      return fwdSize + invSize;
+    }
+  }
+
+  // Compressed sparse rows: keys that have values, in ascending order, and the
+  // values of each key, contiguous and in the order they were added.  The
+  // layout of the buffer is:
+  //
+  //   rowCount keys[rowCount] offsets[rowCount + 1] values[]
+  private static final class Rows {
+    private final IntBuffer buf;
+    private final int rows;
+
+    // Build from n (key, value) pairs, with keys in [0, keySpace)
+    Rows(int[] keys, int[] values, int n, int keySpace) {
+      // Counting sort, which keeps the order of the values of each key
+      int[] start = new int[keySpace + 1];
+      for (int i = 0; i < n; ++i) {
+        ++start[keys[i] + 1];
+      }
+      int r = 0;
+      for (int k = 0; k < keySpace; ++k) {
+        if (start[k + 1] > 0) {
+          ++r;
+        }
+        start[k + 1] += start[k];
+      }
+      rows = r;
+      buf = allocate(2L + 2L * rows + n);
+
+      buf.put(0, rows);
+      r = 0;
+      for (int k = 0; k < keySpace; ++k) {
+        if (start[k + 1] > start[k]) {
+          buf.put(1 + r, k);
+          buf.put(1 + rows + r, start[k]);
+          ++r;
+        }
+      }
+      buf.put(1 + 2 * rows, n);
+
+      int base = 2 + 2 * rows;
+      for (int i = 0; i < n; ++i) {
+        buf.put(base + start[keys[i]]++, values[i]);
+      }
+    }
+
+    private static IntBuffer allocate(long ints) {
+      if (ints * 4 > Integer.MAX_VALUE) {
+        throw new IllegalStateException("Too many links for an association store: " + ints);
+      }
+      return ByteBuffer.allocateDirect((int) ints * 4).order(ByteOrder.nativeOrder()).asIntBuffer();
+    }
+
+    // Row of key, or -1 if key has no values
+    int row(int key) {
+      int lo = 0;
+      int hi = rows - 1;
+      while (lo <= hi) {
+        int mid = (lo + hi) >>> 1;
+        int k = buf.get(1 + mid);
+        if (k < key) {
+          lo = mid + 1;
+        } else if (k > key) {
+          hi = mid - 1;
+        } else {
+          return mid;
+        }
+      }
+      return -1;
+    }
+
+    int start(int row) {
+      return buf.get(1 + rows + row);
+    }
+
+    int end(int row) {
+      return buf.get(2 + rows + row);
+    }
+
+    int value(int i) {
+      return buf.get(2 + 2 * rows + i);
+    }
+
+    long bytes() {
+      return buf.capacity() * 4L;
+    }
+  }
+
+  /**
+   * Collects links while a view is built.  Links are kept in growable arrays
+   * until build, which sorts them into rows.
+   */
+  static final class Builder {
+    private final Map<EObject, Integer> ids = new IdentityHashMap<>();
+    private final List<EObject> objects = new ArrayList<>();
+    private final Map<EStructuralFeature, Integer> featureIds = new IdentityHashMap<>();
+    private final List<EReference> features = new ArrayList<>();
+
+    private int[] sources = new int[16];
+    private int[] targets = new int[16];
+    private int[] featureOf = new int[16];
+    private int size = 0;
+
+    /** Add a link from source to target.  See canStore for valid features. */
+    void add(EObject source, EStructuralFeature feature, EObject target) {
+      if (size == sources.length) {
+        sources = Arrays.copyOf(sources, size * 2);
+        targets = Arrays.copyOf(targets, size * 2);
+        featureOf = Arrays.copyOf(featureOf, size * 2);
+      }
+      sources[size] = id(source);
+      targets[size] = id(target);
+      featureOf[size] = featureIds.computeIfAbsent(feature, f -> {
+        features.add((EReference) f);
+        return features.size() - 1;
+      });
+      ++size;
+    }
+
+    private int id(EObject o) {
+      return ids.computeIfAbsent(o, k -> {
+        objects.add(k);
+        return objects.size() - 1;
+      });
+    }
+
+    int size() {
+      return size;
+    }
+
+    AssociationStore build(Virtualizer virtualizer) {
+      EReference[] fs = features.toArray(new EReference[0]);
+      Rows[] forward = new Rows[fs.length];
+      Rows[] inverse = new Rows[fs.length];
+
+      int[] keys = new int[size];
+      int[] values = new int[size];
+      for (int f = 0; f < fs.length; ++f) {
+        int n = 0;
+        for (int i = 0; i < size; ++i) {
+          if (featureOf[i] == f) {
+            keys[n] = sources[i];
+            values[n] = targets[i];
+            ++n;
+          }
+        }
+        forward[f] = new Rows(keys, values, n, objects.size());
+        // Only features with an opposite are navigated backwards
+        if (fs[f].getEOpposite() != null) {
+          inverse[f] = new Rows(values, keys, n, objects.size());
+        }
+      }
+
+      return new AssociationStore(virtualizer, objects.toArray(new EObject[0]), fs, forward,
+                                  inverse, size);
+    }
+  }
+
+}
@@ -0,0 +1,221 @@
+/*******************************************************************************
+ * Copyright (c) 2017--2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.eclipse.emf.common.CommonPlugin;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+
+/**
+ * Loads XML resources (XMI models, Ecore metamodels) through a copy in EMF's
+ * binary resource format, kept next to the source file.
+ *
+ * Parsing XML is usually the most expensive part of loading a large model.  The
+ * first load parses the source file as usual, and saves the resource in binary
+ * form to a sidecar file (the source file with the added '.binary' extension).
+ * Later loads read the sidecar instead, as long as the source file has not
+ * changed.  The resource is the same as a regular load: an XMLResource with the
+ * URI of the source file, that saves back to XML.
+ *
+ * Sidecars that are stale, truncated or unreadable are ignored, and rebuilt from
+ * the source.  Resources with IDs (e.g., xmi:id) get no sidecar, since the binary
+ * format does not keep them and objects could not be found by their ID anymore.
+ */
+final class BinaryResourceCache {
+  /*
+   * A sidecar is a header (magic, version, SHA-256 hash of the source file),
+   * followed by the resource as saved by XMLResource with OPTION_BINARY.  Any
+   * change to the layout must bump VERSION.
+   */
+
+  static final int MAGIC = 0x45564243; // "EVBC"
+  static final int VERSION = 1;
+  static final String EXTENSION = "binary";
+
+  private static final Map<String, Object> BINARY =
+    Collections.singletonMap(XMLResource.OPTION_BINARY, Boolean.TRUE);
+
+  private BinaryResourceCache() {}
+
+  /**
+   * Load the resource at uri in rs, from its sidecar if it is current, or else
+   * from the source file, in which case the sidecar is written.  Failures to
+   * write the sidecar are passed to warn.  Failures to load the source are
+   * thrown as with ResourceSet.getResource.
+   */
+  static Resource load(ResourceSet rs, URI uri, Consumer<String> warn) {
+    URIConverter converter = rs.getURIConverter();
+    URI sidecar = uri.appendFileExtension(EXTENSION);
+
+    byte[] hash;
+    try {
+      hash = hash(converter, uri);
+    } catch (IOException ex) {
+      // Let the regular load report the missing source
+      return rs.getResource(uri, true);
+    }
+
+    Resource r = rs.createResource(uri);
+    if (r instanceof XMLResource && read(r, sidecar, hash, converter)) {
+      return r;
+    }
+
+    // Fall back to the source.  This loads the resource created above, if any.
+    r = rs.getResource(uri, true);
+    if (r instanceof XMLResource && r.getErrors().isEmpty() && !hasIDs((XMLResource) r)) {
+      write(r, sidecar, hash, converter, warn);
+    }
+    return r;
+  }
+
+  // Load r from the sidecar at uri if it matches hash.  Return whether r was
+  // loaded.
+  private static boolean read(Resource r, URI uri, byte[] hash, URIConverter converter) {
+    if (!converter.exists(uri, null)) {
+      return false;
+    }
+
+    try (InputStream in = new BufferedInputStream(converter.createInputStream(uri))) {
+      DataInputStream data = new DataInputStream(in);
+      if (data.readInt() != MAGIC || data.readInt() != VERSION) {
+        return false;
+      }
+      int n = data.readInt();
+      if (n != hash.length) {
+        return false;
+      }
+      byte[] h = new byte[n];
+      data.readFully(h);
+      if (!Arrays.equals(h, hash)) {
+        return false;
+      }
+
+      r.load(in, BINARY);
+      return true;
+    } catch (IOException | RuntimeException ex) {
+      // A truncated or corrupt sidecar is rebuilt, like a stale one
+      r.unload();
+      return false;
+    }
+  }
+
+  // Write the sidecar of r at uri
+  private static void write(Resource r, URI uri, byte[] hash, URIConverter converter,
+                            Consumer<String> warn) {
+    try {
+      replace(uri, converter, out -> write(r, hash, out));
+    } catch (IOException | RuntimeException ex) {
+      // The resource is fine, we just won't be able to load it faster next time
+      warn.accept(String.format("Failed to write binary cache '%s': %s", uri, ex));
+    }
+  }
+
+  /** Contents of a file written by replace. */
+  interface Contents {
+    void write(OutputStream out) throws IOException;
+  }
+
+  /**
+   * Write contents to the file at uri.  Files are written to a temporary file
+   * first, and moved in place, so that concurrent readers and crashes never
+   * leave a partial file behind.  Other URIs (e.g., in archives) are written in
+   * place, so readers must still reject truncated contents.
+   */
+  static void replace(URI uri, URIConverter converter, Contents contents) throws IOException {
+    URI file = CommonPlugin.asLocalURI(converter.normalize(uri));
+    if (file.isFile()) {
+      Path target = Paths.get(file.toFileString());
+      Path tmp = Files.createTempFile(target.getParent(), target.getFileName() + ".", ".tmp");
+      try {
+        try (OutputStream out = Files.newOutputStream(tmp)) {
+          contents.write(out);
+        }
+        move(tmp, target);
+      } finally {
+        Files.deleteIfExists(tmp);
+      }
+    } else {
+      try (OutputStream out = converter.createOutputStream(uri)) {
+        contents.write(out);
+      }
+    }
+  }
+
+  private static void write(Resource r, byte[] hash, OutputStream o) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(o));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(hash.length);
+    out.write(hash);
+    r.save(out, BINARY);
+    out.flush();
+  }
+
+  private static void move(Path from, Path to) throws IOException {
+    try {
+      Files.move(from, to, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException ex) {
+      // Not atomic, but the file is only ever complete once in place
+      Files.move(from, to, StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  private static boolean hasIDs(XMLResource r) {
+    for (Iterator<EObject> it = r.getAllContents(); it.hasNext();) {
+      if (r.getID(it.next()) != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static byte[] hash(URIConverter converter, URI uri) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IOException(ex);
+    }
+    ViewpointResource.digest(md, converter, uri);
+    return md.digest();
+  }
+
+}
@@ -0,0 +1,596 @@
+/*******************************************************************************
+ * Copyright (c) 2017--2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.emf.common.CommonPlugin;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.URIConverter;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+
+import org.atlanmod.emfviews.virtuallinks.Association;
+import org.atlanmod.emfviews.virtuallinks.Concept;
+import org.atlanmod.emfviews.virtuallinks.ConcreteAssociation;
+import org.atlanmod.emfviews.virtuallinks.ConcreteConcept;
+import org.atlanmod.emfviews.virtuallinks.ConcreteElement;
+import org.atlanmod.emfviews.virtuallinks.ContributingModel;
+import org.atlanmod.emfviews.virtuallinks.Filter;
+import org.atlanmod.emfviews.virtuallinks.VirtualAssociation;
+import org.atlanmod.emfviews.virtuallinks.VirtualConcept;
+import org.atlanmod.emfviews.virtuallinks.VirtualLink;
+import org.atlanmod.emfviews.virtuallinks.VirtualLinksFactory;
+import org.atlanmod.emfviews.virtuallinks.VirtualProperty;
+import org.atlanmod.emfviews.virtuallinks.WeavingModel;
+
+/**
+ * A compact binary format for weaving models.
+ *
+ * XMI spends one XML element per link, and repeats the model URIs and paths of
+ * concrete elements.  The binary format interns all strings in a table, and
+ * stores links as fixed-width records referring to strings and elements by
+ * index.  It holds everything a WeavingModel does, so weaving models can be
+ * converted back and forth (see write, read and convert).
+ *
+ * ViewpointResource and ViewResource recognize binary weaving models by their
+ * header, whatever their file extension.  Views read the links straight from
+ * the file, memory-mapped when it is local, without creating EObjects (see
+ * WeavingModelStream).
+ */
+public final class BinaryWeavingModel {
+  /*
+   * The layout is a sequence of big-endian ints:
+   *
+   *   header   := MAGIC VERSION flags name
+   *   strings  := count (byteLength utf8Bytes)*
+   *   models   := count (uri firstElement elementCount)*
+   *   elements := count (kind model path)*
+   *   links    := count (kind name a b c d e f)*
+   *   refs     := count ref*
+   *
+   * Strings are indices in the string table, or NONE for null.  The elements
+   * of a model are contiguous.  A reference to a concept or association is an
+   * element index, or -(link index + 1) for a virtual element, or NONE.  The
+   * fields of links depend on their kind:
+   *
+   *   CONCEPT      a: first super, b: super count, c: first sub, d: sub count
+   *                (ranges of the refs table)
+   *   PROPERTY     a: parent, b: type, c: optional
+   *   ASSOCIATION  a: source, b: target, c: lower bound, d: upper bound,
+   *                e: opposite, f: composition
+   *   FILTER       a: target element
+   *
+   * Any change to the layout must bump VERSION, so that old files are
+   * rejected rather than misread.
+   */
+
+  static final int MAGIC = 0x45565742; // "EVWB"
+  static final int VERSION = 1;
+  static final int NONE = Integer.MIN_VALUE;
+
+  private static final int MODEL_FIELDS = 3;
+  private static final int ELEMENT_FIELDS = 3;
+  private static final int LINK_FIELDS = 8;
+
+  private static final int WHITELIST = 1; // flag
+
+  // Kinds of elements
+  static final int CONCRETE_ELEMENT = 0;
+  static final int CONCRETE_CONCEPT = 1;
+  static final int CONCRETE_ASSOCIATION = 2;
+
+  // Kinds of links
+  static final int CONCEPT = 0;
+  static final int PROPERTY = 1;
+  static final int ASSOCIATION = 2;
+  static final int FILTER = 3;
+
+  private BinaryWeavingModel() {}
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Public API
+
+  /** Whether the file at uri is a binary weaving model. */
+  public static boolean isBinary(URI uri) {
+    try (DataInputStream in = new DataInputStream(URIConverter.INSTANCE.createInputStream(uri))) {
+      return in.readInt() == MAGIC;
+    } catch (IOException ex) {
+      // Missing or too short: certainly not ours
+      return false;
+    }
+  }
+
+  /** Write weaving model wm to out in binary form. */
+  public static void write(WeavingModel wm, OutputStream out) throws IOException {
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+    new Writer(wm).write(data);
+    data.flush();
+  }
+
+  /**
+   * Read the binary weaving model at uri.  The weaving model is put in a
+   * resource with that URI.
+   */
+  public static WeavingModel read(URI uri) throws IOException {
+    WeavingModel wm = new Reader(map(uri), uri).toWeavingModel();
+    Resource r = new ResourceImpl(uri);
+    r.getContents().add(wm);
+    return wm;
+  }
+
+  /**
+   * Convert the weaving model at uri 'from', in any format EMF can load (e.g.,
+   * XMI), to a binary weaving model at uri 'to'.
+   */
+  public static void convert(URI from, URI to) throws IOException {
+    Resource r = new ResourceSetImpl().getResource(from, true);
+    EObject wm = r.getContents().get(0);
+    if (!(wm instanceof WeavingModel)) {
+      throw new IllegalArgumentException(String.format("Resource at '%s' is not an instance of WeavingModel", from));
+    }
+    try (OutputStream out = URIConverter.INSTANCE.createOutputStream(to)) {
+      write((WeavingModel) wm, out);
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Streaming, for views
+
+  static WeavingModelStream stream(URI uri) throws IOException {
+    long start = System.nanoTime();
+    Reader reader = new Reader(map(uri), uri);
+    long scanNanos = System.nanoTime() - start;
+
+    return new WeavingModelStream() {
+      @Override
+      long getScanNanos() {
+        return scanNanos;
+      }
+
+      @Override
+      void read(Handler handler) throws IOException {
+        reader.stream(handler);
+      }
+    };
+  }
+
+  // Map the file at uri in memory if it is local, or read it whole otherwise
+  private static ByteBuffer map(URI uri) throws IOException {
+    URI local = CommonPlugin.asLocalURI(uri);
+    if (local.isFile()) {
+      try (FileChannel ch = FileChannel.open(Paths.get(local.toFileString()), StandardOpenOption.READ)) {
+        return ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+      }
+    }
+
+    try (InputStream in = URIConverter.INSTANCE.createInputStream(uri)) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        out.write(buf, 0, n);
+      }
+      return ByteBuffer.wrap(out.toByteArray());
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Writing
+
+  private static class Writer {
+    private final WeavingModel wm;
+    private final Map<String, Integer> strings = new LinkedHashMap<>();
+    private final Map<EObject, Integer> elements = new IdentityHashMap<>();
+    private final Map<EObject, Integer> links = new IdentityHashMap<>();
+    private final List<Integer> refs = new ArrayList<>();
+
+    Writer(WeavingModel wm) {
+      this.wm = wm;
+    }
+
+    private int string(String s) {
+      if (s == null) {
+        return NONE;
+      }
+      return strings.computeIfAbsent(s, k -> strings.size());
+    }
+
+    private int ref(EObject o) throws IOException {
+      if (o == null) {
+        return NONE;
+      }
+      Integer i = elements.get(o);
+      if (i != null) {
+        return i;
+      }
+      i = links.get(o);
+      if (i != null) {
+        return -(i + 1);
+      }
+      throw new IOException(String.format("Element '%s' does not belong to weaving model '%s'", o, wm.getName()));
+    }
+
+    void write(DataOutputStream out) throws IOException {
+      // Number elements and links first, since links can refer to links
+      // further down
+      List<ConcreteElement> allElements = new ArrayList<>();
+      for (ContributingModel m : wm.getContributingModels()) {
+        for (ConcreteElement e : m.getConcreteElements()) {
+          elements.put(e, allElements.size());
+          allElements.add(e);
+        }
+      }
+      List<VirtualLink> allLinks = wm.getVirtualLinks();
+      for (int i = 0; i < allLinks.size(); ++i) {
+        links.put(allLinks.get(i), i);
+      }
+
+      int name = string(wm.getName());
+
+      int[] models = new int[wm.getContributingModels().size() * MODEL_FIELDS];
+      int first = 0;
+      for (int i = 0; i < wm.getContributingModels().size(); ++i) {
+        ContributingModel m = wm.getContributingModels().get(i);
+        models[i * MODEL_FIELDS] = string(m.getURI());
+        models[i * MODEL_FIELDS + 1] = first;
+        models[i * MODEL_FIELDS + 2] = m.getConcreteElements().size();
+        first += m.getConcreteElements().size();
+      }
+
+      int[] elems = new int[allElements.size() * ELEMENT_FIELDS];
+      for (int i = 0; i < allElements.size(); ++i) {
+        ConcreteElement e = allElements.get(i);
+        int kind = e instanceof ConcreteConcept ? CONCRETE_CONCEPT
+                 : e instanceof ConcreteAssociation ? CONCRETE_ASSOCIATION
+                 : CONCRETE_ELEMENT;
+        elems[i * ELEMENT_FIELDS] = kind;
+        elems[i * ELEMENT_FIELDS + 1] = wm.getContributingModels().indexOf(e.getModel());
+        elems[i * ELEMENT_FIELDS + 2] = string(e.getPath());
+      }
+
+      int[] recs = new int[allLinks.size() * LINK_FIELDS];
+      for (int i = 0; i < allLinks.size(); ++i) {
+        encode(allLinks.get(i), recs, i * LINK_FIELDS);
+      }
+
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(wm.isWhitelist() ? WHITELIST : 0);
+      out.writeInt(name);
+
+      out.writeInt(strings.size());
+      for (String s : strings.keySet()) {
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(b.length);
+        out.write(b);
+      }
+
+      writeInts(out, models, wm.getContributingModels().size());
+      writeInts(out, elems, allElements.size());
+      writeInts(out, recs, allLinks.size());
+      out.writeInt(refs.size());
+      for (int r : refs) {
+        out.writeInt(r);
+      }
+    }
+
+    private void encode(VirtualLink l, int[] recs, int at) throws IOException {
+      recs[at + 1] = string(l.getName());
+
+      if (l instanceof VirtualConcept) {
+        VirtualConcept c = (VirtualConcept) l;
+        recs[at] = CONCEPT;
+        recs[at + 2] = refs.size();
+        recs[at + 3] = c.getSuperConcepts().size();
+        for (Concept s : c.getSuperConcepts()) {
+          refs.add(ref(s));
+        }
+        recs[at + 4] = refs.size();
+        recs[at + 5] = c.getSubConcepts().size();
+        for (Concept s : c.getSubConcepts()) {
+          refs.add(ref(s));
+        }
+      } else if (l instanceof VirtualProperty) {
+        VirtualProperty p = (VirtualProperty) l;
+        recs[at] = PROPERTY;
+        recs[at + 2] = ref(p.getParent());
+        recs[at + 3] = string(p.getType());
+        recs[at + 4] = p.isOptional() ? 1 : 0;
+      } else if (l instanceof VirtualAssociation) {
+        VirtualAssociation a = (VirtualAssociation) l;
+        recs[at] = ASSOCIATION;
+        recs[at + 2] = ref(a.getSource());
+        recs[at + 3] = ref(a.getTarget());
+        recs[at + 4] = a.getLowerBound();
+        recs[at + 5] = a.getUpperBound();
+        recs[at + 6] = ref(a.getOpposite());
+        recs[at + 7] = a.isComposition() ? 1 : 0;
+      } else if (l instanceof Filter) {
+        recs[at] = FILTER;
+        recs[at + 2] = ref(((Filter) l).getTarget());
+      } else {
+        throw new IOException("Unknown virtual link type: " + l.eClass().getName());
+      }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] ints, int count) throws IOException {
+      out.writeInt(count);
+      for (int i : ints) {
+        out.writeInt(i);
+      }
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Reading
+
+  // Reads records in place, with absolute gets, so it never copies the file.
+  // Only the string table is scanned up front, to find where each string
+  // starts.
+  private static class Reader {
+    private final ByteBuffer buf;
+    private final URI uri;
+
+    private final int flags;
+    private final int name;
+    private final int[] stringOffsets;
+    private final String[] strings; // decoded on demand
+    private final int modelCount, modelsAt;
+    private final int elementCount, elementsAt;
+    private final int linkCount, linksAt;
+    private final int refCount, refsAt;
+
+    Reader(ByteBuffer buf, URI uri) throws IOException {
+      this.buf = buf;
+      this.uri = uri;
+
+      try {
+        if (buf.getInt() != MAGIC) {
+          throw new IOException(String.format("'%s' is not a binary weaving model", uri));
+        }
+        int version = buf.getInt();
+        if (version != VERSION) {
+          throw new IOException(String.format("Unsupported version %d of binary weaving model '%s'", version, uri));
+        }
+        flags = buf.getInt();
+        name = buf.getInt();
+
+        int n = buf.getInt();
+        stringOffsets = new int[n];
+        strings = new String[n];
+        for (int i = 0; i < n; ++i) {
+          stringOffsets[i] = buf.position();
+          int length = buf.getInt();
+          buf.position(buf.position() + length);
+        }
+
+        modelCount = buf.getInt();
+        modelsAt = skip(modelCount * MODEL_FIELDS);
+        elementCount = buf.getInt();
+        elementsAt = skip(elementCount * ELEMENT_FIELDS);
+        linkCount = buf.getInt();
+        linksAt = skip(linkCount * LINK_FIELDS);
+        refCount = buf.getInt();
+        refsAt = skip(refCount);
+      } catch (BufferUnderflowException | IllegalArgumentException ex) {
+        throw new IOException(String.format("Truncated binary weaving model '%s'", uri), ex);
+      }
+    }
+
+    // Skip count ints, and return where they start
+    private int skip(int count) {
+      int at = buf.position();
+      buf.position(at + count * 4);
+      return at;
+    }
+
+    private String string(int i) {
+      if (i == NONE) {
+        return null;
+      }
+      String s = strings[i];
+      if (s == null) {
+        int at = stringOffsets[i];
+        byte[] b = new byte[buf.getInt(at)];
+        ByteBuffer d = buf.duplicate();
+        d.position(at + 4);
+        d.get(b);
+        s = strings[i] = new String(b, StandardCharsets.UTF_8);
+      }
+      return s;
+    }
+
+    private int model(int m, int field) {
+      return buf.getInt(modelsAt + (m * MODEL_FIELDS + field) * 4);
+    }
+
+    private int element(int e, int field) {
+      return buf.getInt(elementsAt + (e * ELEMENT_FIELDS + field) * 4);
+    }
+
+    private int link(int l, int field) {
+      return buf.getInt(linksAt + (l * LINK_FIELDS + field) * 4);
+    }
+
+    private int ref(int r) {
+      return buf.getInt(refsAt + r * 4);
+    }
+
+    // Hand the links to handler, as View does with XMI weaving models
+    void stream(WeavingModelStream.Handler handler) throws IOException {
+      WeavingModelStream.Element[] elements = new WeavingModelStream.Element[elementCount];
+
+      for (int l = 0; l < linkCount; ++l) {
+        switch (link(l, 0)) {
+        case PROPERTY:
+          handler.property(concrete(elements, link(l, 2)), string(link(l, 1)),
+                           string(link(l, 3)));
+          break;
+
+        case ASSOCIATION:
+          handler.association(concrete(elements, link(l, 2)), string(link(l, 1)),
+                              concrete(elements, link(l, 3)));
+          break;
+
+        case FILTER:
+          handler.filter(concrete(elements, link(l, 2)));
+          break;
+
+        default:
+          // Concepts only matter to viewpoints
+        }
+      }
+    }
+
+    private WeavingModelStream.Element concrete(WeavingModelStream.Element[] elements, int ref)
+      throws IOException {
+      if (ref < 0 || ref >= elementCount) {
+        throw new IOException(String.format("Links of view weaving model '%s' must refer to concrete elements", uri));
+      }
+      WeavingModelStream.Element e = elements[ref];
+      if (e == null) {
+        e = elements[ref] = new WeavingModelStream.Element(string(model(element(ref, 1), 0)),
+                                                            string(element(ref, 2)));
+      }
+      return e;
+    }
+
+    WeavingModel toWeavingModel() throws IOException {
+      VirtualLinksFactory f = VirtualLinksFactory.eINSTANCE;
+      WeavingModel wm = f.createWeavingModel();
+      wm.setName(string(name));
+      wm.setWhitelist((flags & WHITELIST) != 0);
+
+      ConcreteElement[] elements = new ConcreteElement[elementCount];
+      for (int m = 0; m < modelCount; ++m) {
+        ContributingModel cm = f.createContributingModel();
+        cm.setURI(string(model(m, 0)));
+        int first = model(m, 1);
+        for (int e = first; e < first + model(m, 2); ++e) {
+          switch (element(e, 0)) {
+          case CONCRETE_CONCEPT:
+            elements[e] = f.createConcreteConcept();
+            break;
+          case CONCRETE_ASSOCIATION:
+            elements[e] = f.createConcreteAssociation();
+            break;
+          default:
+            elements[e] = f.createConcreteElement();
+          }
+          elements[e].setPath(string(element(e, 2)));
+          cm.getConcreteElements().add(elements[e]);
+        }
+        wm.getContributingModels().add(cm);
+      }
+
+      // Create all links before setting their references, which can point
+      // further down
+      VirtualLink[] links = new VirtualLink[linkCount];
+      for (int l = 0; l < linkCount; ++l) {
+        switch (link(l, 0)) {
+        case CONCEPT:
+          links[l] = f.createVirtualConcept();
+          break;
+        case PROPERTY:
+          links[l] = f.createVirtualProperty();
+          break;
+        case ASSOCIATION:
+          links[l] = f.createVirtualAssociation();
+          break;
+        case FILTER:
+          links[l] = f.createFilter();
+          break;
+        default:
+          throw new IOException(String.format("Unknown link kind %d in binary weaving model '%s'", link(l, 0), uri));
+        }
+        links[l].setName(string(link(l, 1)));
+      }
+
+      for (int l = 0; l < linkCount; ++l) {
+        VirtualLink vl = links[l];
+        switch (link(l, 0)) {
+        case CONCEPT: {
+          VirtualConcept c = (VirtualConcept) vl;
+          for (int r = link(l, 2); r < link(l, 2) + link(l, 3); ++r) {
+            c.getSuperConcepts().add((Concept) resolve(ref(r), elements, links));
+          }
+          for (int r = link(l, 4); r < link(l, 4) + link(l, 5); ++r) {
+            c.getSubConcepts().add((Concept) resolve(ref(r), elements, links));
+          }
+          break;
+        }
+        case PROPERTY: {
+          VirtualProperty p = (VirtualProperty) vl;
+          p.setParent((Concept) resolve(link(l, 2), elements, links));
+          p.setType(string(link(l, 3)));
+          p.setOptional(link(l, 4) != 0);
+          break;
+        }
+        case ASSOCIATION: {
+          VirtualAssociation a = (VirtualAssociation) vl;
+          a.setSource((Concept) resolve(link(l, 2), elements, links));
+          a.setTarget((Concept) resolve(link(l, 3), elements, links));
+          a.setLowerBound(link(l, 4));
+          a.setUpperBound(link(l, 5));
+          a.setOpposite((Association) resolve(link(l, 6), elements, links));
+          a.setComposition(link(l, 7) != 0);
+          break;
+        }
+        case FILTER:
+          ((Filter) vl).setTarget((ConcreteElement) resolve(link(l, 2), elements, links));
+          break;
+        }
+        wm.getVirtualLinks().add(vl);
+      }
+
+      return wm;
+    }
+
+    private EObject resolve(int ref, ConcreteElement[] elements, VirtualLink[] links)
+      throws IOException {
+      if (ref == NONE) {
+        return null;
+      }
+      try {
+        return ref >= 0 ? elements[ref] : links[-ref - 1];
+      } catch (ArrayIndexOutOfBoundsException ex) {
+        throw new IOException(String.format("Invalid reference %d in binary weaving model '%s'", ref, uri), ex);
+      }
+    }
+  }
+
+}
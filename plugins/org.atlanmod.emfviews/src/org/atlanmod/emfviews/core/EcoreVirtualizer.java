@@ -59,4 +59,27 @@ public interface EcoreVirtualizer {
   VirtualEGenericType getVirtual(EGenericType o);
 
   boolean isWhitelist();
+
+  /**
+   * A counter that changes whenever the virtual metamodel changes: a virtual
+   * feature or supertype is added, or the visibility of an element changes.
+   * Virtual elements use it to know when their cached lists are stale.
+   */
+  int getEpoch();
+
+  /** Signal that the virtual metamodel has changed. */
+  void advanceEpoch();
+
+  /**
+   * Whether the virtual metamodel is sealed.  A sealed metamodel does not
+   * change anymore: virtual elements can keep their cached lists for good, and
+   * throw when asked to change.
+   */
+  boolean isSealed();
+
+  /**
+   * Return a new index for a virtual class.  Indexes are dense, starting at 0,
+   * so virtual classes can use them to represent sets of classes as bit sets.
+   */
+  int newClassIndex();
 }
@@ -0,0 +1,373 @@
+/*******************************************************************************
+ * Copyright (c) 2017--2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+
+/**
+ * Cache of contributing models shared by views, by URI of the model and
+ * namespace URI of its metamodel.
+ *
+ * Views with the sharedModels key acquire their contributing models from the
+ * cache (see ViewResource.modelCache), and release them when unloaded.  Views
+ * acquiring the same model get the same resource, which is loaded only once:
+ * they also see each other's changes to it.  A model is only shared with views
+ * using the same metamodel instance, since views recognize concrete objects by
+ * their class; views with another instance of the metamodel load their own
+ * copy.
+ *
+ * When no view holds a model anymore, it is kept idle in the cache, until more
+ * than the idle capacity of models are idle; the least recently released ones
+ * are then evicted.  An entry is dropped when the file of its model changes,
+ * and evict drops entries on demand.  Views holding a dropped model keep it,
+ * but it is not shared with views acquiring it afterwards.
+ *
+ * The cache is safe to use from several threads.  When several views acquire
+ * the same model at once, only one of them loads it and the others wait for
+ * the result.
+ */
+public class ModelCache {
+  /*
+   * All accesses to the maps and reference counts are synchronized on the
+   * cache, but loads happen outside the lock, as in ViewpointRegistry.  An
+   * entry is put in `entries` before its model is loaded, with a future that
+   * acquirers wait on.  Entries with no references are also in `idle`, in the
+   * order they were released.
+   */
+
+  /** Default number of idle models kept in a cache */
+  public static final int DEFAULT_IDLE_CAPACITY = 4;
+
+  /** Loads a model on a cache miss.  See acquire. */
+  @FunctionalInterface
+  public interface Loader {
+    Resource load(URI uri, EPackage metamodel) throws IOException;
+  }
+
+  private static class Entry {
+    final List<String> key;
+    final EPackage metamodel;
+    final FutureTask<Resource> load;
+    volatile Object stamp; // timestamp or hash of the model file, or null
+    int references = 0;
+    boolean cached = true; // false once dropped from the cache
+
+    Entry(List<String> key, URI uri, EPackage metamodel, Loader loader) {
+      this.key = key;
+      this.metamodel = metamodel;
+      this.load = new FutureTask<>(() -> {
+        // Stamp before loading, so changes made during the load invalidate
+        // the entry
+        stamp = ViewpointRegistry.stamp(uri.toString());
+        return loader.load(uri, metamodel);
+      });
+    }
+  }
+
+  private int idleCapacity;
+  private final Map<List<String>, Entry> entries = new HashMap<>();
+  private final LinkedHashMap<List<String>, Entry> idle = new LinkedHashMap<>();
+  private final Map<Resource, Entry> byResource = new IdentityHashMap<>();
+
+  // Statistics
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadTime = new LongAdder(); // in nanoseconds
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  public ModelCache() {
+    this(DEFAULT_IDLE_CAPACITY);
+  }
+
+  public ModelCache(int idleCapacity) {
+    setIdleCapacity(idleCapacity);
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Public API
+
+  /**
+   * Return the model at uri, conforming to metamodel, and hold it until
+   * release is called.  On a miss, or if the file has changed since the model
+   * was loaded, load the model.  If another thread is already loading it, wait
+   * for it to finish first.
+   */
+  public Resource acquire(URI uri, EPackage metamodel) throws IOException {
+    return acquire(uri, metamodel, ModelCache::load);
+  }
+
+  /** Same as acquire, but call loader to load the model on a miss. */
+  public Resource acquire(URI uri, EPackage metamodel, Loader loader) throws IOException {
+    List<String> key = Arrays.asList(uri.toString(), metamodel.getNsURI());
+
+    while (true) {
+      Entry e;
+      boolean leader = false;
+      synchronized (this) {
+        e = entries.get(key);
+        if (e == null) {
+          e = new Entry(key, uri, metamodel, loader);
+          entries.put(key, e);
+          leader = true;
+        }
+        if (e.metamodel == metamodel) {
+          // Reserve the entry, so it is not evicted while we wait for it
+          idle.remove(key);
+          ++e.references;
+        }
+      }
+
+      if (e.metamodel != metamodel) {
+        // Not shareable; see the class comment
+        misses.increment();
+        return timedLoad(loader, uri, metamodel);
+      }
+
+      if (leader) {
+        misses.increment();
+        long start = System.nanoTime();
+        e.load.run();
+        loads.increment();
+        loadTime.add(System.nanoTime() - start);
+      }
+
+      Resource r;
+      try {
+        r = e.load.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        unreserve(e);
+        throw new IOException("Interrupted while waiting for model " + uri, ex);
+      } catch (ExecutionException ex) {
+        // Failed loads are not cached, and each waiter reports the failure
+        synchronized (this) {
+          drop(e);
+        }
+        unreserve(e);
+        Throwable cause = ex.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IOException(cause);
+      }
+
+      // Stamping may read the file, so do it outside the lock
+      if (!leader && e.stamp != null && !e.stamp.equals(ViewpointRegistry.stamp(uri.toString()))) {
+        synchronized (this) {
+          if (e.cached) {
+            drop(e);
+            invalidations.increment();
+          }
+        }
+        unreserve(e);
+        continue;
+      }
+
+      if (!leader) {
+        hits.increment();
+      }
+      synchronized (this) {
+        byResource.put(r, e);
+      }
+      return r;
+    }
+  }
+
+  /**
+   * Release a model obtained from acquire.  Once all views have released it,
+   * the model is kept idle in the cache.  Models that were not shared are
+   * ignored.
+   */
+  public synchronized void release(Resource r) {
+    Entry e = byResource.get(r);
+    if (e == null) {
+      return;
+    }
+    if (--e.references == 0) {
+      byResource.remove(r);
+      if (e.cached) {
+        idle.put(e.key, e);
+        trimIdle();
+      }
+    }
+  }
+
+  /** Number of views holding r, or 0 if it is not from this cache. */
+  public synchronized int getReferences(Resource r) {
+    Entry e = byResource.get(r);
+    return e != null ? e.references : 0;
+  }
+
+  /**
+   * Drop the models at uri from the cache, whatever their metamodel.  Views
+   * holding them keep them.  Return the number of dropped models.
+   */
+  public synchronized int evict(URI uri) {
+    String u = uri.toString();
+    int n = 0;
+    Iterator<Entry> it = entries.values().iterator();
+    while (it.hasNext()) {
+      Entry e = it.next();
+      if (e.key.get(0).equals(u)) {
+        it.remove();
+        idle.remove(e.key);
+        e.cached = false;
+        evictions.increment();
+        ++n;
+      }
+    }
+    return n;
+  }
+
+  /** Drop the models no view holds from the cache. */
+  public synchronized void evictIdle() {
+    for (Entry e : idle.values()) {
+      entries.remove(e.key);
+      e.cached = false;
+      evictions.increment();
+    }
+    idle.clear();
+  }
+
+  /** Drop all models from the cache.  Views holding them keep them. */
+  public synchronized void clear() {
+    for (Entry e : entries.values()) {
+      e.cached = false;
+    }
+    entries.clear();
+    idle.clear();
+  }
+
+  /** Number of models in the cache, held or idle. */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public synchronized int getIdleCapacity() {
+    return idleCapacity;
+  }
+
+  /**
+   * Set the maximum number of idle models kept in the cache, evicting the
+   * least recently released ones if needed.  With a capacity of 0, models are
+   * dropped as soon as no view holds them.
+   */
+  public synchronized void setIdleCapacity(int idleCapacity) {
+    if (idleCapacity < 0) {
+      throw new IllegalArgumentException("Idle capacity must not be negative: " + idleCapacity);
+    }
+    this.idleCapacity = idleCapacity;
+    trimIdle();
+  }
+
+  /** Return a snapshot of the statistics of this cache. */
+  public ViewpointRegistry.Stats getStats() {
+    return new ViewpointRegistry.Stats(hits.sum(), misses.sum(), loads.sum(), loadTime.sum(),
+                                       evictions.sum(), invalidations.sum());
+  }
+
+  /** Reset the statistics of this cache. */
+  public void resetStats() {
+    hits.reset();
+    misses.reset();
+    loads.reset();
+    loadTime.reset();
+    evictions.reset();
+    invalidations.reset();
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Internals
+
+  /**
+   * Load the model at uri in its own resource set, where metamodel is
+   * registered.  Used for models that are not shared as well.
+   */
+  static Resource load(URI uri, EPackage metamodel) {
+    return resourceSet(metamodel).getResource(uri, true);
+  }
+
+  /** A new resource set for loading models of metamodel. */
+  static ResourceSet resourceSet(EPackage metamodel) {
+    // Each resource needs to use a different resource set, otherwise we may
+    // have name clashes in EPackages.
+    ResourceSet rs = new ResourceSetImpl();
+    rs.getPackageRegistry().put(metamodel.getNsURI(), metamodel);
+    return rs;
+  }
+
+  private Resource timedLoad(Loader loader, URI uri, EPackage metamodel) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return loader.load(uri, metamodel);
+    } finally {
+      loads.increment();
+      loadTime.add(System.nanoTime() - start);
+    }
+  }
+
+  // Remove e from the cache, if it is still there
+  private void drop(Entry e) {
+    if (e.cached) {
+      entries.remove(e.key);
+      idle.remove(e.key);
+      e.cached = false;
+    }
+  }
+
+  // Cancel the reservation of acquire for an entry it will not return
+  private synchronized void unreserve(Entry e) {
+    if (--e.references == 0 && e.cached) {
+      idle.put(e.key, e);
+      trimIdle();
+    }
+  }
+
+  private void trimIdle() {
+    Iterator<Entry> it = idle.values().iterator();
+    while (idle.size() > idleCapacity) {
+      Entry e = it.next();
+      it.remove();
+      entries.remove(e.key);
+      e.cached = false;
+      evictions.increment();
+    }
+  }
+
+}
@@ -0,0 +1,176 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import org.eclipse.emf.common.util.WrappedException;
+import org.eclipse.emf.ecore.resource.Resource;
+
+/**
+ * Contributing models of a view that are loaded in the background.
+ *
+ * Each model is a future until the view first gets it from the list, which
+ * waits for its load to finish.  The view asks for a model when it needs its
+ * objects: for its roots, to resolve the links of its weaving model, or to
+ * execute match rules.  See ViewResource@LazyModels.
+ */
+class PendingModels extends AbstractList<Resource> {
+  private final List<Future<Resource>> loads = new ArrayList<>();
+  private final List<String> aliases = new ArrayList<>();
+  private final List<String> paths = new ArrayList<>(); // as in the eview file
+  private final List<String> nsURIs = new ArrayList<>(); // of their metamodels
+  private final AtomicReferenceArray<Resource> models; // loaded so far
+  private final boolean[] reported; // failures already reported
+  private final Consumer<String> errors;
+
+  PendingModels(int size, Consumer<String> errors) {
+    this.models = new AtomicReferenceArray<>(size);
+    this.reported = new boolean[size];
+    this.errors = errors;
+  }
+
+  void add(String alias, String path, String nsURI, Future<Resource> load) {
+    aliases.add(alias);
+    paths.add(path);
+    nsURIs.add(nsURI);
+    loads.add(load);
+  }
+
+  @Override
+  public Resource get(int i) {
+    Resource r = models.get(i);
+    if (r != null) {
+      return r;
+    }
+
+    try {
+      r = loads.get(i).get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw fail(i, ex);
+    } catch (ExecutionException ex) {
+      if (ex.getCause() instanceof Error) {
+        throw (Error) ex.getCause();
+      }
+      throw fail(i, ex.getCause());
+    }
+    if (r == null) {
+      throw fail(i, null);
+    }
+    models.set(i, r);
+    return r;
+  }
+
+  /**
+   * Same as get, but return null for a model that could not be loaded.  The
+   * failure is still reported, the first time only.
+   */
+  Resource getOrNull(int i) {
+    try {
+      return get(i);
+    } catch (WrappedException | IllegalStateException ex) {
+      // Reported by fail
+      return null;
+    }
+  }
+
+  @Override
+  public int size() {
+    return loads.size();
+  }
+
+  String alias(int i) {
+    return aliases.get(i);
+  }
+
+  String path(int i) {
+    return paths.get(i);
+  }
+
+  Future<Resource> load(int i) {
+    return loads.get(i);
+  }
+
+  /** Wait for all the models, by alias. */
+  Map<String, Resource> byAlias() {
+    Map<String, Resource> models = new HashMap<>();
+    for (int i = 0; i < size(); ++i) {
+      models.put(alias(i), get(i));
+    }
+    return models;
+  }
+
+  /**
+   * The nsURI of the metamodel of the i-th model, which weaving models refer
+   * to.  Does not wait for the model.
+   */
+  String nsURI(int i) {
+    return nsURIs.get(i);
+  }
+
+  /**
+   * Wait for all loads, and return the models that were loaded, including
+   * those the view never asked for.  Failures are not reported.
+   */
+  List<Resource> await() {
+    List<Resource> loaded = new ArrayList<>();
+    for (Future<Resource> load : loads) {
+      try {
+        Resource r = load.get();
+        if (r != null) {
+          loaded.add(r);
+        }
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        break;
+      } catch (ExecutionException ex) {
+        // Already reported if the view asked for it
+      }
+    }
+    return loaded;
+  }
+
+  /** Stop the loads still running. */
+  void cancel() {
+    for (Future<Resource> load : loads) {
+      load.cancel(true);
+    }
+  }
+
+  private RuntimeException fail(int i, Throwable cause) {
+    boolean report;
+    synchronized (this) {
+      report = !reported[i];
+      reported[i] = true;
+    }
+    String msg = String.format("Could not load contributing model resource '%s'", paths.get(i));
+    if (report) {
+      errors.accept(cause != null ? msg + ": " + cause : msg);
+    }
+    return cause instanceof Exception ? new WrappedException(msg, (Exception) cause)
+                                      : new IllegalStateException(msg, cause);
+  }
+}
@@ -17,22 +17,49 @@
 
 package org.atlanmod.emfviews.core;
 
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.common.util.ECollections;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.resource.Resource;
 
 import org.atlanmod.emfviews.elements.FilteredVirtualEList;
+import org.atlanmod.emfviews.elements.VirtualEClass;
 import org.atlanmod.emfviews.elements.VirtualEList;
 import org.atlanmod.emfviews.elements.VirtualEObject;
-import org.atlanmod.emfviews.virtuallinks.ConcreteConcept;
+import org.atlanmod.emfviews.util.Adapters;
+import org.atlanmod.emfviews.util.ModificationCounter;
 import org.atlanmod.emfviews.virtuallinks.ConcreteElement;
 import org.atlanmod.emfviews.virtuallinks.Filter;
 import org.atlanmod.emfviews.virtuallinks.VirtualAssociation;
@@ -50,6 +77,12 @@ import org.atlanmod.emfviews.virtuallinks.delegator.VirtualLinksDelegator;
  *
  * A View is usually constructed indirectly from a ViewResource, but it can be
  * instantiated without one.
+ *
+ * Once built, a View can be read from several threads at once, provided its
+ * Viewpoint is sealed (see Viewpoint.seal): each concrete object has exactly
+ * one virtual counterpart, whichever thread asks for it first.  Modifying the
+ * view (e.g., setting virtual features) while other threads read it is not
+ * supported.
  */
 public class View implements Virtualizer {
 
@@ -68,11 +101,28 @@ public class View implements Virtualizer {
                              // used by VirtualEObject.eResource, to please some
                              // modeling tools (e.g. OCL).
 
-  private EList<EObject> virtualContents; // cache the results of getVirtualContents
-  private Map<EObject, VirtualEObject> concreteToVirtual; // used by the Virtualizer implementation to cache
-                                                          // virtual elements
+  private volatile Roots virtualContents; // cache the results of getVirtualContents
+  private ModificationCounter[] modelCounters; // of contributing models, see getVirtualContents
+  private volatile PendingRoots pendingRoots; // same as virtualContents, for PendingModels
+  // Counters and other adapters attached by this view to the contributing
+  // models, see dispose
+  private final Map<Notifier, ModificationCounter> counters = new ConcurrentHashMap<>();
+  private final Queue<Adapter> adapters = new ConcurrentLinkedQueue<>();
+  private final Map<EObject, Object> concreteToVirtual = new ConcurrentHashMap<>(); // used by the Virtualizer
+                                                                                  // implementation to cache
+                                                                                  // virtual elements, see
+                                                                                  // @VirtualCache
+  private final ReferenceQueue<VirtualEObject> collected = new ReferenceQueue<>();
+  private final LongAdder evictions = new LongAdder();
+
+  private BuildStats buildStats; // see getBuildStats
+  private final boolean storeAssociations; // see getAssociationStore
+  private AssociationStore associationStore;
 
   VirtualLinksDelegator virtualLinksDelegator; // to match rules for Virtualizer implementation
+  volatile Runnable initMatching; // initializes virtualLinksDelegator on first use, if
+                                  // not null.  See ViewResource@LazyModels
+  private final Object matchingLock = new Object();
 
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Public API
@@ -84,6 +134,7 @@ public class View implements Virtualizer {
    */
   public View(Viewpoint viewpoint) {
     this.viewpoint = viewpoint;
+    this.storeAssociations = false;
   }
 
   /**
@@ -98,31 +149,75 @@ public class View implements Virtualizer {
    * Construct a View with a list of contributing models and a WeavingModel.
    */
   public View(Viewpoint viewpoint, List<Resource> contributingModels, WeavingModel weavingModel) {
+    this(viewpoint, contributingModels, weavingModel, false);
+  }
+
+  /**
+   * Construct a View with a list of contributing models and a WeavingModel.  If
+   * storeAssociations is true, the links of many-valued virtual associations
+   * are kept in an AssociationStore rather than in virtual objects.
+   */
+  public View(Viewpoint viewpoint, List<Resource> contributingModels, WeavingModel weavingModel,
+              boolean storeAssociations) {
     this.viewpoint = viewpoint;
     this.contributingModels = contributingModels;
     this.weavingModel = weavingModel;
+    this.storeAssociations = storeAssociations;
 
     build();
   }
 
+  /**
+   * Construct a View with a list of contributing models, applying the links of
+   * the weaving model as they are read from its file.  See WeavingModelStream.
+   */
+  View(Viewpoint viewpoint, List<Resource> contributingModels, WeavingModelStream weavingModel,
+       boolean storeAssociations) throws IOException {
+    this.viewpoint = viewpoint;
+    this.contributingModels = contributingModels;
+    this.weavingModel = Viewpoint.emptyWeavingModel;
+    this.storeAssociations = storeAssociations;
+
+    build(weavingModel);
+  }
+
   /**
    * The contents of the virtual model.
+   *
+   * When the contributing models are still loading (see
+   * ViewResource@LazyModels), the list waits for each model only when
+   * iterating or indexing reaches its roots.  Models that could not be loaded
+   * are skipped, once reported.
    */
   public EList<EObject> getVirtualContents() {
-    if (virtualContents == null) {
+    // Threads racing here compute equal lists, so there is no need to lock.
+    // The roots are computed again when the contents of a contributing model
+    // change.
+    if (contributingModels instanceof PendingModels) {
+      PendingRoots pending = pendingRoots;
+      if (pending == null || pending.isStale()) {
+        pending = new PendingRoots((PendingModels) contributingModels);
+        pendingRoots = pending;
+      }
+      return pending.contents;
+    }
+
+    long modifications = modelModifications();
+    Roots roots = virtualContents;
+    if (roots == null || roots.modifications != modifications) {
       List<EObject> contents = new ArrayList<>();
 
       for (Resource r : getContributingModels()) {
         for (EObject o : r.getContents()) {
-          VirtualEObject v = getVirtual(o);
-          if (!v.isHidden())
-            contents.add(v);
+          if (!isHidden(o))
+            contents.add(getVirtual(o));
         }
       }
 
-      virtualContents = ECollections.unmodifiableEList(contents);
+      roots = new Roots(ECollections.unmodifiableEList(contents), modifications);
+      virtualContents = roots;
     }
-    return virtualContents;
+    return roots.contents;
   }
 
   /**
@@ -148,19 +243,401 @@ public class View implements Virtualizer {
     return resource;
   }
 
+  /**
+   * Number of virtual objects currently cached by this view.
+   *
+   * Virtual objects without virtual state are evicted from the cache once they
+   * are not used anymore, and recreated on demand.  See @VirtualCache.
+   */
+  public int getCacheSize() {
+    expungeCollected();
+    return concreteToVirtual.size();
+  }
+
+  /**
+   * Number of virtual objects evicted from the cache since this view was
+   * created.
+   */
+  public long getCacheEvictions() {
+    expungeCollected();
+    return evictions.sum();
+  }
+
+  /**
+   * Detach the adapters this view attached to the contributing models to follow
+   * their changes (see @ViewMaintenance).  The view should not be used
+   * afterwards, since its caches would not see these changes anymore.  Called
+   * when the resource of the view is unloaded.
+   */
+  public void dispose() {
+    for (ModificationCounter c : counters.values()) {
+      c.detach();
+    }
+    counters.clear();
+    for (Adapter a; (a = adapters.poll()) != null;) {
+      Notifier n = a.getTarget();
+      if (n != null) {
+        Adapters.remove(n, a);
+      }
+    }
+    modelCounters = null;
+  }
+
+  /**
+   * Statistics of the construction of this view from its weaving model, or
+   * null if this view was constructed without one.
+   */
+  public BuildStats getBuildStats() {
+    return buildStats;
+  }
+
+  /**
+   * The store holding the links of many-valued virtual associations of this
+   * view, or null if this view was constructed without one, or had no such
+   * links.
+   */
+  public AssociationStore getAssociationStore() {
+    return associationStore;
+  }
+
+  /**
+   * A stream of all the objects of the view: the virtual contents and
+   * everything they contain, in the order of eAllContents.  Hidden objects and
+   * their contents are not included.  Objects are virtualized as the stream
+   * reaches them.
+   */
+  public Stream<EObject> stream() {
+    return StreamSupport.stream(new ViewSpliterator(getVirtualContents()), false);
+  }
+
+  /** Same as stream, restricted to instances of the virtual class c. */
+  public Stream<EObject> stream(EClass c) {
+    return stream().filter(c::isInstance);
+  }
+
+  /**
+   * Same as stream, but the stream is parallel.  The containment trees are
+   * split by subtree between threads.  This requires a sealed viewpoint (see
+   * Viewpoint.seal), and the contributing models must not change while the
+   * stream runs.
+   */
+  public Stream<EObject> parallelStream() {
+    if (!viewpoint.isSealed()) {
+      throw new IllegalStateException("Parallel streams require a sealed viewpoint");
+    }
+    return StreamSupport.stream(new ViewSpliterator(getVirtualContents()), true);
+  }
+
+  /** Same as parallelStream, restricted to instances of the virtual class c. */
+  public Stream<EObject> parallelStream(EClass c) {
+    return parallelStream().filter(c::isInstance);
+  }
+
+  /**
+   * Eagerly virtualize the whole view, for workloads that traverse all of it.
+   *
+   * Every object of the contributing models gets its virtual counterpart, its
+   * contents list is computed, and the match rules of its virtual features are
+   * run.  Afterwards, navigating the view only hits caches.  Materialized
+   * objects are retained by the view, and never evicted from its cache (see
+   * @VirtualCache).
+   *
+   * The containment trees are traversed with a fork/join pool of the given
+   * parallelism.  Match rules are run in the calling thread: they are executed
+   * by the delegate of the matching model (e.g., an ECL module), whose
+   * evaluation context is not thread-safe.  A parallelism greater than 1
+   * requires a sealed viewpoint (see Viewpoint.seal), and the contributing
+   * models must not change during materialization.
+   *
+   * Return the number of materialized objects and the time of each phase.
+   */
+  public MaterializeStats materialize(int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive: " + parallelism);
+    }
+    if (parallelism > 1 && !viewpoint.isSealed()) {
+      throw new IllegalStateException("Parallel materialization requires a sealed viewpoint");
+    }
+
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
+    try {
+      // Virtualize all concrete objects
+      long start = System.nanoTime();
+      ConcurrentLinkedQueue<VirtualEObject> queue = new ConcurrentLinkedQueue<>();
+      List<MaterializeTree> roots = new ArrayList<>();
+      for (Resource r : loadedModels()) {
+        for (EObject o : r.getContents()) {
+          roots.add(new MaterializeTree(o, queue));
+        }
+      }
+      pool.invoke(new RecursiveAction() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+          invokeAll(roots);
+        }
+      });
+      VirtualEObject[] objects = queue.toArray(new VirtualEObject[0]);
+      long virtualized = System.nanoTime();
+
+      // Compute their contents lists
+      pool.invoke(new MaterializeContents(objects, 0, objects.length));
+      getVirtualContents();
+      long contents = System.nanoTime();
+
+      // Run the match rules
+      for (VirtualEObject v : objects) {
+        v.initializeVirtualFeatures();
+      }
+      long rules = System.nanoTime();
+
+      return new MaterializeStats(objects.length, virtualized - start, contents - virtualized,
+                                  rules - contents);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  /**
+   * Statistics of a materialization.  See materialize.
+   */
+  public static final class MaterializeStats {
+    public final int objects; // number of materialized virtual objects
+    public final long virtualizeNanos;
+    public final long contentsNanos;
+    public final long matchRulesNanos;
+
+    MaterializeStats(int objects, long virtualizeNanos, long contentsNanos, long matchRulesNanos) {
+      this.objects = objects;
+      this.virtualizeNanos = virtualizeNanos;
+      this.contentsNanos = contentsNanos;
+      this.matchRulesNanos = matchRulesNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("objects=%d virtualize=%dms contents=%dms matchRules=%dms",
+                           objects, virtualizeNanos / 1_000_000, contentsNanos / 1_000_000,
+                           matchRulesNanos / 1_000_000);
+    }
+  }
+
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Following changes of the contributing models
+  //
+  // @ViewMaintenance: reads of concrete features go to the concrete objects,
+  // so they are always current.  But the view caches a few things computed
+  // from the contributing models, and these must be computed again when the
+  // models change.  Most caches record the modification count of the concrete
+  // object (or resource) they were computed from, and compare it on access
+  // (see ModificationCounter).  So an edit costs nothing until a cache that
+  // depends on the edited object is read, and then only that cache is computed
+  // again:
+  //
+  // - the roots of the view depend on the contents of the contributing models
+  //   (see getVirtualContents);
+  // - the contents of a virtual object depend on the containment features of
+  //   its concrete object (see LazyEContentsList);
+  // - filtered lists depend on the concrete list they filter (see
+  //   FilteredVirtualEList);
+  // - virtual features populated by match rules depend on the concrete
+  //   objects on both sides of the match.  They are reset as soon as one
+  //   side changes (see VirtualEObject@MatchRules).
+  //
+  // Hidden objects are tracked by concrete object, so they stay hidden
+  // wherever they move in the models.
+
+  private static final class Roots {
+    final EList<EObject> contents;
+    final long modifications; // of the contributing models
+
+    Roots(EList<EObject> contents, long modifications) {
+      this.contents = contents;
+      this.modifications = modifications;
+    }
+  }
+
+  // Roots of a view whose contributing models are PendingModels.  The list is
+  // made of one segment per model, in order, and a segment waits for its model
+  // the first time iteration or indexing reaches it.  The size waits for all
+  // of them.  Models that could not be loaded have an empty segment.  The
+  // counter of a model is attached when its segment is computed, and the roots
+  // are stale as soon as one computed segment is.
+  private final class PendingRoots extends AbstractList<EObject> {
+    final EList<EObject> contents = ECollections.unmodifiableEList(this);
+    private final PendingModels models;
+    private final AtomicReferenceArray<Segment> segments;
+
+    PendingRoots(PendingModels models) {
+      this.models = models;
+      this.segments = new AtomicReferenceArray<>(models.size());
+    }
+
+    boolean isStale() {
+      for (int i = 0; i < segments.length(); ++i) {
+        Segment s = segments.get(i);
+        if (s != null && s.counter != null && s.counter.get() != s.modifications) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public EObject get(int index) {
+      int k = index;
+      if (k >= 0) {
+        for (int i = 0; i < segments.length(); ++i) {
+          List<EObject> roots = segment(i).roots;
+          if (k < roots.size()) {
+            return roots.get(k);
+          }
+          k -= roots.size();
+        }
+      }
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+    }
+
+    @Override
+    public int size() {
+      int n = 0;
+      for (int i = 0; i < segments.length(); ++i) {
+        n += segment(i).roots.size();
+      }
+      return n;
+    }
+
+    @Override
+    public Iterator<EObject> iterator() {
+      return new Iterator<EObject>() {
+        private int next; // segment to go through after this one
+        private Iterator<EObject> it = Collections.emptyIterator();
+
+        @Override
+        public boolean hasNext() {
+          while (!it.hasNext() && next < segments.length()) {
+            it = segment(next++).roots.iterator();
+          }
+          return it.hasNext();
+        }
+
+        @Override
+        public EObject next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          return it.next();
+        }
+      };
+    }
+
+    private Segment segment(int i) {
+      Segment s = segments.get(i);
+      if (s != null) {
+        return s;
+      }
+
+      Resource r = models.getOrNull(i);
+      if (r == null) {
+        s = new Segment(Collections.emptyList(), null, 0);
+      } else {
+        ModificationCounter counter = getModificationCounter(r);
+        long modifications = counter.get();
+        List<EObject> roots = new ArrayList<>();
+        for (EObject o : r.getContents()) {
+          if (!isHidden(o))
+            roots.add(getVirtual(o));
+        }
+        s = new Segment(roots, counter, modifications);
+      }
+      // Threads racing here compute equal segments, keep the first one
+      segments.compareAndSet(i, null, s);
+      return segments.get(i);
+    }
+  }
+
+  private static final class Segment {
+    final List<EObject> roots;
+    final ModificationCounter counter; // of the model, null if it was not loaded
+    final long modifications;
+
+    Segment(List<EObject> roots, ModificationCounter counter, long modifications) {
+      this.roots = roots;
+      this.counter = counter;
+      this.modifications = modifications;
+    }
+  }
+
+  // The contributing models, without those that could not be loaded.  Waits
+  // for PendingModels.
+  private List<Resource> loadedModels() {
+    if (!(contributingModels instanceof PendingModels)) {
+      return contributingModels;
+    }
+    PendingModels pending = (PendingModels) contributingModels;
+    List<Resource> loaded = new ArrayList<>();
+    for (int i = 0; i < pending.size(); ++i) {
+      Resource r = pending.getOrNull(i);
+      if (r != null) {
+        loaded.add(r);
+      }
+    }
+    return loaded;
+  }
+
+  // Sum of the modification counts of the contributing models.  Counts only
+  // grow, so the sum changes whenever one of them does.
+  private long modelModifications() {
+    ModificationCounter[] counters = modelCounters;
+    List<Resource> models = getContributingModels();
+    if (counters == null || counters.length != models.size()) {
+      counters = new ModificationCounter[models.size()];
+      for (int i = 0; i < counters.length; ++i) {
+        counters[i] = getModificationCounter(models.get(i));
+      }
+      modelCounters = counters;
+    }
+
+    long n = 0;
+    for (ModificationCounter c : counters) {
+      n += c.get();
+    }
+    return n;
+  }
+
 
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Constructing the virtual model
 
-  // Go through the WeavingModel instructions and build the virtual model.
-  protected void build() {
-    Map<String, Resource> modelResources = new HashMap<>();
+  // Contributing models by nsURI of their root, as referred to by weaving
+  // models.  Models still loading are identified by the nsURI of their
+  // metamodel, and only waited for when looked up.
+  private Function<String, Resource> modelResources() {
+    if (contributingModels instanceof PendingModels) {
+      PendingModels pending = (PendingModels) contributingModels;
+      Map<String, Integer> indices = new HashMap<>();
+      for (int i = 0; i < pending.size(); ++i) {
+        indices.put(pending.nsURI(i), i);
+      }
+      return nsURI -> {
+        Integer i = indices.get(nsURI);
+        return i != null ? pending.get(i) : null;
+      };
+    }
 
-    // Load contributing models
+    Map<String, Resource> modelResources = new HashMap<>();
     for (Resource r : contributingModels) {
       String nsURI = r.getContents().get(0).eClass().getEPackage().getNsURI();
       modelResources.put(nsURI, r);
     }
+    return modelResources::get;
+  }
+
+  // Go through the WeavingModel instructions and build the virtual model.
+  protected void build() {
+    Function<String, Resource> modelResources = modelResources();
 
     // At the view level, we interpret the weaving model a bit differently than
     // in viewpoint.  Virtual properties and associations refer to
@@ -185,53 +662,390 @@ public class View implements Virtualizer {
     //
     // This allows us to reuse the same weaving model structure at the view
     // level, but it's admittedly a tad confusing.
+    //
+    // @BulkBuild: generated weaving models can hold millions of links, so we
+    // do not apply them one at a time.  First we collect the distinct paths to
+    // resolve in each contributing model, and resolve them in one pass per
+    // model.  Models in different resource sets are independent, so large
+    // batches are resolved in parallel, one resource set per task (see
+    // Fragments.resolve).  Then we apply the links, grouped by source
+    // object, looking up each feature once per (class, name).  Links are
+    // grouped by sorting their indices, keyed by the rank of the first link of
+    // their source, rather than by collecting their targets in lists: this
+    // holds 8 bytes per link, plus one entry per distinct source.
+    //
+    // Applying is sequential: adding to a list with a virtual opposite writes
+    // to the target as well, so partitions would contend anyway.  Grouping
+    // means the sources of a target appear in its opposite list in the order
+    // of their first link, rather than in the order of the links.
+    //
+    // When the view stores associations, the links of many-valued virtual
+    // associations go to an AssociationStore instead, and their ends are not
+    // even virtualized.
+
+    // These lists are computed on each call
+    List<VirtualProperty> properties = weavingModel.getVirtualProperties();
+    List<VirtualAssociation> associations = weavingModel.getVirtualAssociations();
+    List<Filter> filters = weavingModel.getFilters();
+
+    long start = System.nanoTime();
+    Fragments fragments = new Fragments(modelResources);
+    for (VirtualProperty prop : properties) {
+      fragments.add(prop.getParent());
+    }
+    for (VirtualAssociation assoc : associations) {
+      fragments.add(assoc.getSource());
+      fragments.add(assoc.getTarget());
+    }
+    for (Filter filter : filters) {
+      fragments.add(filter.getTarget());
+    }
+    fragments.resolve();
+    long resolved = System.nanoTime();
+
+    Map<EClass, Map<String, EStructuralFeature>> features = new HashMap<>();
 
     // Populate virtual properties
-    for (VirtualProperty prop : weavingModel.getVirtualProperties()) {
+    for (VirtualProperty prop : properties) {
       // Find the corresponding EObject
-      ConcreteConcept elem = (ConcreteConcept) prop.getParent();
-      String nsURI = elem.getModel().getURI();
-      Resource model = modelResources.get(nsURI);
-      EObject owner = model.getEObject(elem.getPath());
+      EObject owner = fragments.get(prop.getParent());
       // Get its virtual counterpart
       EObject vOwner = getVirtual(owner);
 
       // Get the feature and set it
-      EStructuralFeature feature = vOwner.eClass().getEStructuralFeature(prop.getName());
+      EStructuralFeature feature = feature(features, vOwner.eClass(), prop.getName());
       vOwner.eSet(feature, prop.getType());
     }
 
-    // Populate the model with values for virtual associations
-    for (VirtualAssociation assoc : weavingModel.getVirtualAssociations()) {
-      // Find the corresponding EObject
-      ConcreteElement elem = (ConcreteConcept) assoc.getSource();
-      EObject source = modelResources.get(elem.getModel().getURI()).getEObject(elem.getPath());
+    // Order the links of virtual associations by source, keeping the order of
+    // links of each source
+    AssociationStore.Builder store = storeAssociations ? new AssociationStore.Builder() : null;
+    Map<EObject, Integer> ranks = new IdentityHashMap<>();
+    long[] keys = new long[associations.size()];
+    int numLinks = 0;
+    for (int i = 0; i < keys.length; ++i) {
+      VirtualAssociation assoc = associations.get(i);
+      EObject source = fragments.get(assoc.getSource());
 
-      // Do the same for the target
-      elem = (ConcreteConcept) assoc.getTarget();
-      EObject target = modelResources.get(elem.getModel().getURI()).getEObject(elem.getPath());
+      // The store takes concrete objects, which need not be virtualized
+      if (store != null) {
+        EStructuralFeature feature = feature(features, viewpoint.getVirtual(source.eClass()),
+                                             assoc.getName());
+        if (AssociationStore.canStore(feature)) {
+          store.add(source, feature, fragments.get(assoc.getTarget()));
+          continue;
+        }
+      }
+
+      Integer rank = ranks.get(source);
+      if (rank == null) {
+        rank = ranks.size();
+        ranks.put(source, rank);
+      }
+      keys[numLinks++] = ((long) rank << 32) | i;
+    }
+    ranks = null; // not needed anymore, let it go before applying
+    Arrays.sort(keys, 0, numLinks);
+
+    // Populate the model with values for virtual associations
+    EObject source = null;
+    EObject vSource = null;
+    EStructuralFeature feature = null;
+    List<EObject> list = null;
+    for (int k = 0; k < numLinks; ++k) {
+      VirtualAssociation assoc = associations.get((int) keys[k]);
+      EObject s = fragments.get(assoc.getSource());
+      if (s != source) {
+        source = s;
+        vSource = getVirtual(s);
+        feature = null;
+      }
+      EObject vTarget = getVirtual(fragments.get(assoc.getTarget()));
 
       // Find the feature for this virtual association
-      EObject vSource = getVirtual(source);
-      EStructuralFeature feature = vSource.eClass().getEStructuralFeature(assoc.getName());
+      EStructuralFeature f = feature(features, vSource.eClass(), assoc.getName());
+      if (f != feature) {
+        feature = f;
+        list = null;
+      }
 
-      // If it's a many feature, add to the list
+      // If it's a many feature, add to the list.  Not addAll, which would
+      // bypass the lists that keep opposites in sync.  Otherwise, last one
+      // wins, as when setting them one by one.
       if (feature.isMany()) {
-        @SuppressWarnings("unchecked")
-        List<EObject> list = (List<EObject>) vSource.eGet(feature);
-        list.add(getVirtual(target));
+        if (list == null) {
+          @SuppressWarnings("unchecked")
+          List<EObject> l = (List<EObject>) vSource.eGet(feature);
+          list = l;
+        }
+        list.add(vTarget);
       } else {
-        vSource.eSet(feature, getVirtual(target));
+        vSource.eSet(feature, vTarget);
       }
     }
 
+    if (store != null && store.size() > 0) {
+      associationStore = store.build(this);
+    }
+
     // Hide any filtered element
-    for (Filter filter : weavingModel.getFilters()) {
-      ConcreteElement target = filter.getTarget();
-      EObject targetObj = modelResources.get(target.getModel().getURI()).getEObject(target.getPath());
+    for (Filter filter : filters) {
+      EObject targetObj = fragments.get(filter.getTarget());
       if (targetObj != null) {
-        VirtualEObject v = getVirtual(targetObj);
-        v.setHidden(true);
+        setHidden(targetObj, true);
+      }
+    }
+
+    long applied = System.nanoTime();
+    buildStats = new BuildStats(properties.size(), associations.size(), filters.size(),
+                                fragments.size(), false, resolved - start, applied - resolved);
+  }
+
+  // Same as build, but with links read from the weaving model file as we go.
+  // Links are applied one by one, in file order, and are never held in
+  // memory.  Concrete elements are still resolved once, as links share them,
+  // and features looked up once per (class, name).
+  void build(WeavingModelStream stream) throws IOException {
+    Function<String, Resource> models = modelResources();
+    Map<EClass, Map<String, EStructuralFeature>> features = new HashMap<>();
+    int[] counts = new int[4]; // properties, associations, filters, elements
+    AssociationStore.Builder store = storeAssociations ? new AssociationStore.Builder() : null;
+
+    long start = System.nanoTime();
+    stream.read(new WeavingModelStream.Handler() {
+      private EObject resolve(WeavingModelStream.Element e) {
+        if (!e.resolved) {
+          e.object = models.apply(e.model).getEObject(e.path);
+          e.resolved = true;
+          ++counts[3];
+        }
+        return e.object;
+      }
+
+      @Override
+      public void property(WeavingModelStream.Element parent, String name, String value) {
+        EObject vOwner = getVirtual(resolve(parent));
+        vOwner.eSet(feature(features, vOwner.eClass(), name), value);
+        ++counts[0];
+      }
+
+      @Override
+      public void association(WeavingModelStream.Element source, String name,
+                              WeavingModelStream.Element target) {
+        ++counts[1];
+        EObject s = resolve(source);
+        EObject t = resolve(target);
+        if (store != null) {
+          EStructuralFeature feature = feature(features, viewpoint.getVirtual(s.eClass()), name);
+          if (AssociationStore.canStore(feature)) {
+            store.add(s, feature, t);
+            return;
+          }
+        }
+
+        EObject vSource = getVirtual(s);
+        EObject vTarget = getVirtual(t);
+        EStructuralFeature feature = feature(features, vSource.eClass(), name);
+
+        if (feature.isMany()) {
+          @SuppressWarnings("unchecked")
+          List<EObject> list = (List<EObject>) vSource.eGet(feature);
+          list.add(vTarget);
+        } else {
+          vSource.eSet(feature, vTarget);
+        }
+      }
+
+      @Override
+      public void filter(WeavingModelStream.Element target) {
+        EObject targetObj = resolve(target);
+        if (targetObj != null) {
+          setHidden(targetObj, true);
+        }
+        ++counts[2];
+      }
+    });
+    if (store != null && store.size() > 0) {
+      associationStore = store.build(this);
+    }
+
+    buildStats = new BuildStats(counts[0], counts[1], counts[2], counts[3], true,
+                                stream.getScanNanos(), System.nanoTime() - start);
+  }
+
+  private static EStructuralFeature feature(Map<EClass, Map<String, EStructuralFeature>> cache,
+                                            EClass c, String name) {
+    return cache.computeIfAbsent(c, k -> new HashMap<>())
+                .computeIfAbsent(name, c::getEStructuralFeature);
+  }
+
+  // Paths of weaving model elements, resolved in bulk.  See @BulkBuild.
+  private static class Fragments {
+    // Below this number of paths, resolving in parallel is not worth it
+    private static final int PARALLEL_THRESHOLD = 10_000;
+
+    private final Function<String, Resource> modelResources;
+    // model URI -> path -> object, or null until resolved
+    private final Map<String, Map<String, EObject>> byModel = new LinkedHashMap<>();
+    private int size = 0;
+
+    Fragments(Function<String, Resource> modelResources) {
+      this.modelResources = modelResources;
+    }
+
+    void add(Object element) {
+      ConcreteElement elem = (ConcreteElement) element;
+      Map<String, EObject> paths = byModel.computeIfAbsent(elem.getModel().getURI(),
+                                                           k -> new HashMap<>());
+      if (!paths.containsKey(elem.getPath())) {
+        paths.put(elem.getPath(), null);
+        ++size;
+      }
+    }
+
+    void resolve() {
+      // Resource.getEObject is not thread-safe: it fills caches of the
+      // resource, and may resolve proxies or load resources in its resource
+      // set.  So the models of a resource set are resolved by one task, and
+      // only tasks of different resource sets run in parallel.
+      Map<Object, List<Runnable>> bySet = new LinkedHashMap<>();
+      for (Map.Entry<String, Map<String, EObject>> e : byModel.entrySet()) {
+        Resource model = modelResources.apply(e.getKey());
+        Map<String, EObject> paths = e.getValue();
+        Object set = model.getResourceSet() != null ? model.getResourceSet() : model;
+        bySet.computeIfAbsent(set, k -> new ArrayList<>()).add(() -> {
+          for (Map.Entry<String, EObject> p : paths.entrySet()) {
+            p.setValue(model.getEObject(p.getKey()));
+          }
+        });
+      }
+
+      List<Runnable> tasks = new ArrayList<>();
+      for (List<Runnable> models : bySet.values()) {
+        tasks.add(() -> models.forEach(Runnable::run));
+      }
+      if (tasks.size() > 1 && size >= PARALLEL_THRESHOLD) {
+        tasks.parallelStream().forEach(Runnable::run);
+      } else {
+        tasks.forEach(Runnable::run);
+      }
+    }
+
+    EObject get(Object element) {
+      ConcreteElement elem = (ConcreteElement) element;
+      return byModel.get(elem.getModel().getURI()).get(elem.getPath());
+    }
+
+    int size() {
+      return size;
+    }
+  }
+
+  /**
+   * Statistics of the construction of a view from its weaving model.  See
+   * getBuildStats.
+   */
+  public static final class BuildStats {
+    public final int properties;   // virtual properties set
+    public final int associations; // virtual association links added
+    public final int filters;      // filtered objects
+    public final int paths;        // distinct paths resolved
+    public final boolean streamed; // whether links were applied as the weaving
+                                   // model file was read
+    public final long resolveNanos; // for a streamed weaving model, time to
+                                    // collect its concrete elements
+    public final long applyNanos;
+
+    BuildStats(int properties, int associations, int filters, int paths, boolean streamed,
+               long resolveNanos, long applyNanos) {
+      this.properties = properties;
+      this.associations = associations;
+      this.filters = filters;
+      this.paths = paths;
+      this.streamed = streamed;
+      this.resolveNanos = resolveNanos;
+      this.applyNanos = applyNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("properties=%d associations=%d filters=%d paths=%d streamed=%b "
+                           + "resolve=%dms apply=%dms",
+                           properties, associations, filters, paths, streamed,
+                           resolveNanos / 1_000_000, applyNanos / 1_000_000);
+    }
+  }
+
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Eager materialization
+
+  // Virtualize and retain a concrete object and everything it contains
+  private class MaterializeTree extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final EObject concrete;
+    private final ConcurrentLinkedQueue<VirtualEObject> out;
+
+    MaterializeTree(EObject concrete, ConcurrentLinkedQueue<VirtualEObject> out) {
+      this.concrete = concrete;
+      this.out = out;
+    }
+
+    @Override
+    protected void compute() {
+      // Go down the last child of each object in this task, and fork tasks for
+      // the others.  Deep chains of objects are thus walked in a loop, rather
+      // than in nested calls that could overflow the stack.
+      List<MaterializeTree> forked = new ArrayList<>();
+      EObject o = concrete;
+      while (o != null) {
+        VirtualEObject v = getVirtual(o);
+        retain(v);
+        out.add(v);
+
+        List<EObject> contents = o.eContents();
+        int last = contents.size() - 1;
+        for (int i = 0; i < last; ++i) {
+          MaterializeTree t = new MaterializeTree(contents.get(i), out);
+          t.fork();
+          forked.add(t);
+        }
+        o = last >= 0 ? contents.get(last) : null;
+      }
+
+      // Join the most recent first, as they are the likeliest to be run here
+      for (int i = forked.size() - 1; i >= 0; --i) {
+        forked.get(i).join();
+      }
+    }
+  }
+
+  // Compute the contents lists of a range of virtual objects
+  private static class MaterializeContents extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int THRESHOLD = 256;
+
+    private final VirtualEObject[] objects;
+    private final int from;
+    private final int to;
+
+    MaterializeContents(VirtualEObject[] objects, int from, int to) {
+      this.objects = objects;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from <= THRESHOLD) {
+        for (int i = from; i < to; ++i) {
+          objects[i].eContents().size();
+        }
+      } else {
+        int mid = (from + to) >>> 1;
+        invokeAll(new MaterializeContents(objects, from, mid),
+                  new MaterializeContents(objects, mid, to));
       }
     }
   }
@@ -243,7 +1057,62 @@ public class View implements Virtualizer {
   // Similar reasoning to the implementation of EcoreVirtualizer in Viewpoint,
   // but this time there is only one class to implement.
 
-  boolean filterObjects = false;
+  volatile boolean filterObjects = false;
+
+  // Concrete objects whose virtual counterpart is hidden.  Keeping them here
+  // rather than in virtual objects lets filtered lists and traversals skip
+  // hidden objects without virtualizing them.  EObjects do not override
+  // equals, so this is an identity set.
+  private final Set<EObject> hiddenObjects = ConcurrentHashMap.newKeySet();
+  private final AtomicInteger hiddenVersion = new AtomicInteger(); // see FilteredVirtualEList
+
+  // @VirtualCache: a full traversal of a large model would create a virtual
+  // object for every concrete object, and the cache would keep them all alive
+  // as long as the view.  But most virtual objects hold no state of their own:
+  // they only delegate to their concrete object, and can be recreated at will.
+  // So the cache holds these through weak references, and they are evicted by
+  // the garbage collector once no one uses them.  Since a weak reference is
+  // cleared only once its referent is unreachable, nobody can observe a
+  // different virtual object for the same concrete object.
+  //
+  // Virtual objects that have virtual state (virtual values) cannot be
+  // recreated, and are retained: the cache then maps to them directly (see
+  // retain).  Reading a virtual feature that has no values, or only values
+  // served by the virtualizer, gives no state; modifying it does.  Objects
+  // referenced from virtual lists are kept alive by the lists, which belong to
+  // retained objects.  Hidden objects are tracked by concrete object (see
+  // hiddenObjects), and need not be retained.
+  //
+  // The values of concreteToVirtual are thus either a VirtualEObject, or a
+  // WeakEntry to one.
+
+  private static final class WeakEntry extends WeakReference<VirtualEObject> {
+    final EObject concrete; // key of this entry, to expunge it
+
+    WeakEntry(EObject concrete, VirtualEObject v, ReferenceQueue<VirtualEObject> q) {
+      super(v, q);
+      this.concrete = concrete;
+    }
+  }
+
+  private static VirtualEObject deref(Object entry) {
+    if (entry instanceof WeakEntry) {
+      return ((WeakEntry) entry).get();
+    }
+    return (VirtualEObject) entry;
+  }
+
+  // Remove the entries of collected virtual objects
+  private void expungeCollected() {
+    Reference<? extends VirtualEObject> r;
+    while ((r = collected.poll()) != null) {
+      WeakEntry e = (WeakEntry) r;
+      // Only remove the entry if it has not been replaced already
+      if (concreteToVirtual.remove(e.concrete, e)) {
+        evictions.increment();
+      }
+    }
+  }
 
   @Override
   public VirtualEObject getVirtual(EObject obj) {
@@ -251,13 +1120,34 @@ public class View implements Virtualizer {
       return null;
     }
 
-    if (concreteToVirtual == null) {
-      concreteToVirtual = new HashMap<>();
+    // Most calls are hits, which do not lock
+    VirtualEObject v = deref(concreteToVirtual.get(obj));
+    if (v != null) {
+      return v;
     }
 
-    return concreteToVirtual.computeIfAbsent(obj, o ->
-      new VirtualEObject(o, viewpoint.getVirtual(o.eClass()), this)
-    );
+    expungeCollected();
+
+    // Virtualize the class outside of compute, which locks a bin of the map
+    // while it runs.  Only one virtual object is ever created per concrete
+    // object, as long as it is reachable.
+    VirtualEClass c = viewpoint.getVirtual(obj.eClass());
+    VirtualEObject[] result = new VirtualEObject[1];
+    concreteToVirtual.compute(obj, (o, entry) -> {
+      result[0] = deref(entry);
+      if (result[0] != null) {
+        return entry;
+      }
+      result[0] = new VirtualEObject(o, c, this);
+      return new WeakEntry(o, result[0], collected);
+    });
+    return result[0];
+  }
+
+  @Override
+  public void retain(VirtualEObject v) {
+    concreteToVirtual.computeIfPresent(v.getConcreteEObject(), (o, entry) ->
+      deref(entry) == v ? v : entry);
   }
 
   @Override
@@ -272,19 +1162,86 @@ public class View implements Virtualizer {
   public List<EObject> getMatchesForRule(String ruleName, EObject param, boolean rightHand) {
     // If we have no vld, VirtualEObjects may still ask to execute a rule.
     // We just return an empty list, meaning we don't have any objects to initialize lazily.
-    if (virtualLinksDelegator == null)
+    VirtualLinksDelegator vld = delegator();
+    if (vld == null)
       return Collections.emptyList();
 
     try {
-      return virtualLinksDelegator.executeMatchRule(ruleName, param, rightHand);
+      return vld.executeMatchRule(ruleName, param, rightHand);
     } catch (Exception ex) {
       throw new RuntimeException(String.format("Failed to execute match rule %s", ruleName), ex);
     }
   }
 
+  @Override
+  public List<EObject> getStoredValues(EObject o, EStructuralFeature feature) {
+    AssociationStore store = associationStore;
+    return store != null ? store.get(o, feature) : null;
+  }
+
+  @Override
+  public boolean hasMatchRules() {
+    return virtualLinksDelegator != null;
+  }
+
+  @Override
+  public boolean hasMatchRule(String ruleName) {
+    VirtualLinksDelegator vld = delegator();
+    return vld != null && vld.hasMatchRule(ruleName);
+  }
+
+  // The delegator, initialized if it was left for its first use
+  private VirtualLinksDelegator delegator() {
+    if (initMatching != null) {
+      synchronized (matchingLock) {
+        Runnable init = initMatching;
+        if (init != null) {
+          init.run();
+          initMatching = null;
+        }
+      }
+    }
+    return virtualLinksDelegator;
+  }
+
   @Override
   public void activateObjectFiltering() {
     filterObjects = true;
   }
 
+  @Override
+  public void setHidden(EObject o, boolean hidden) {
+    boolean changed = hidden ? hiddenObjects.add(o) : hiddenObjects.remove(o);
+    if (hidden) {
+      activateObjectFiltering();
+    }
+    if (changed) {
+      hiddenVersion.incrementAndGet();
+      // The roots may have changed
+      virtualContents = null;
+    }
+  }
+
+  @Override
+  public boolean isHidden(EObject o) {
+    // Most views hide nothing
+    return !hiddenObjects.isEmpty() && hiddenObjects.contains(o);
+  }
+
+  @Override
+  public int getHiddenVersion() {
+    return hiddenVersion.get();
+  }
+
+  @Override
+  public ModificationCounter getModificationCounter(Notifier n) {
+    return counters.computeIfAbsent(n, ModificationCounter::attach);
+  }
+
+  @Override
+  public void attachAdapter(Notifier n, Adapter a) {
+    Adapters.add(n, a);
+    adapters.add(a);
+  }
+
 }
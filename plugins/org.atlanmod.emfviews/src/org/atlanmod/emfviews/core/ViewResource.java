@@ -18,23 +18,36 @@ package org.atlanmod.emfviews.core;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.StringJoiner;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
 
 import org.eclipse.emf.common.util.ECollections;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EClassifier;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EStructuralFeature;
 import org.eclipse.emf.ecore.resource.Resource;
-import org.eclipse.emf.ecore.resource.ResourceSet;
 import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
 
+import org.atlanmod.emfviews.elements.VirtualContentsIterator;
 import org.atlanmod.emfviews.virtuallinks.WeavingModel;
 import org.atlanmod.emfviews.virtuallinks.delegator.VirtualLinksDelegator;
 
@@ -63,14 +76,32 @@ public class ViewResource extends ResourceImpl {
   public static final String EVIEW_CONTRIBUTING_MODELS = "contributingModels";
   public static final String EVIEW_MATCHING_MODEL = "matchingModel";
   public static final String EVIEW_WEAVING_MODEL = "weavingModel";
+  public static final String EVIEW_ASSOCIATION_STORE = "associationStore";
+  public static final String EVIEW_SHARED_MODELS = "sharedModels";
+  public static final String EVIEW_BINARY_CACHE = "binaryCache";
+  public static final String EVIEW_LAZY_MODELS = "lazyModels";
+
+  /**
+   * Contributing models shared by views with the sharedModels key.  Views
+   * acquire their models from the cache when loaded, and release them when
+   * unloaded.  See ModelCache.
+   */
+  public static final ModelCache modelCache = new ModelCache();
 
   // Values from the eview file, used for loading/saving
   private String viewpointPath;
   private String contributingModelsPaths;
   private String matchingModelPath;
   private String weavingModelPath;
+  private boolean storeAssociations;
+  private boolean sharedModels;
+  private boolean binaryCache;
+  private boolean lazyModels;
 
   private View view; // the constructed view
+  private final List<Resource> heldModels = new ArrayList<>(); // acquired from modelCache
+  private PendingModels pendingModels; // with lazyModels, see @LazyModels
+  private Map<String, Long> modelLoadNanos = Collections.emptyMap(); // see getModelLoadNanos
 
 
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
@@ -93,11 +124,30 @@ public class ViewResource extends ResourceImpl {
     }
   }
 
+  @Override
+  public TreeIterator<EObject> getAllContents() {
+    // Skip hidden objects without virtualizing them, see VirtualEObject.eAllContents
+    return new VirtualContentsIterator(getContents());
+  }
+
   /** The view associated with this resource, if any. */
   public View getView() {
     return view;
   }
 
+  /**
+   * Time spent loading each contributing model of the last load, in
+   * nanoseconds, by alias and in the order of the eview file.  Models are
+   * loaded concurrently, so these times overlap.  With the lazyModels key,
+   * models still loading have a time of 0.
+   */
+  public Map<String, Long> getModelLoadNanos() {
+    Map<String, Long> times = modelLoadNanos;
+    synchronized (times) {
+      return Collections.unmodifiableMap(new LinkedHashMap<>(times));
+    }
+  }
+
   /** Associate a view to this resource. */
   public void setView(View view) {
     // Cannot be private because it is used for creating purely in-memory views
@@ -113,13 +163,20 @@ public class ViewResource extends ResourceImpl {
   private Viewpoint loadViewpoint() throws IOException {
     URI uri = URI.createURI(viewpointPath).resolve(getURI());
 
-    // First look up the viewpoint registry using the resolved URI
-    Viewpoint v = ViewpointResource.registry.get(uri.toString());
-    if (v != null) {
-      return v;
+    // First look up the viewpoint registry using the resolved URI.  If the
+    // viewpoint will be registered and is being loaded by another view, this
+    // waits for it.  Otherwise, each view builds its own viewpoint anyway, so
+    // waiting would only serialize the loads (see
+    // ViewpointRegistry@SingleFlight).
+    if (!ViewpointResource.savesInRegistry(uri)) {
+      Viewpoint v = ViewpointResource.registry.get(uri.toString());
+      return v != null ? v : loadViewpoint(uri);
     }
+    return ViewpointResource.registry.getOrLoad(uri.toString(), () -> loadViewpoint(uri));
+  }
 
-    // Otherwise, load a viewpoint resource and return its viewpoint
+  private Viewpoint loadViewpoint(URI uri) throws IOException {
+    // Load a viewpoint resource and return its viewpoint
     ViewpointResource vpr = new ViewpointResource(uri);
     vpr.load(null);
     if (!vpr.getErrors().isEmpty()) {
@@ -141,9 +198,23 @@ public class ViewResource extends ResourceImpl {
     }
   }
 
-  private Map<String, Resource> loadModels(Map<String, EPackage> metamodels) {
-    Map<String, Resource> contributingModels = new HashMap<>();
-    for (String modelPath : contributingModelsPaths.split(",")) {
+  // Start loading the contributing models, in the order of the eview file
+  private PendingModels loadModels(Map<String, EPackage> metamodels, ExecutorService loader,
+                                   Consumer<String> warnings) {
+    String[] modelPaths = contributingModelsPaths.split(",");
+    PendingModels models = new PendingModels(modelPaths.length, msg -> report(true, msg));
+    Map<String, Long> times = new LinkedHashMap<>();
+    modelLoadNanos = times;
+
+    // Read models through their binary sidecar, if asked to
+    ModelCache.Loader load = ModelCache::load;
+    if (binaryCache) {
+      load = (uri, metamodel) ->
+        BinaryResourceCache.load(ModelCache.resourceSet(metamodel), uri, warnings);
+    }
+    ModelCache.Loader modelLoader = load;
+
+    for (String modelPath : modelPaths) {
 
       // Format is alias::URI
       if (!modelPath.contains("::")) {
@@ -153,42 +224,147 @@ public class ViewResource extends ResourceImpl {
       String alias = parts[0];
       URI uri = URI.createURI(parts[1]).resolve(getURI());
 
-      // Each resource needs to use a different resource set, otherwise we may
-      // have name clashes in EPackages.
+      // Each resource uses its own resource set (see ModelCache.load), which
+      // makes the loads independent, so they can run concurrently.
       EPackage metamodel = metamodels.get(alias);
-      ResourceSet rs = new ResourceSetImpl();
-      rs.getPackageRegistry().put(metamodel.getNsURI(), metamodel);
-      Resource r = rs.getResource(uri, true);
+      prepareMetamodel(metamodel);
+      boolean shared = sharedModels;
+
+      synchronized (times) {
+        times.put(alias, 0L);
+      }
+      models.add(alias, modelPath, metamodel.getNsURI(), loader.submit(() -> {
+        long start = System.nanoTime();
+        try {
+          return shared ? modelCache.acquire(uri, metamodel, modelLoader)
+                        : modelLoader.load(uri, metamodel);
+        } finally {
+          synchronized (times) {
+            times.put(alias, System.nanoTime() - start);
+          }
+        }
+      }));
+    }
+    return models;
+  }
+
+  // Wait for all the contributing models, by alias
+  private Map<String, Resource> awaitModels(PendingModels models, List<String> warnings)
+    throws IOException {
+    // Collect the models in the order of the eview file, so errors are
+    // reported in that order as well.  Wait for all of them even if one
+    // fails, so that shared models can be released.
+    Resource[] resources = new Resource[models.size()];
+    Exception failure = null;
+    for (int i = 0; i < resources.length; ++i) {
+      try {
+        resources[i] = join(models.load(i));
+      } catch (IOException | RuntimeException ex) {
+        if (failure == null) {
+          failure = ex;
+        }
+      }
+    }
+    for (String w : warnings) {
+      getWarnings().add(new Err(w));
+    }
+    if (sharedModels) {
+      for (Resource r : resources) {
+        if (r != null) {
+          heldModels.add(r);
+        }
+      }
+    }
+    if (failure != null) {
+      releaseModels();
+      if (failure instanceof IOException) {
+        throw (IOException) failure;
+      }
+      throw (RuntimeException) failure;
+    }
+
+    Map<String, Resource> contributingModels = new HashMap<>();
+    for (int i = 0; i < resources.length; ++i) {
+      Resource r = resources[i];
 
       if (r != null) {
-        contributingModels.put(alias, r);
+        contributingModels.put(models.alias(i), r);
       } else {
         // see @ResourceErrors
-        getErrors().add(new Err("Could not load contributing model resource '%s'", modelPath));
+        getErrors().add(new Err("Could not load contributing model resource '%s'", models.path(i)));
       }
     }
     return contributingModels;
   }
 
-  private VirtualLinksDelegator loadMatchingModel(Map<String, Resource> models) {
-    // Initialize the virtual links delegator from a matching model, if there is one
-    VirtualLinksDelegator vld = null;
+  // Add a diagnostic from any thread.  With lazyModels, models are waited for
+  // after the load, by whichever thread uses the view first.
+  private void report(boolean error, String msg) {
+    synchronized (this) {
+      (error ? getErrors() : getWarnings()).add(new Err(msg));
+    }
+  }
 
-    if (matchingModelPath != null && !matchingModelPath.isEmpty()) {
-      URI matchingModelURI = URI.createURI(matchingModelPath).resolve(getURI());
-      vld = new VirtualLinksDelegator(matchingModelURI);
+  // Compute the derived data of the classes of a metamodel in this thread.
+  // EClass and EStructuralFeature compute their feature lists, IDs and setting
+  // delegates lazily and without synchronization, so concurrent loads of
+  // models of the same metamodel would race on them.
+  private static void prepareMetamodel(EPackage p) {
+    for (EClassifier c : p.getEClassifiers()) {
+      if (c instanceof EClass) {
+        EClass k = (EClass) c;
+        k.getEAllSuperTypes();
+        k.getEAllContainments();
+        k.getEIDAttribute();
+        for (EStructuralFeature f : k.getEAllStructuralFeatures()) {
+          k.getFeatureID(f);
+          ((EStructuralFeature.Internal) f).getSettingDelegate();
+        }
+      }
+    }
+    for (EPackage sub : p.getESubpackages()) {
+      prepareMetamodel(sub);
+    }
+  }
 
-      // Initialize only for now; rules are executed lazily in View.getMatchesForRule
-      try {
-        vld.init(models);
-      } catch (Exception e) {
-        e.printStackTrace();
-        // see @ResourceErrors
-        getErrors().add(new Err("Exception while initializing matching model: %s", e.toString()));
+  // Give the shared models back to the cache
+  private void releaseModels() {
+    if (pendingModels != null) {
+      // Models still loading may be acquired from the cache, so wait for them
+      // to release them.  Otherwise, there is no need to finish their loads.
+      if (sharedModels) {
+        heldModels.addAll(pendingModels.await());
+      } else {
+        pendingModels.cancel();
       }
+      pendingModels = null;
+    }
+    for (Resource r : heldModels) {
+      modelCache.release(r);
+    }
+    heldModels.clear();
+  }
+
+  private VirtualLinksDelegator loadMatchingModel() {
+    // Create the virtual links delegator for the matching model, if there is one
+    if (matchingModelPath != null && !matchingModelPath.isEmpty()) {
+      URI matchingModelURI = URI.createURI(matchingModelPath).resolve(getURI());
+      return new VirtualLinksDelegator(matchingModelURI);
     }
+    return null;
+  }
 
-    return vld;
+  private void initMatchingModel(VirtualLinksDelegator vld, Future<?> parsed,
+                                 Map<String, Resource> models) {
+    // Initialize only for now; rules are executed lazily in View.getMatchesForRule
+    try {
+      join(parsed);
+      vld.init(models);
+    } catch (Exception e) {
+      e.printStackTrace();
+      // see @ResourceErrors
+      report(true, String.format("Exception while initializing matching model: %s", e.toString()));
+    }
   }
 
   private WeavingModel loadWeavingModel() {
@@ -204,23 +380,115 @@ public class ViewResource extends ResourceImpl {
     return weavingModel;
   }
 
+  private WeavingModelStream streamWeavingModel() throws IOException {
+    if (weavingModelPath == null) {
+      return null;
+    }
+    return WeavingModelStream.open(URI.createURI(weavingModelPath).resolve(getURI()));
+  }
+
   @Override
   protected void doLoad(InputStream inputStream, Map<?, ?> options) throws IOException {
     parse(inputStream);
 
-    // Load everything and create the view
-    Viewpoint viewpoint = loadViewpoint();
-    Map<String, Resource> contributingModels = loadModels(viewpoint.getContributingEPackages());
-    VirtualLinksDelegator vld = loadMatchingModel(contributingModels);
-    WeavingModel weavingModel = loadWeavingModel();
+    // Note @ParallelLoad:
+    // The contributing models are loaded concurrently, each in its own resource
+    // set.  They need the metamodels of the viewpoint, but the weaving model
+    // and the matching model do not, so they are read while the viewpoint and
+    // the models are loaded.  Tasks do not touch the resource: their results
+    // and failures are collected in this thread, in the order of the eview
+    // file (see @ResourceErrors).
+    //
+    // Note @LazyModels:
+    // With the lazyModels key, we do not wait for the contributing models
+    // before creating the view.  The view gets them as PendingModels, and waits
+    // for each model the first time it needs it: to list its roots, to resolve
+    // the weaving links that point into it, or to execute match rules, which
+    // also defers initializing the matching model.  The load then only waits
+    // for the viewpoint and the weaving model, and models that fail are
+    // reported to the resource errors when the view asks for them.  The roots
+    // are listed model by model, as iteration reaches them, and models that
+    // failed are left out (see View.getVirtualContents).
+    ExecutorService loader = newLoader();
+    try {
+      Future<WeavingModelStream> stream = loader.submit(this::streamWeavingModel);
+      VirtualLinksDelegator vld = loadMatchingModel();
+      Future<?> parsedMatchingModel = vld != null ? loader.submit(vld::parse) : null;
+
+      // Load everything and create the view
+      Viewpoint viewpoint = loadViewpoint();
+      List<String> warnings = Collections.synchronizedList(new ArrayList<>());
+      PendingModels pending = loadModels(viewpoint.getContributingEPackages(), loader,
+                                         lazyModels ? msg -> report(false, msg) : warnings::add);
+      List<Resource> models;
+      if (lazyModels) {
+        pendingModels = pending;
+        models = pending;
+      } else {
+        Map<String, Resource> contributingModels = awaitModels(pending, warnings);
+        if (vld != null) {
+          initMatchingModel(vld, parsedMatchingModel, contributingModels);
+        }
+        models = new ArrayList<>(contributingModels.values());
+      }
 
+      try {
+        // Apply the links of the weaving model as we read them, if we can
+        WeavingModelStream s = join(stream);
+        if (s != null) {
+          setView(new View(viewpoint, models, s, storeAssociations));
+        } else {
+          setView(new View(viewpoint, models, loadWeavingModel(), storeAssociations));
+        }
+        if (lazyModels && vld != null) {
+          view.initMatching = () -> initMatchingModel(vld, parsedMatchingModel, pending.byAlias());
+        }
+        view.virtualLinksDelegator = vld;
+      } catch (Exception e) {
+        e.printStackTrace();
+        // see @ResourceErrors
+        getErrors().add(new Err(e.toString()));
+      }
+    } finally {
+      // Pending models are still loading
+      if (lazyModels) {
+        loader.shutdown();
+      } else {
+        loader.shutdownNow();
+      }
+    }
+  }
+
+  // A pool for the loading tasks of one eview: the weaving model, the matching
+  // model and each contributing model, bounded by the number of processors.
+  private ExecutorService newLoader() {
+    int tasks = contributingModelsPaths != null ? contributingModelsPaths.split(",").length + 2 : 2;
+    int threads = Math.max(1, Math.min(tasks, Runtime.getRuntime().availableProcessors()));
+    return Executors.newFixedThreadPool(threads, r -> {
+      Thread t = new Thread(r, "EMF Views loader");
+      t.setDaemon(true);
+      return t;
+    });
+  }
+
+  // Wait for a loading task, and throw its failure as if it had run in this
+  // thread
+  private static <T> T join(Future<T> task) throws IOException {
     try {
-      setView(new View(viewpoint, new ArrayList<>(contributingModels.values()), weavingModel));
-      view.virtualLinksDelegator = vld;
-    } catch (Exception e) {
-      e.printStackTrace();
-      // see @ResourceErrors
-      getErrors().add(new Err(e.toString()));
+      return task.get();
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while loading view");
+    } catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new IOException(cause);
     }
   }
 
@@ -235,16 +503,37 @@ public class ViewResource extends ResourceImpl {
     if (weavingModelPath != null) {
       p.setProperty(EVIEW_WEAVING_MODEL, weavingModelPath);
     }
+    if (storeAssociations) {
+      p.setProperty(EVIEW_ASSOCIATION_STORE, "true");
+    }
+    if (sharedModels) {
+      p.setProperty(EVIEW_SHARED_MODELS, "true");
+    }
+    if (binaryCache) {
+      p.setProperty(EVIEW_BINARY_CACHE, "true");
+    }
+    if (lazyModels) {
+      p.setProperty(EVIEW_LAZY_MODELS, "true");
+    }
     p.store(outputStream, null);
   }
 
   @Override
   protected void doUnload() {
+    if (view != null) {
+      view.dispose();
+    }
+    releaseModels();
     view = null;
     viewpointPath = null;
     contributingModelsPaths = null;
     weavingModelPath = null;
     matchingModelPath = null;
+    storeAssociations = false;
+    sharedModels = false;
+    binaryCache = false;
+    lazyModels = false;
+    modelLoadNanos = Collections.emptyMap();
 
     getErrors().clear();
     getWarnings().clear();
@@ -286,6 +575,22 @@ public class ViewResource extends ResourceImpl {
         weavingModelPath = p.getProperty(key).trim();
         break;
 
+      case EVIEW_ASSOCIATION_STORE:
+        storeAssociations = true;
+        break;
+
+      case EVIEW_SHARED_MODELS:
+        sharedModels = true;
+        break;
+
+      case EVIEW_BINARY_CACHE:
+        binaryCache = true;
+        break;
+
+      case EVIEW_LAZY_MODELS:
+        lazyModels = true;
+        break;
+
       default:
         getErrors().add(new Err("Invalid key in eview file: '%s'", key));
       }
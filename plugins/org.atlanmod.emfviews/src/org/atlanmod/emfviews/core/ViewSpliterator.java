@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import org.eclipse.emf.ecore.EObject;
+
+import org.atlanmod.emfviews.elements.VirtualContentsIterator;
+
+/**
+ * Traverses the containment trees of a view in pre-order, as eAllContents
+ * does, and splits the traversal by subtree.  See View.stream.
+ */
+final class ViewSpliterator implements Spliterator<EObject> {
+  /*
+   * `pending` holds the roots of the subtrees left to traverse, in encounter
+   * order.  Advancing takes the first one and puts its contents in its place.
+   * Splitting gives the first half of the subtrees to the new spliterator,
+   * which is thus a prefix of this one, as required for ORDERED.  When a single
+   * subtree is left, it is opened first: its root becomes the `head`, returned
+   * before the subtrees of its contents.
+   *
+   * The number of objects is unknown until traversed, so the estimate starts
+   * high and is halved on each split, as Spliterators.AbstractSpliterator does.
+   * This is enough for streams to keep splitting until each thread has its
+   * share.
+   */
+
+  private EObject head; // returned before the pending subtrees, or null
+  private final ArrayDeque<EObject> pending;
+  private long estimate;
+
+  ViewSpliterator(Collection<? extends EObject> roots) {
+    this(null, new ArrayDeque<>(roots), Long.MAX_VALUE);
+  }
+
+  private ViewSpliterator(EObject head, ArrayDeque<EObject> pending, long estimate) {
+    this.head = head;
+    this.pending = pending;
+    this.estimate = estimate;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super EObject> action) {
+    EObject o = head;
+    if (o != null) {
+      head = null;
+    } else {
+      o = pending.pollFirst();
+      if (o == null) {
+        return false;
+      }
+      open(o);
+    }
+    action.accept(o);
+    return true;
+  }
+
+  @Override
+  public Spliterator<EObject> trySplit() {
+    if (head == null && pending.size() == 1) {
+      head = pending.pollFirst();
+      open(head);
+    }
+
+    int n = pending.size();
+    if (n == 0 || (head == null && n == 1)) {
+      return null;
+    }
+
+    ArrayDeque<EObject> prefix = new ArrayDeque<>(n / 2);
+    for (int i = 0; i < n / 2; ++i) {
+      prefix.addLast(pending.pollFirst());
+    }
+    estimate >>>= 1;
+    ViewSpliterator s = new ViewSpliterator(head, prefix, estimate);
+    head = null;
+    return s;
+  }
+
+  @Override
+  public long estimateSize() {
+    return estimate;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+
+  // Replace the subtree of o by the subtrees of its contents
+  private void open(EObject o) {
+    List<EObject> contents = new ArrayList<>();
+    for (Iterator<EObject> it = VirtualContentsIterator.contentsOf(o); it.hasNext();) {
+      contents.add(it.next());
+    }
+    for (int i = contents.size() - 1; i >= 0; --i) {
+      pending.addFirst(contents.get(i));
+    }
+  }
+
+}
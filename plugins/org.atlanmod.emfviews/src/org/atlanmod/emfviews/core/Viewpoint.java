@@ -18,12 +18,17 @@
 package org.atlanmod.emfviews.core;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
@@ -54,16 +59,13 @@ import org.atlanmod.emfviews.elements.VirtualEPackage;
 import org.atlanmod.emfviews.elements.VirtualEReference;
 import org.atlanmod.emfviews.elements.VirtualEStructuralFeature;
 import org.atlanmod.emfviews.util.EMFViewsUtil;
-import org.atlanmod.emfviews.virtuallinks.Association;
-import org.atlanmod.emfviews.virtuallinks.Concept;
-import org.atlanmod.emfviews.virtuallinks.ConcreteElement;
-import org.atlanmod.emfviews.virtuallinks.Element;
-import org.atlanmod.emfviews.virtuallinks.Filter;
-import org.atlanmod.emfviews.virtuallinks.VirtualAssociation;
-import org.atlanmod.emfviews.virtuallinks.VirtualConcept;
-import org.atlanmod.emfviews.virtuallinks.VirtualElement;
+import org.atlanmod.emfviews.util.PathIndex;
+import org.atlanmod.emfviews.core.ViewpointSnapshot.AssociationOp;
+import org.atlanmod.emfviews.core.ViewpointSnapshot.ConceptOp;
+import org.atlanmod.emfviews.core.ViewpointSnapshot.FilterOp;
+import org.atlanmod.emfviews.core.ViewpointSnapshot.PropertyOp;
+import org.atlanmod.emfviews.core.ViewpointSnapshot.Ref;
 import org.atlanmod.emfviews.virtuallinks.VirtualLinksFactory;
-import org.atlanmod.emfviews.virtuallinks.VirtualProperty;
 import org.atlanmod.emfviews.virtuallinks.WeavingModel;
 
 /**
@@ -103,16 +105,30 @@ public class Viewpoint implements EcoreVirtualizer {
                              // used by VirtualEObject.eResource, to please some
                              // modeling tools (e.g. OCL).
 
-  /** Map to keep track of the EObjects created by each *new* element from the
-   * weaving model, in order to be able to use VirtualElement as LinkedElements
-   * in findEObject. */
-  private Map<VirtualElement, EObject> syntheticElements;
+  /** The EObjects created by each *new* element from the weaving model, by
+   * index of the element (see ViewpointSnapshot), in order to be able to use
+   * VirtualElement as LinkedElements in findEObject. */
+  private List<EObject> syntheticElements;
+
+  /** Path indexes of the contributing packages, used by findEObject during
+   * build. */
+  private Map<EObject, PathIndex> pathIndexes;
 
   /** Used by the Virtualizer implementation to cache virtual elements */
   private Map<EObject, EObject> concreteToVirtual;
 
   private boolean whitelist = false;  // whether we are in whitelist mode
 
+  private int epoch = 0; // advanced whenever the virtual metamodel changes, see EcoreVirtualizer.getEpoch
+
+  // Once sealed, the virtual metamodel cannot change.  Volatile, since reading
+  // it is what makes the precomputed state visible to other threads.
+  private volatile boolean sealed = false;
+
+  // Source of dense indexes for virtual classes, see newClassIndex.  Atomic,
+  // since classes can be virtualized by any thread once sealed.
+  private final AtomicInteger classCount = new AtomicInteger();
+
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Constructors
 
@@ -154,6 +170,11 @@ public class Viewpoint implements EcoreVirtualizer {
      */
     public boolean strictEcore = false;
 
+    /**
+     * Whether to seal the viewpoint once built.  See Viewpoint.seal.
+     */
+    public boolean sealed = false;
+
     // These build default rootPackage names and namespace URIs by concatenating
     // the weaving model to the option prefixes.
     public String rootPackageName(String name) {
@@ -173,7 +194,7 @@ public class Viewpoint implements EcoreVirtualizer {
   private static final Options defaultOptions = new Options();
 
   private Map<String, EPackage> contributingPackages; // original, unmodified EPackages
-  private WeavingModel weavingModel;                  // how to modify the EPackages
+  private ViewpointSnapshot snapshot;                 // how to modify the EPackages
 
 
   /** A viewpoint without contributing metamodels is still useful as a virtualizer */
@@ -200,8 +221,18 @@ public class Viewpoint implements EcoreVirtualizer {
    * WeavingModel, and provided Options.
    */
   public Viewpoint(Map<String, EPackage> contributingMetamodels, WeavingModel weavingModel, Options options) {
+    this(contributingMetamodels, ViewpointSnapshot.of(weavingModel), options);
+  }
+
+  /**
+   * Construct a Viewpoint from a map of aliases to contributing metamodels, the
+   * snapshot of a WeavingModel, and provided Options.  Used by
+   * ViewpointResource to restore a viewpoint without loading its weaving
+   * model.
+   */
+  Viewpoint(Map<String, EPackage> contributingMetamodels, ViewpointSnapshot snapshot, Options options) {
     this.contributingPackages = contributingMetamodels;
-    this.weavingModel = weavingModel;
+    this.snapshot = snapshot;
 
     if (options != null) {
       build(options);
@@ -231,6 +262,12 @@ public class Viewpoint implements EcoreVirtualizer {
     return contributingPackages;
   }
 
+  // The instructions this viewpoint was built from, for ViewpointResource to
+  // save
+  ViewpointSnapshot getSnapshot() {
+    return snapshot;
+  }
+
   /**
    * Associate r as resource to this viewpoint.  Mainly useful for serializing a
    * Viewpoint created without a resource, by attaching a ViewpointResource
@@ -252,6 +289,72 @@ public class Viewpoint implements EcoreVirtualizer {
     return whitelist;
   }
 
+  @Override
+  public int getEpoch() {
+    return epoch;
+  }
+
+  @Override
+  public void advanceEpoch() {
+    if (sealed) {
+      throw new IllegalStateException("Cannot modify a sealed viewpoint");
+    }
+    ++epoch;
+  }
+
+  @Override
+  public boolean isSealed() {
+    return sealed;
+  }
+
+  @Override
+  public int newClassIndex() {
+    return classCount.getAndIncrement();
+  }
+
+  /**
+   * Seal the virtual metamodel.
+   *
+   * All virtual elements precompute their derived lists (features,
+   * supertypes, classifiers...), and return them as-is from then on.  Trying
+   * to filter or add virtual elements afterwards throws an
+   * IllegalStateException.  A sealed viewpoint can be read from several threads
+   * at once.
+   *
+   * Sealing assumes the contributing metamodels do not change anymore either,
+   * since changes to them will not be picked up.
+   */
+  public void seal() {
+    if (sealed) {
+      return;
+    }
+
+    // Precomputing an element can virtualize new ones (e.g. the features of a
+    // class), so loop until every virtual element has been precomputed.
+    Set<EObject> done = Collections.newSetFromMap(new IdentityHashMap<>());
+    List<EObject> pending = new ArrayList<>(concreteToVirtual().values());
+    while (!pending.isEmpty()) {
+      for (EObject v : pending) {
+        if (done.add(v)) {
+          ((BaseVirtualElement<?>) v).precompute();
+        }
+      }
+
+      pending.clear();
+      for (EObject v : concreteToVirtual().values()) {
+        if (!done.contains(v)) {
+          pending.add(v);
+        }
+      }
+    }
+
+    // Elements may still be virtualized after sealing, possibly from several
+    // threads at once.
+    concreteToVirtual = new ConcurrentHashMap<>(concreteToVirtual());
+
+    sealed = true;
+  }
+
 
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Constructing the virtual metamodel
@@ -270,10 +373,11 @@ public class Viewpoint implements EcoreVirtualizer {
     // All contributing packages are put under a parent virtual package,
     // otherwise OCL will have difficulties finding classifiers
     EPackage concreteRoot = EcoreFactory.eINSTANCE.createEPackage();
-    String name = weavingModel.getName();
+    String name = snapshot.name;
     concreteRoot.setName(options.rootPackageName(name));
     concreteRoot.setNsURI(options.rootPackageNsURI(name));
     rootPackage = getVirtual(concreteRoot);
+    pathIndexes = new HashMap<>();
 
     // Put each metamodel into a resource set, so that we can easily find elements
     // from it using findEObject.
@@ -304,8 +408,7 @@ public class Viewpoint implements EcoreVirtualizer {
 
     // The virtualPackage holds all the new concepts, but is created only if
     // we have some concepts to put in it
-    List<VirtualConcept> concepts = weavingModel.getVirtualConcepts();
-    if (!concepts.isEmpty()) {
+    if (!snapshot.concepts.isEmpty()) {
       virtualPackage = EcoreFactory.eINSTANCE.createEPackage();
       virtualPackage.setName(name);
       virtualPackage.setNsURI(options.virtualPackageNsURI(name));
@@ -324,32 +427,32 @@ public class Viewpoint implements EcoreVirtualizer {
     if (options.strictEcore) {
       validateVirtualResourceSet(virtualResourceSet);
     }
+
+    // Only needed during the build
+    pathIndexes = null;
+
+    if (options.sealed) {
+      seal();
+    }
   }
 
   // Apply the given filters to all the packages in the virtual resource set.
   private void applyFilters(EPackage.Registry registry) {
-    whitelist = weavingModel.isWhitelist();
-
-    for (Filter f : weavingModel.getFilters()) {
-      ConcreteElement l = f.getTarget();
+    whitelist = snapshot.whitelist;
+    advanceEpoch();
 
+    for (FilterOp f : snapshot.filters) {
       List<EObject> filteredElements = new ArrayList<>();
-      EObject base;
-
-      // If it's a wildcard, then find the base element and collect
-      // all its contents
-      if (l.getPath().endsWith(".*")) {
-        ConcreteElement baseC = VirtualLinksFactory.eINSTANCE.createConcreteElement();
-        baseC.setModel(l.getModel());
-        baseC.setPath(l.getPath().replace(".*", ""));
-        base = findEObject(baseC, registry);
+      EObject base = findEObject(f.target, registry);
+
+      // If it's a wildcard, then collect all the contents of the base element
+      if (f.wildcard) {
         Iterator<EObject> it = base.eAllContents();
         while (it.hasNext()) {
           filteredElements.add(it.next());
         }
       } else {
         // Otherwise it's a single object
-        base = findEObject(l, registry);
         filteredElements.add(base);
       }
 
@@ -359,54 +462,58 @@ public class Viewpoint implements EcoreVirtualizer {
       if (whitelist) {
         EObject e = base;
         while (e != null) {
-          ((BaseVirtualElement<?>) getVirtualGeneric(e)).filtered = true;
+          ((BaseVirtualElement<?>) getVirtualGeneric(e)).setFiltered(true);
           e = e.eContainer();
         }
       }
 
       // Now go over each elements to be filtered, and flip their filtered bit
       for (EObject e : filteredElements) {
-        ((BaseVirtualElement<?>) getVirtualGeneric(e)).filtered = true;
+        ((BaseVirtualElement<?>) getVirtualGeneric(e)).setFiltered(true);
       }
     }
   }
 
-  private Map<VirtualElement, EObject> createSyntheticElements() {
-    Map<VirtualElement, EObject> map = new HashMap<>();
-    for (VirtualElement v : weavingModel.getVirtualElements()) {
-      if (v instanceof VirtualConcept) {
-        map.put(v, EcoreFactory.eINSTANCE.createEClass());
-      } else if (v instanceof VirtualProperty) {
-        map.put(v, EcoreFactory.eINSTANCE.createEAttribute());
-      } else if (v instanceof VirtualAssociation) {
-        map.put(v, EcoreFactory.eINSTANCE.createEReference());
-      } else {
-        throw EX("Unknown instance of virtual element, '%s'", v);
+  private List<EObject> createSyntheticElements() {
+    List<EObject> list = new ArrayList<>(snapshot.syntheticKinds.length);
+    for (byte kind : snapshot.syntheticKinds) {
+      switch (kind) {
+      case ViewpointSnapshot.CONCEPT:
+        list.add(EcoreFactory.eINSTANCE.createEClass());
+        break;
+      case ViewpointSnapshot.PROPERTY:
+        list.add(EcoreFactory.eINSTANCE.createEAttribute());
+        break;
+      case ViewpointSnapshot.ASSOCIATION:
+        list.add(EcoreFactory.eINSTANCE.createEReference());
+        break;
+      default:
+        throw EX("Unknown kind of virtual element, '%d'", kind);
       }
     }
-    return map;
+    return list;
   }
 
   private void buildNewConcepts(EPackage.Registry registry) {
-    for (VirtualConcept c : weavingModel.getVirtualConcepts()) {
-      EClass klass = (EClass) syntheticElements.get(c);
-      klass.setName(c.getName());
+    for (ConceptOp c : snapshot.concepts) {
+      EClass klass = (EClass) syntheticElements.get(c.element);
+      klass.setName(c.name);
       virtualPackage.getEClassifiers().add(klass);
-      getVirtual(klass).synthetic = true;
+      getVirtual(klass).setSynthetic(true);
 
 
-      for (Concept e : c.getSuperConcepts()) {
+      for (Ref e : c.superConcepts) {
         EObject sup = findEObject(e, registry);
         if (!(sup instanceof EClass)) {
-          throw EX("Superconcept '%s' of new concept '%s' should be an EClass", e, c.getName());
+          throw EX("Superconcept '%s' of new concept '%s' should be an EClass", e, c.name);
         }
         klass.getESuperTypes().add((EClass) sup);
       }
 
-      for (Concept e : c.getSubConcepts()) {
+      for (Ref e : c.subConcepts) {
         EObject sub = findEObject(e, registry);
         if (!(sub instanceof EClass)) {
-          throw EX("Subconcept '%s' of new concept '%s' should be an EClass", e, c.getName());
+          throw EX("Subconcept '%s' of new concept '%s' should be an EClass", e, c.name);
         }
         getVirtual((EClass) sub).addVirtualSuperType(klass);
       }
@@ -414,65 +521,64 @@ public class Viewpoint implements EcoreVirtualizer {
   }
 
   private void buildNewProperties(EPackage.Registry registry) {
-    for (VirtualProperty p : weavingModel.getVirtualProperties()) {
-      EObject parent = findEObject(p.getParent(), registry);
+    for (PropertyOp p : snapshot.properties) {
+      EObject parent = findEObject(p.parent, registry);
       if (!(parent instanceof EClass)) {
-        throw EX("Parent of new property '%s' should be an EClass", p.getName());
+        throw EX("Parent of new property '%s' should be an EClass", p.name);
       }
       VirtualEClass parentClass = getVirtual((EClass) parent);
 
-      String n = p.getName();
-      EAttribute attr = (EAttribute) syntheticElements.get(p);
+      String n = p.name;
+      EAttribute attr = (EAttribute) syntheticElements.get(p.element);
       attr.setName(n);
-      attr.setEType(getTypeFromName(p.getType())
-          .orElseThrow(() -> EX("Invalid type '%s' for new property '%s'", p.getType(), n)));
+      attr.setEType(getTypeFromName(p.type)
+          .orElseThrow(() -> EX("Invalid type '%s' for new property '%s'", p.type, n)));
       attr.setUpperBound(1);
-      if (p.isOptional()) {
+      if (p.optional) {
         attr.setLowerBound(0);
       } else {
         attr.setLowerBound(1);
       }
       parentClass.addVirtualFeature(getVirtual(attr));
-      getVirtual(attr).synthetic = true;
+      getVirtual(attr).setSynthetic(true);
     }
   }
 
   private void buildNewAssociations(EPackage.Registry registry) {
-    for (VirtualAssociation a : weavingModel.getVirtualAssociations()) {
+    for (AssociationOp a : snapshot.associations) {
       // Each association is turned into an EReference
 
-      EObject source = findEObject(a.getSource(), registry);
-      EObject target = findEObject(a.getTarget(), registry);
+      EObject source = findEObject(a.source, registry);
+      EObject target = findEObject(a.target, registry);
 
-      EReference ref = (EReference) syntheticElements.get(a);
-      ref.setName(a.getName());
+      EReference ref = (EReference) syntheticElements.get(a.element);
+      ref.setName(a.name);
       if (!(target instanceof EClassifier)) {
         throw EX("Target '%s' of new association '%s' should be an EClassifier", target,
-                 a.getName());
+                 a.name);
       }
 
       ref.setEType((EClassifier) target);
-      ref.setLowerBound(a.getLowerBound());
-      ref.setUpperBound(a.getUpperBound());
+      ref.setLowerBound(a.lowerBound);
+      ref.setUpperBound(a.upperBound);
       if (!(source instanceof EClass)) {
-        throw EX("Source '%s' of new association '%s' should be an EClass", source, a.getName());
+        throw EX("Source '%s' of new association '%s' should be an EClass", source, a.name);
       }
 
-      Association opposite = a.getOpposite();
-      if (opposite != null) {
-        EObject o = findEObject(opposite, registry);
+      if (a.opposite != null) {
+        EObject o = findEObject(a.opposite, registry);
         if (!(o instanceof EReference)) {
-          throw EX("Opposite of new association '%s' should be an EReference", a.getName());
+          throw EX("Opposite of new association '%s' should be an EReference", a.name);
         }
         EReference opp = (EReference) o;
         getVirtual(ref).virtualOpposite = getVirtual(opp);
         getVirtual(opp).virtualOpposite = getVirtual(ref);
       }
 
-      ref.setContainment(a.isComposition());
+      ref.setContainment(a.composition);
 
       getVirtual((EClass) source).addVirtualFeature(getVirtual(ref));
-      getVirtual(ref).synthetic = true;
+      getVirtual(ref).setSynthetic(true);
 
       // We have to set the eContainingClass feature of the reference manually, since the feature is virtual.
       // We don't want this to be done automatically in addVirtualFeature, because we don't want to alter
@@ -491,42 +597,46 @@ public class Viewpoint implements EcoreVirtualizer {
    * registry), so be sure to call getVirtual on the result if the object is to
    * be added to the virtual metamodel.
    */
-  private EObject findEObject(Element elem, EPackage.Registry registry) {
-    // If it's a ConcreteElement, we are looking for an EObject from the
+  private EObject findEObject(Ref elem, EPackage.Registry registry) {
+    // If it's a concrete element, we are looking for an EObject from the
     // contributing metamodels.
-    if (elem instanceof ConcreteElement) {
-      ConcreteElement e = (ConcreteElement) elem;
-
-      String modelURI = e.getModel().getURI();
-      EObject model = registry.getEPackage(modelURI);
-      if (model == null) {
-        throw EX("Model '%s' of concrete element '%s' cannot be found in package registry", modelURI, e.getPath());
-      }
-
-      String path = e.getPath();
-      EObject obj = EMFViewsUtil.findElement(model, path)
-          .orElseThrow(() -> EX("ConcreteElement '%s' cannot be found in model '%s'", path,
-                                modelURI));
-
-      return obj;
-
+    if (!elem.synthetic) {
+      return findConcreteEObject(elem.model, elem.path, registry);
     }
-    // If it's a VirtualElement, then we need to look in the synthetic elements map.
-    else if (elem instanceof VirtualElement) {
-      if (!syntheticElements.containsKey(elem)) {
+    // Otherwise, we need to look in the synthetic elements.
+    else {
+      if (elem.index < 0 || elem.index >= syntheticElements.size()) {
         throw EX("Virtual element for '%s' does not exist or has not been created yet", elem);
       }
 
-      EObject obj = syntheticElements.get(elem);
+      EObject obj = syntheticElements.get(elem.index);
       if (obj == null) {
         throw EX("Virtual element for '%s' is null.  This shouldn't happen.", elem);
       }
 
       return obj;
+    }
+  }
 
+  // Find the element at path in the contributing package of the registry with
+  // the given URI.  Weaving models can refer to thousands of elements, so we
+  // resolve paths through an index of each package rather than scanning it
+  // every time.
+  private EObject findConcreteEObject(String modelURI, String path, EPackage.Registry registry) {
+    EObject model = registry.getEPackage(modelURI);
+    if (model == null) {
+      throw EX("Model '%s' of concrete element '%s' cannot be found in package registry", modelURI, path);
+    }
+
+    Optional<EObject> obj;
+    if (pathIndexes != null) {
+      obj = pathIndexes.computeIfAbsent(model, PathIndex::new).find(path);
     } else {
-      throw EX("Unknown instance of LinkedElement: '%s'", elem.eClass().getName());
+      obj = EMFViewsUtil.findElement(model, path);
     }
+
+    return obj.orElseThrow(() -> EX("ConcreteElement '%s' cannot be found in model '%s'", path,
+                                    modelURI));
   }
 
   // This maps the datatype strings of the weaving model to the actual Ecore
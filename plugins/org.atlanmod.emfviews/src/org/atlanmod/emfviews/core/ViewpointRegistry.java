@@ -0,0 +1,423 @@
+/*******************************************************************************
+ * Copyright (c) 2017--2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.URIConverter;
+
+/**
+ * Registry of viewpoints, by URI of their 'eviewpoint' file.
+ *
+ * Viewpoints are put in the registry when loaded from an 'eviewpoint' file with
+ * the saveInRegistry option, and views pointing to that file use the
+ * registered viewpoint instead of building their own (see
+ * ViewpointResource.registry).
+ *
+ * The registry is safe to use from several threads.  When several views load
+ * the same registered viewpoint at once, only one of them builds it and the
+ * others wait for the result.  An entry is dropped when its 'eviewpoint' file
+ * changes, and the least recently used entries are evicted when the registry
+ * holds more viewpoints than its capacity.
+ *
+ * The registry is also a Map from URI to viewpoint, as it used to be a plain
+ * map.  Lookups through the map methods see the same entries as get, and
+ * iterating over the map goes through a copy of the entries at that time.
+ */
+public class ViewpointRegistry extends AbstractMap<String, Viewpoint> {
+  /*
+   * Entries are kept in an access-ordered LinkedHashMap, which gives us LRU
+   * eviction for free.  All accesses to the map are synchronized on the
+   * registry, but loads happen outside the lock, so that loading one viewpoint
+   * does not block lookups of others.
+   *
+   * @SingleFlight: the first thread to miss on a URI becomes the loader, and
+   * records a latch in `inFlight`.  Other threads missing on the same URI wait
+   * on the latch, and then look up the registry again.  If the loaded viewpoint
+   * was not registered (no saveInRegistry option), or if the load failed, the
+   * waiters load their own: that is what they would have done without the
+   * registry, and it reports the errors in their own resource.  Since they
+   * would then take twice as long, ViewResource only goes through getOrLoad
+   * for viewpoints with the saveInRegistry option.
+   */
+
+  /** Default number of viewpoints kept in a registry */
+  public static final int DEFAULT_CAPACITY = 64;
+
+  /** Loads a viewpoint on a registry miss.  See getOrLoad. */
+  @FunctionalInterface
+  public interface Loader {
+    Viewpoint load() throws IOException;
+  }
+
+  private static class Registered {
+    final Viewpoint viewpoint;
+    final Object stamp; // timestamp or hash of the 'eviewpoint' file, or null
+
+    Registered(Viewpoint viewpoint, Object stamp) {
+      this.viewpoint = viewpoint;
+      this.stamp = stamp;
+    }
+  }
+
+  private int capacity;
+  private final LinkedHashMap<String, Registered> entries =
+    new LinkedHashMap<String, Registered>(16, 0.75f, true) {
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, Registered> eldest) {
+      if (size() > capacity) {
+        evictions.increment();
+        return true;
+      }
+      return false;
+    }
+  };
+  private final Map<String, CountDownLatch> inFlight = new HashMap<>();
+
+  // Statistics
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+  private final LongAdder loadTime = new LongAdder(); // in nanoseconds
+  private final LongAdder evictions = new LongAdder();
+  private final LongAdder invalidations = new LongAdder();
+
+  public ViewpointRegistry() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public ViewpointRegistry(int capacity) {
+    setCapacity(capacity);
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Public API
+
+  /**
+   * Return the viewpoint registered for uri, or null if there is none, or if
+   * the 'eviewpoint' file has changed since the viewpoint was registered.
+   */
+  @Override
+  public Viewpoint get(Object uri) {
+    Viewpoint v = current(uri);
+    if (v != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return v;
+  }
+
+  /** Whether get would return a viewpoint for uri.  Not counted in the statistics. */
+  @Override
+  public boolean containsKey(Object uri) {
+    return current(uri) != null;
+  }
+
+  /**
+   * Return the viewpoint registered for uri.  On a miss, call loader to obtain
+   * the viewpoint.  If other threads are already loading the viewpoint for the
+   * same URI, wait for them to finish first.
+   *
+   * The loader is expected to register the viewpoint itself if it should be
+   * shared, as ViewpointResource does with the saveInRegistry option.
+   * Otherwise, the loaded viewpoint is returned to the caller only.
+   */
+  public Viewpoint getOrLoad(String uri, Loader loader) throws IOException {
+    Viewpoint v = get(uri);
+    if (v != null) {
+      return v;
+    }
+
+    CountDownLatch latch;
+    boolean leader = false;
+    synchronized (this) {
+      latch = inFlight.get(uri);
+      if (latch == null) {
+        latch = new CountDownLatch(1);
+        inFlight.put(uri, latch);
+        leader = true;
+      }
+    }
+
+    if (!leader) {
+      try {
+        latch.await();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for viewpoint " + uri, ex);
+      }
+
+      v = get(uri);
+      if (v != null) {
+        return v;
+      }
+      // See @SingleFlight
+      return timedLoad(loader);
+    }
+
+    try {
+      return timedLoad(loader);
+    } finally {
+      synchronized (this) {
+        inFlight.remove(uri);
+      }
+      latch.countDown();
+    }
+  }
+
+  /**
+   * Register viewpoint v for uri, replacing any previous viewpoint, which is
+   * returned.  If uri points to an existing file, the entry is dropped when the
+   * file changes.
+   */
+  @Override
+  public Viewpoint put(String uri, Viewpoint v) {
+    Registered e = new Registered(v, stamp(uri));
+    Registered previous;
+    synchronized (this) {
+      previous = entries.put(uri, e);
+    }
+    return previous != null ? previous.viewpoint : null;
+  }
+
+  /** Remove the viewpoint registered for uri, if any. */
+  @Override
+  public synchronized Viewpoint remove(Object uri) {
+    Registered e = entries.remove(uri);
+    return e != null ? e.viewpoint : null;
+  }
+
+  /** Remove all viewpoints from the registry. */
+  @Override
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /** Number of viewpoints in the registry. */
+  @Override
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * The entries of the registry.  Iterators go through a copy of the entries
+   * taken when they are created, and removing through them removes from the
+   * registry.  Entries are not checked against their 'eviewpoint' file.
+   */
+  @Override
+  public Set<Map.Entry<String, Viewpoint>> entrySet() {
+    return new AbstractSet<Map.Entry<String, Viewpoint>>() {
+      @Override
+      public Iterator<Map.Entry<String, Viewpoint>> iterator() {
+        List<Map.Entry<String, Viewpoint>> copy = new ArrayList<>();
+        synchronized (ViewpointRegistry.this) {
+          for (Map.Entry<String, Registered> e : entries.entrySet()) {
+            copy.add(new SimpleImmutableEntry<>(e.getKey(), e.getValue().viewpoint));
+          }
+        }
+        Iterator<Map.Entry<String, Viewpoint>> it = copy.iterator();
+        return new Iterator<Map.Entry<String, Viewpoint>>() {
+          private Map.Entry<String, Viewpoint> last;
+
+          @Override
+          public boolean hasNext() {
+            return it.hasNext();
+          }
+
+          @Override
+          public Map.Entry<String, Viewpoint> next() {
+            last = it.next();
+            return last;
+          }
+
+          @Override
+          public void remove() {
+            if (last == null) {
+              throw new IllegalStateException();
+            }
+            ViewpointRegistry.this.remove(last.getKey());
+            last = null;
+          }
+        };
+      }
+
+      @Override
+      public int size() {
+        return ViewpointRegistry.this.size();
+      }
+    };
+  }
+
+  public synchronized int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * Set the maximum number of viewpoints kept in the registry, evicting the
+   * least recently used ones if needed.
+   */
+  public synchronized void setCapacity(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Registry capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+
+    Iterator<String> it = entries.keySet().iterator();
+    while (entries.size() > capacity) {
+      it.next();
+      it.remove();
+      evictions.increment();
+    }
+  }
+
+  /** Return a snapshot of the statistics of this registry. */
+  public Stats getStats() {
+    return new Stats(hits.sum(), misses.sum(), loads.sum(), loadTime.sum(),
+                     evictions.sum(), invalidations.sum());
+  }
+
+  /** Reset the statistics of this registry. */
+  public void resetStats() {
+    hits.reset();
+    misses.reset();
+    loads.reset();
+    loadTime.reset();
+    evictions.reset();
+    invalidations.reset();
+  }
+
+  /**
+   * Statistics of a registry.  Misses include invalidated entries, and loads
+   * are the calls to the loader of getOrLoad.  Also used for the statistics of
+   * a ModelCache, where loads are the models it loaded.
+   */
+  public static final class Stats {
+    public final long hits;
+    public final long misses;
+    public final long loads;
+    public final long loadTimeNanos; // total time spent in loads
+    public final long evictions;
+    public final long invalidations;
+
+    Stats(long hits, long misses, long loads, long loadTimeNanos, long evictions,
+          long invalidations) {
+      this.hits = hits;
+      this.misses = misses;
+      this.loads = loads;
+      this.loadTimeNanos = loadTimeNanos;
+      this.evictions = evictions;
+      this.invalidations = invalidations;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("hits=%d misses=%d loads=%d loadTime=%dms evictions=%d invalidations=%d",
+                           hits, misses, loads, loadTimeNanos / 1_000_000, evictions,
+                           invalidations);
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Internals
+
+  // The viewpoint registered for uri, dropping it if its file has changed
+  private Viewpoint current(Object uri) {
+    Registered e;
+    synchronized (this) {
+      e = entries.get(uri);
+    }
+    if (e == null) {
+      return null;
+    }
+
+    // Stamping may read the file, so do it outside the lock
+    if (e.stamp != null && !e.stamp.equals(stamp((String) uri))) {
+      synchronized (this) {
+        // Only drop the stale entry, not a fresh one put in the meantime
+        if (entries.get(uri) == e) {
+          entries.remove(uri);
+          invalidations.increment();
+        }
+      }
+      return null;
+    }
+    return e.viewpoint;
+  }
+
+  private Viewpoint timedLoad(Loader loader) throws IOException {
+    long start = System.nanoTime();
+    try {
+      return loader.load();
+    } finally {
+      loads.increment();
+      loadTime.add(System.nanoTime() - start);
+    }
+  }
+
+  // Identify the current version of the file at uri: its timestamp if the URI
+  // handler provides one, or else the hash of its contents.  Return null if the
+  // file cannot be read, in which case the entry is never invalidated.  Also
+  // used by ModelCache.
+  static Object stamp(String uriString) {
+    URI uri;
+    try {
+      uri = URI.createURI(uriString);
+    } catch (IllegalArgumentException ex) {
+      return null;
+    }
+
+    URIConverter converter = URIConverter.INSTANCE;
+    Object timestamp = converter.getAttributes(uri, null).get(URIConverter.ATTRIBUTE_TIME_STAMP);
+    // Missing files have a zero timestamp
+    if (timestamp instanceof Long && (Long) timestamp > 0) {
+      return timestamp;
+    }
+
+    try (InputStream in = converter.createInputStream(uri)) {
+      MessageDigest md = MessageDigest.getInstance("SHA-256");
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        md.update(buf, 0, n);
+      }
+      // Wrap in a buffer to compare hashes by value
+      return ByteBuffer.wrap(md.digest());
+    } catch (IOException | NoSuchAlgorithmException ex) {
+      return null;
+    }
+  }
+
+}
@@ -17,14 +17,22 @@
 
 package org.atlanmod.emfviews.core;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.TreeSet;
 
 import org.eclipse.emf.common.util.ECollections;
 import org.eclipse.emf.common.util.EList;
@@ -32,6 +40,7 @@ import org.eclipse.emf.common.util.URI;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EPackage;
 import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.URIConverter;
 import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
 import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
 
@@ -60,6 +69,7 @@ public class ViewpointResource extends ResourceImpl {
   private List<String> contributingMetamodelsPaths; // paths to contributing metamodels
   private URI weavingModelURI;                      // path to the weaving model
   private Viewpoint viewpoint;                      // created viewpoint
+  private LoadStats loadStats;                      // of the last load
 
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Public API
@@ -69,6 +79,9 @@ public class ViewpointResource extends ResourceImpl {
   public static final String EVIEWPOINT_WEAVING_MODEL = "weavingModel";
   public static final String EVIEWPOINT_ROOTPKG_NSURI = "rootPackageNsURI";
   public static final String EVIEWPOINT_SAVE_IN_REGISTRY = "saveInRegistry";
+  public static final String EVIEWPOINT_SEALED = "sealed";
+  public static final String EVIEWPOINT_SNAPSHOT = "snapshot";
+  public static final String EVIEWPOINT_BINARY_CACHE = "binaryCache";
 
   /**
    * Keep track of created Viewpoints.
@@ -81,8 +94,11 @@ public class ViewpointResource extends ResourceImpl {
    * We keep track of viewpoints in ViewpointResource because we use the
    * resource URI as key, to let views find the viewpoint associated with a
    * given file path.
+   *
+   * The registry is bounded and thread-safe, and still a Map from URI to
+   * viewpoint; see ViewpointRegistry.
    */
-  public static final Map<String, Viewpoint> registry = new HashMap<>();
+  public static final ViewpointRegistry registry = new ViewpointRegistry();
 
 
   public ViewpointResource() {
@@ -107,6 +123,42 @@ public class ViewpointResource extends ResourceImpl {
     return viewpoint;
   }
 
+  /**
+   * Time spent in each phase of the last load of this resource, or null if it
+   * did not get to build a viewpoint.
+   */
+  public LoadStats getLoadStats() {
+    return loadStats;
+  }
+
+  /**
+   * Statistics of the load of a viewpoint.  The instructions are obtained
+   * either from the weaving model, or from a snapshot (see @Snapshot), in
+   * which case fromSnapshot is true.  Restoring from a snapshot only saves the
+   * instructions phase: the virtual metamodel is built again from the
+   * contributing metamodels in both cases.
+   */
+  public static final class LoadStats {
+    public final boolean fromSnapshot;
+    public final long metamodelsNanos;   // loading the contributing metamodels
+    public final long instructionsNanos; // loading the weaving model or snapshot
+    public final long buildNanos;        // building the virtual metamodel
+
+    LoadStats(boolean fromSnapshot, long metamodelsNanos, long instructionsNanos, long buildNanos) {
+      this.fromSnapshot = fromSnapshot;
+      this.metamodelsNanos = metamodelsNanos;
+      this.instructionsNanos = instructionsNanos;
+      this.buildNanos = buildNanos;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("snapshot=%b metamodels=%dms instructions=%dms build=%dms",
+                           fromSnapshot, metamodelsNanos / 1_000_000,
+                           instructionsNanos / 1_000_000, buildNanos / 1_000_000);
+    }
+  }
+
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Loading/saving the 'eviewpoint' file
 
@@ -123,6 +175,8 @@ public class ViewpointResource extends ResourceImpl {
     }
 
     Viewpoint.Options options = new Viewpoint.Options();
+    boolean useSnapshot = false;
+    boolean binaryCache = false;
 
     for (String key : p.stringPropertyNames()) {
       switch (key) {
@@ -152,6 +206,18 @@ public class ViewpointResource extends ResourceImpl {
         options.saveInRegistry = true;
         break;
 
+      case EVIEWPOINT_SEALED:
+        options.sealed = true;
+        break;
+
+      case EVIEWPOINT_SNAPSHOT:
+        useSnapshot = true;
+        break;
+
+      case EVIEWPOINT_BINARY_CACHE:
+        binaryCache = true;
+        break;
+
       default:
         getErrors().add(new Err("Invalid key in eviewpoint file: '%s'", key));
       }
@@ -159,9 +225,19 @@ public class ViewpointResource extends ResourceImpl {
 
     // Then create the viewpoint
     try {
-      setViewpoint(new Viewpoint(loadMetamodels(),
-                                 loadWeavingModel(),
-                                 options));
+      long start = System.nanoTime();
+      Map<String, EPackage> metamodels = loadMetamodels(binaryCache);
+      long metamodelsNanos = System.nanoTime() - start;
+      if (useSnapshot) {
+        setViewpoint(loadWithSnapshot(p, metamodels, options, metamodelsNanos));
+      } else {
+        start = System.nanoTime();
+        WeavingModel wm = loadWeavingModel();
+        long instructions = System.nanoTime();
+        setViewpoint(new Viewpoint(metamodels, wm, options));
+        loadStats = new LoadStats(false, metamodelsNanos, instructions - start,
+                                  System.nanoTime() - instructions);
+      }
       // Register the viewpoint in the viewpoint registry. This allows views to
       // load viewpoints from the registry instead of creating them anew in a
       // resource.
@@ -175,8 +251,22 @@ public class ViewpointResource extends ResourceImpl {
     }
   }
 
+  /**
+   * Whether the 'eviewpoint' file at uri has the saveInRegistry option.  If the
+   * file cannot be read, assume it does, so that the load reports the error.
+   */
+  static boolean savesInRegistry(URI uri) {
+    Properties p = new Properties();
+    try (InputStream in = URIConverter.INSTANCE.createInputStream(uri)) {
+      p.load(in);
+    } catch (IOException | IllegalArgumentException ex) {
+      return true;
+    }
+    return p.containsKey(EVIEWPOINT_SAVE_IN_REGISTRY);
+  }
+
   // Return a map of aliases to EPackage from the list of metamodels paths
-  private Map<String, EPackage> loadMetamodels() {
+  private Map<String, EPackage> loadMetamodels(boolean binaryCache) {
     Map<String, EPackage> packages = new HashMap<>();
     for (String path : contributingMetamodelsPaths) {
 
@@ -195,7 +285,13 @@ public class ViewpointResource extends ResourceImpl {
 
       // Then try to load it as a resource
       if (p == null) {
-        Resource r = new ResourceSetImpl().getResource(uri, true);
+        Resource r;
+        if (binaryCache) {
+          r = BinaryResourceCache.load(new ResourceSetImpl(), uri,
+                                       w -> getWarnings().add(new Err(w)));
+        } else {
+          r = new ResourceSetImpl().getResource(uri, true);
+        }
         EPackage pack = (EPackage) r.getContents().get(0);
         // @Assumption: the Ecore contains only one EPackage we care about
 
@@ -211,7 +307,7 @@ public class ViewpointResource extends ResourceImpl {
   }
 
   // Load and return the weaving model from URI
-  private WeavingModel loadWeavingModel() {
+  private WeavingModel loadWeavingModel() throws IOException {
     // If the eviewpoint file does not specify the weaving model,
     // return an empty one.
     if (weavingModelURI == null) {
@@ -219,6 +315,9 @@ public class ViewpointResource extends ResourceImpl {
     }
 
     URI uri = weavingModelURI.resolve(getURI());
+    if (BinaryWeavingModel.isBinary(uri)) {
+      return BinaryWeavingModel.read(uri);
+    }
     Resource r = new ResourceSetImpl().getResource(uri, true);
     EObject wm = r.getContents().get(0);
     if (!(wm instanceof WeavingModel)) {
@@ -227,9 +326,119 @@ public class ViewpointResource extends ResourceImpl {
     return (WeavingModel) wm;
   }
 
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Snapshots
+
+  // @Snapshot: loading the weaving model is often the most expensive part of
+  // creating a viewpoint.  With the 'snapshot' option, we save the
+  // instructions of the weaving model (see ViewpointSnapshot) next to the
+  // eviewpoint file, and reuse them as long as none of the inputs change.  The
+  // snapshot is tagged with a hash of the eviewpoint properties, and of the
+  // contents of the contributing metamodels and of the weaving model, so a
+  // stale snapshot is simply rebuilt.  Hashing the files is much cheaper than
+  // parsing the weaving model, and unlike timestamps, catches every edit.
+  //
+  // The contributing metamodels are always loaded, since the virtual metamodel
+  // wraps their elements.
+
+  private Viewpoint loadWithSnapshot(Properties p, Map<String, EPackage> metamodels,
+                                     Viewpoint.Options options, long metamodelsNanos)
+    throws IOException {
+    long start = System.nanoTime();
+    URIConverter converter = new ResourceSetImpl().getURIConverter();
+    URI snapshotURI = getURI().appendFileExtension("snapshot");
+    byte[] hash = contentHash(p, converter);
+
+    ViewpointSnapshot snapshot = readSnapshot(snapshotURI, hash, converter);
+    if (snapshot != null) {
+      long instructions = System.nanoTime();
+      Viewpoint v = new Viewpoint(metamodels, snapshot, options);
+      loadStats = new LoadStats(true, metamodelsNanos, instructions - start,
+                                System.nanoTime() - instructions);
+      return v;
+    }
+
+    WeavingModel wm = loadWeavingModel();
+    long instructions = System.nanoTime();
+    Viewpoint v = new Viewpoint(metamodels, wm, options);
+    loadStats = new LoadStats(false, metamodelsNanos, instructions - start,
+                              System.nanoTime() - instructions);
+    try {
+      // Concurrent loads of this eviewpoint may read the snapshot, see replace
+      BinaryResourceCache.replace(snapshotURI, converter, o -> {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(o));
+        v.getSnapshot().write(out, hash);
+        out.flush();
+      });
+    } catch (IOException ex) {
+      // The viewpoint is fine, we just won't be able to load it faster next time
+      getWarnings().add(new Err("Failed to write viewpoint snapshot '%s': %s", snapshotURI, ex));
+    }
+    return v;
+  }
+
+  // Return the snapshot at uri if it matches the hash, or null
+  private ViewpointSnapshot readSnapshot(URI uri, byte[] hash, URIConverter converter) {
+    if (!converter.exists(uri, null)) {
+      return null;
+    }
+
+    try (DataInputStream in =
+           new DataInputStream(new BufferedInputStream(converter.createInputStream(uri)))) {
+      return ViewpointSnapshot.read(in, hash);
+    } catch (IOException | RuntimeException ex) {
+      // A truncated or corrupt snapshot is rebuilt, like a stale one
+      return null;
+    }
+  }
+
+  // Hash everything the viewpoint is built from
+  private byte[] contentHash(Properties p, URIConverter converter) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IOException(ex);
+    }
+
+    for (String key : new TreeSet<>(p.stringPropertyNames())) {
+      md.update((key + "=" + p.getProperty(key) + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    for (String path : contributingMetamodelsPaths) {
+      URI uri = URI.createURI(path.split("::")[1]).resolve(getURI());
+      // Registered metamodels have no file we can read, but they cannot change
+      // without restarting either
+      if (EPackage.Registry.INSTANCE.containsKey(uri.toString())) {
+        md.update(("registry:" + uri).getBytes(StandardCharsets.UTF_8));
+      } else {
+        digest(md, converter, uri);
+      }
+    }
+
+    if (weavingModelURI == null) {
+      md.update("empty".getBytes(StandardCharsets.UTF_8));
+    } else {
+      digest(md, converter, weavingModelURI.resolve(getURI()));
+    }
+
+    return md.digest();
+  }
+
+  static void digest(MessageDigest md, URIConverter converter, URI uri) throws IOException {
+    try (InputStream in = converter.createInputStream(uri)) {
+      byte[] buf = new byte[8192];
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        md.update(buf, 0, n);
+      }
+    }
+  }
+
   @Override
   protected void doUnload() {
     viewpoint = null;
+    loadStats = null;
     contributingMetamodelsPaths = null;
     weavingModelURI = null;
 
@@ -0,0 +1,399 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.atlanmod.emfviews.virtuallinks.ConcreteElement;
+import org.atlanmod.emfviews.virtuallinks.Element;
+import org.atlanmod.emfviews.virtuallinks.Filter;
+import org.atlanmod.emfviews.virtuallinks.VirtualAssociation;
+import org.atlanmod.emfviews.virtuallinks.VirtualConcept;
+import org.atlanmod.emfviews.virtuallinks.VirtualElement;
+import org.atlanmod.emfviews.virtuallinks.VirtualProperty;
+import org.atlanmod.emfviews.virtuallinks.WeavingModel;
+
+/**
+ * Everything Viewpoint.build needs to create a virtual metamodel: the filters,
+ * the new concepts (with their supertypes and subtypes), the new properties and
+ * the new associations (with their opposites), along with the whitelist flag.
+ *
+ * This is the weaving model of a viewpoint reduced to plain data: concrete
+ * elements are referenced by model URI and path, and synthetic elements by
+ * their index.  Unlike the weaving model, a snapshot can be written to and read
+ * from a compact binary form, which lets ViewpointResource restore a viewpoint
+ * without loading its weaving model again.
+ */
+final class ViewpointSnapshot {
+  /*
+   * The binary form is a header (magic, version, content hash), followed by the
+   * fields of the snapshot in order.  Strings are written with writeUTF, lists
+   * are prefixed by their size.  Any change to the layout must bump VERSION, so
+   * that stale snapshots are discarded rather than misread.
+   */
+
+  static final int MAGIC = 0x45565053; // "EVPS"
+  static final int VERSION = 1;
+
+  /** Kinds of synthetic elements */
+  static final byte CONCEPT = 0;
+  static final byte PROPERTY = 1;
+  static final byte ASSOCIATION = 2;
+
+  /**
+   * A reference to an element of the viewpoint: either a concrete element from
+   * a contributing metamodel, or a synthetic element.
+   */
+  static final class Ref {
+    final boolean synthetic;
+    final String model; // URI of the contributing metamodel, for concrete elements
+    final String path;  // path of concrete elements, description of synthetic ones
+    final int index;    // index of synthetic elements, or -1 if unknown
+
+    private Ref(boolean synthetic, String model, String path, int index) {
+      this.synthetic = synthetic;
+      this.model = model;
+      this.path = path;
+      this.index = index;
+    }
+
+    static Ref concrete(String model, String path) {
+      return new Ref(false, model, path, -1);
+    }
+
+    static Ref synthetic(String description, int index) {
+      return new Ref(true, null, description, index);
+    }
+
+    @Override
+    public String toString() {
+      return path;
+    }
+  }
+
+  static final class FilterOp {
+    Ref target;
+    boolean wildcard; // whether to filter all the contents of the target as well
+  }
+
+  static final class ConceptOp {
+    int element;
+    String name;
+    List<Ref> superConcepts = new ArrayList<>();
+    List<Ref> subConcepts = new ArrayList<>();
+  }
+
+  static final class PropertyOp {
+    int element;
+    String name;
+    Ref parent;
+    String type;
+    boolean optional;
+  }
+
+  static final class AssociationOp {
+    int element;
+    String name;
+    Ref source;
+    Ref target;
+    int lowerBound;
+    int upperBound;
+    boolean composition;
+    Ref opposite; // may be null
+  }
+
+  String name;
+  boolean whitelist;
+  byte[] syntheticKinds = new byte[0]; // kind of each synthetic element, by index
+  List<FilterOp> filters = new ArrayList<>();
+  List<ConceptOp> concepts = new ArrayList<>();
+  List<PropertyOp> properties = new ArrayList<>();
+  List<AssociationOp> associations = new ArrayList<>();
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // From a weaving model
+
+  /** Reduce the weaving model to a snapshot. */
+  static ViewpointSnapshot of(WeavingModel wm) {
+    ViewpointSnapshot s = new ViewpointSnapshot();
+    s.name = wm.getName();
+    s.whitelist = wm.isWhitelist();
+
+    // Synthetic elements are referenced by their index in the weaving model
+    Map<VirtualElement, Integer> indexes = new IdentityHashMap<>();
+    List<VirtualElement> elems = wm.getVirtualElements();
+    s.syntheticKinds = new byte[elems.size()];
+    for (int i = 0; i < elems.size(); ++i) {
+      VirtualElement v = elems.get(i);
+      indexes.put(v, i);
+      if (v instanceof VirtualConcept) {
+        s.syntheticKinds[i] = CONCEPT;
+      } else if (v instanceof VirtualProperty) {
+        s.syntheticKinds[i] = PROPERTY;
+      } else if (v instanceof VirtualAssociation) {
+        s.syntheticKinds[i] = ASSOCIATION;
+      } else {
+        throw new ViewpointException("Unknown instance of virtual element, '%s'", v);
+      }
+    }
+
+    for (Filter f : wm.getFilters()) {
+      FilterOp op = new FilterOp();
+      ConcreteElement l = f.getTarget();
+      String path = l.getPath();
+      op.wildcard = path.endsWith(".*");
+      if (op.wildcard) {
+        path = path.replace(".*", "");
+      }
+      op.target = Ref.concrete(l.getModel().getURI(), path);
+      s.filters.add(op);
+    }
+
+    for (VirtualConcept c : wm.getVirtualConcepts()) {
+      ConceptOp op = new ConceptOp();
+      op.element = index(indexes, c);
+      op.name = c.getName();
+      for (Element e : c.getSuperConcepts()) {
+        op.superConcepts.add(ref(indexes, e));
+      }
+      for (Element e : c.getSubConcepts()) {
+        op.subConcepts.add(ref(indexes, e));
+      }
+      s.concepts.add(op);
+    }
+
+    for (VirtualProperty p : wm.getVirtualProperties()) {
+      PropertyOp op = new PropertyOp();
+      op.element = index(indexes, p);
+      op.name = p.getName();
+      op.parent = ref(indexes, p.getParent());
+      op.type = p.getType();
+      op.optional = p.isOptional();
+      s.properties.add(op);
+    }
+
+    for (VirtualAssociation a : wm.getVirtualAssociations()) {
+      AssociationOp op = new AssociationOp();
+      op.element = index(indexes, a);
+      op.name = a.getName();
+      op.source = ref(indexes, a.getSource());
+      op.target = ref(indexes, a.getTarget());
+      op.lowerBound = a.getLowerBound();
+      op.upperBound = a.getUpperBound();
+      op.composition = a.isComposition();
+      op.opposite = a.getOpposite() != null ? ref(indexes, a.getOpposite()) : null;
+      s.associations.add(op);
+    }
+
+    return s;
+  }
+
+  private static int index(Map<VirtualElement, Integer> indexes, VirtualElement v) {
+    Integer i = indexes.get(v);
+    if (i == null) {
+      throw new ViewpointException("Virtual element for '%s' does not exist or has not been created yet", v);
+    }
+    return i;
+  }
+
+  private static Ref ref(Map<VirtualElement, Integer> indexes, Element e) {
+    if (e instanceof ConcreteElement) {
+      ConcreteElement c = (ConcreteElement) e;
+      return Ref.concrete(c.getModel().getURI(), c.getPath());
+    } else if (e instanceof VirtualElement) {
+      // An unknown element is reported when the snapshot is applied, so that
+      // errors come in the same order as when building from the weaving model
+      Integer i = indexes.get(e);
+      return Ref.synthetic(String.valueOf(e), i != null ? i : -1);
+    } else {
+      throw new ViewpointException("Unknown instance of LinkedElement: '%s'", e.eClass().getName());
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Binary form
+
+  /** Write the snapshot, tagged with the hash of the content it was built from. */
+  void write(DataOutputStream out, byte[] hash) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.writeInt(hash.length);
+    out.write(hash);
+
+    writeString(out, name);
+    out.writeBoolean(whitelist);
+    out.writeInt(syntheticKinds.length);
+    out.write(syntheticKinds);
+
+    out.writeInt(filters.size());
+    for (FilterOp op : filters) {
+      writeRef(out, op.target);
+      out.writeBoolean(op.wildcard);
+    }
+
+    out.writeInt(concepts.size());
+    for (ConceptOp op : concepts) {
+      out.writeInt(op.element);
+      writeString(out, op.name);
+      writeRefs(out, op.superConcepts);
+      writeRefs(out, op.subConcepts);
+    }
+
+    out.writeInt(properties.size());
+    for (PropertyOp op : properties) {
+      out.writeInt(op.element);
+      writeString(out, op.name);
+      writeRef(out, op.parent);
+      writeString(out, op.type);
+      out.writeBoolean(op.optional);
+    }
+
+    out.writeInt(associations.size());
+    for (AssociationOp op : associations) {
+      out.writeInt(op.element);
+      writeString(out, op.name);
+      writeRef(out, op.source);
+      writeRef(out, op.target);
+      out.writeInt(op.lowerBound);
+      out.writeInt(op.upperBound);
+      out.writeBoolean(op.composition);
+      out.writeBoolean(op.opposite != null);
+      if (op.opposite != null) {
+        writeRef(out, op.opposite);
+      }
+    }
+  }
+
+  /**
+   * Read a snapshot written by write.
+   *
+   * @return the snapshot, or null if it was written by another version, or
+   * from content with a different hash.
+   */
+  static ViewpointSnapshot read(DataInputStream in, byte[] hash) throws IOException {
+    if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+      return null;
+    }
+    byte[] h = new byte[in.readInt()];
+    in.readFully(h);
+    if (!Arrays.equals(h, hash)) {
+      return null;
+    }
+
+    ViewpointSnapshot s = new ViewpointSnapshot();
+    s.name = readString(in);
+    s.whitelist = in.readBoolean();
+    s.syntheticKinds = new byte[in.readInt()];
+    in.readFully(s.syntheticKinds);
+
+    for (int i = in.readInt(); i > 0; --i) {
+      FilterOp op = new FilterOp();
+      op.target = readRef(in);
+      op.wildcard = in.readBoolean();
+      s.filters.add(op);
+    }
+
+    for (int i = in.readInt(); i > 0; --i) {
+      ConceptOp op = new ConceptOp();
+      op.element = in.readInt();
+      op.name = readString(in);
+      op.superConcepts = readRefs(in);
+      op.subConcepts = readRefs(in);
+      s.concepts.add(op);
+    }
+
+    for (int i = in.readInt(); i > 0; --i) {
+      PropertyOp op = new PropertyOp();
+      op.element = in.readInt();
+      op.name = readString(in);
+      op.parent = readRef(in);
+      op.type = readString(in);
+      op.optional = in.readBoolean();
+      s.properties.add(op);
+    }
+
+    for (int i = in.readInt(); i > 0; --i) {
+      AssociationOp op = new AssociationOp();
+      op.element = in.readInt();
+      op.name = readString(in);
+      op.source = readRef(in);
+      op.target = readRef(in);
+      op.lowerBound = in.readInt();
+      op.upperBound = in.readInt();
+      op.composition = in.readBoolean();
+      op.opposite = in.readBoolean() ? readRef(in) : null;
+      s.associations.add(op);
+    }
+
+    return s;
+  }
+
+  // Strings may be null (e.g., unnamed elements), which writeUTF does not allow
+  private static void writeString(DataOutputStream out, String s) throws IOException {
+    out.writeBoolean(s != null);
+    if (s != null) {
+      out.writeUTF(s);
+    }
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    return in.readBoolean() ? in.readUTF() : null;
+  }
+
+  private static void writeRef(DataOutputStream out, Ref r) throws IOException {
+    out.writeBoolean(r.synthetic);
+    if (r.synthetic) {
+      out.writeInt(r.index);
+    } else {
+      writeString(out, r.model);
+    }
+    writeString(out, r.path);
+  }
+
+  private static Ref readRef(DataInputStream in) throws IOException {
+    if (in.readBoolean()) {
+      int index = in.readInt();
+      return Ref.synthetic(readString(in), index);
+    } else {
+      String model = readString(in);
+      return Ref.concrete(model, readString(in));
+    }
+  }
+
+  private static void writeRefs(DataOutputStream out, List<Ref> refs) throws IOException {
+    out.writeInt(refs.size());
+    for (Ref r : refs) {
+      writeRef(out, r);
+    }
+  }
+
+  private static List<Ref> readRefs(DataInputStream in) throws IOException {
+    List<Ref> refs = new ArrayList<>();
+    for (int i = in.readInt(); i > 0; --i) {
+      refs.add(readRef(in));
+    }
+    return refs;
+  }
+
+}
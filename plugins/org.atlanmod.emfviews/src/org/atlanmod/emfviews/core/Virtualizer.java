@@ -18,10 +18,14 @@ package org.atlanmod.emfviews.core;
 
 import java.util.List;
 
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notifier;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
 
 import org.atlanmod.emfviews.elements.VirtualEObject;
+import org.atlanmod.emfviews.util.ModificationCounter;
 
 /**
  * Projects an EObject to a virtual model element.
@@ -32,6 +36,64 @@ public interface Virtualizer {
 
   List<EObject> getMatchesForRule(String ruleName, EObject param, boolean rightHand);
 
+  /**
+   * Whether virtual features may be populated by match rules.  If so, their
+   * values follow changes of the concrete objects.
+   */
+  default boolean hasMatchRules() {
+    return false;
+  }
+
+  /** Whether there is a match rule named ruleName.  See hasMatchRules. */
+  default boolean hasMatchRule(String ruleName) {
+    return hasMatchRules();
+  }
+
   /** Tell the virtualizer to correctly handle filtered objects */
   void activateObjectFiltering();
+
+  /**
+   * Hide or show again the virtual counterpart of the concrete object o.  Hidden
+   * objects do not appear in the virtual model.
+   */
+  void setHidden(EObject o, boolean hidden);
+
+  /**
+   * Whether the virtual counterpart of the concrete object o is hidden.  This
+   * does not virtualize o.
+   */
+  boolean isHidden(EObject o);
+
+  /**
+   * A number that changes whenever a virtual object is hidden or shown again.
+   * Lists of visible objects compare it to know when to recompute.
+   */
+  int getHiddenVersion();
+
+  /**
+   * The modification counter of the concrete object or resource n, attached on
+   * first call.  The virtualizer detaches its counters when it is disposed.
+   */
+  ModificationCounter getModificationCounter(Notifier n);
+
+  /**
+   * Attach a to the concrete object n, to follow its changes.  The virtualizer
+   * detaches it when it is disposed.
+   */
+  void attachAdapter(Notifier n, Adapter a);
+
+  /**
+   * Tell the virtualizer that v now holds virtual state, and must not be
+   * replaced by a new virtual object for the same concrete object.
+   */
+  default void retain(VirtualEObject v) {}
+
+  /**
+   * The values of the virtual feature of the concrete object o, if the
+   * virtualizer keeps them outside of virtual objects, or null.  See
+   * AssociationStore.
+   */
+  default List<EObject> getStoredValues(EObject o, EStructuralFeature feature) {
+    return null;
+  }
 }
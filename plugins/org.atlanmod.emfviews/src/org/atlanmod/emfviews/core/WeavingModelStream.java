@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright (c) 2017--2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.io.IOException;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+
+/**
+ * Reads the links of a view weaving model straight from its file, without
+ * creating the EObjects of the weaving model.
+ *
+ * View uses it to apply each virtual property, association and filter as it is
+ * read, so that the links are never held in memory.  Weaving models can be
+ * read from XMI (see XmiWeavingModelStream) or from the binary format of
+ * BinaryWeavingModel.
+ */
+abstract class WeavingModelStream {
+
+  /** A concrete element of a contributing model. */
+  static final class Element {
+    final String model; // URI of the contributing model
+    final String path;  // URI fragment of the element in the model
+
+    // The element in the contributing model, once resolved by the view.  Links
+    // share their Element objects, so each is resolved once (see View.build).
+    EObject object;
+    boolean resolved;
+
+    Element(String model, String path) {
+      this.model = model;
+      this.path = path;
+    }
+  }
+
+  /** Receives the links of the weaving model, in file order. */
+  interface Handler {
+    void property(Element parent, String name, String value);
+    void association(Element source, String name, Element target);
+    void filter(Element target);
+  }
+
+  /**
+   * Open the weaving model at uri for streaming.  Return null if the file
+   * cannot be streamed, in which case it should be loaded as a resource.
+   */
+  static WeavingModelStream open(URI uri) throws IOException {
+    if (BinaryWeavingModel.isBinary(uri)) {
+      return BinaryWeavingModel.stream(uri);
+    }
+    return XmiWeavingModelStream.open(uri);
+  }
+
+  /** Time spent preparing the stream, before reading links, in nanoseconds. */
+  abstract long getScanNanos();
+
+  /** Read the links of the weaving model, and pass them to handler. */
+  abstract void read(Handler handler) throws IOException;
+
+}
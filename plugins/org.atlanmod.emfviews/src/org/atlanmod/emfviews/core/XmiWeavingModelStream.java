@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (c) 2017--2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.resource.URIConverter;
+
+/**
+ * Reads the links of a view weaving model straight from its XMI file, without
+ * creating the EObjects of the weaving model.  Only the concrete elements,
+ * which links refer to, are kept, as plain (model, path) pairs.
+ *
+ * Only the XMI that EMF writes for weaving models is understood: links in
+ * 'virtualLinks' elements, referring to concrete elements of the same file by
+ * path or by ID.  For anything else, open returns null, and the weaving model
+ * should be loaded as a resource instead.
+ */
+final class XmiWeavingModelStream extends WeavingModelStream {
+  /*
+   * The concrete elements come after the links in the file, so the file is
+   * read twice: first to collect the concrete elements (in open), then to
+   * hand out the links (in read).  Elements are kept in arrays by position,
+   * which is what references in the file point to.  The first pass also checks that the file
+   * has nothing we cannot stream.
+   */
+
+  private static final String XMI_NS = "http://www.omg.org/XMI";
+  private static final String XSI_NS = "http://www.w3.org/2001/XMLSchema-instance";
+
+  // Links refer to concrete elements by XMI reference, which EMF writes as
+  // MODEL_REF + model index + ELEMENT_REF + element index, or by ID
+  private static final String MODEL_REF = "//@contributingModels.";
+  private static final String ELEMENT_REF = "/@concreteElements.";
+
+  private final URI uri;
+  private final Element[][] elements; // by model index, then element index
+  private final Map<String, Element> ids; // elements that have an XMI ID
+  private final long scanNanos;
+
+  private XmiWeavingModelStream(URI uri, Element[][] elements, Map<String, Element> ids,
+                                long scanNanos) {
+    this.uri = uri;
+    this.elements = elements;
+    this.ids = ids;
+    this.scanNanos = scanNanos;
+  }
+
+  /**
+   * Collect the concrete elements of the weaving model at uri.  Return null if
+   * the file cannot be streamed.
+   */
+  static XmiWeavingModelStream open(URI uri) throws IOException {
+    long start = System.nanoTime();
+    List<List<Element>> models = new ArrayList<>();
+    Map<String, Element> ids = new HashMap<>();
+
+    try (InputStream in = URIConverter.INSTANCE.createInputStream(uri)) {
+      XMLStreamReader r = newReader(in);
+      int depth = 0;
+      String model = null;
+
+      while (r.hasNext()) {
+        int event = r.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          ++depth;
+          String name = r.getLocalName();
+
+          if (depth == 1) {
+            if (!"WeavingModel".equals(name)) {
+              return null;
+            }
+          } else if (depth == 2 && "contributingModels".equals(name)) {
+            models.add(new ArrayList<>());
+            model = r.getAttributeValue(null, "URI");
+          } else if (depth == 3 && "concreteElements".equals(name)) {
+            Element e = new Element(model, r.getAttributeValue(null, "path"));
+            models.get(models.size() - 1).add(e);
+            String id = r.getAttributeValue(XMI_NS, "id");
+            if (id != null) {
+              ids.put(id, e);
+            }
+          } else if (depth == 3) {
+            // References as elements (e.g., to other files) or anything we
+            // do not know about
+            return null;
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          --depth;
+        }
+      }
+      r.close();
+    } catch (XMLStreamException ex) {
+      // Not XML, or not well-formed: let the resource loader deal with it
+      return null;
+    }
+
+    Element[][] elements = new Element[models.size()][];
+    for (int i = 0; i < elements.length; ++i) {
+      elements[i] = models.get(i).toArray(new Element[0]);
+    }
+    return new XmiWeavingModelStream(uri, elements, ids, System.nanoTime() - start);
+  }
+
+  @Override
+  long getScanNanos() {
+    return scanNanos;
+  }
+
+  @Override
+  void read(Handler handler) throws IOException {
+    try (InputStream in = URIConverter.INSTANCE.createInputStream(uri)) {
+      XMLStreamReader r = newReader(in);
+      int depth = 0;
+
+      while (r.hasNext()) {
+        int event = r.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          ++depth;
+          if (depth == 2 && "virtualLinks".equals(r.getLocalName())) {
+            readLink(r, handler);
+          }
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          --depth;
+        }
+      }
+      r.close();
+    } catch (XMLStreamException ex) {
+      throw new IOException("Failed to read weaving model " + uri, ex);
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Internals
+
+  private static XMLStreamReader newReader(InputStream in) throws XMLStreamException {
+    XMLInputFactory f = XMLInputFactory.newInstance();
+    // Weaving models have no business with external entities
+    f.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    f.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    return f.createXMLStreamReader(in);
+  }
+
+  private void readLink(XMLStreamReader r, Handler handler) throws IOException {
+    String type = r.getAttributeValue(XSI_NS, "type");
+    if (type == null) {
+      throw new IOException("Missing link type in weaving model " + uri);
+    }
+    // Strip the namespace prefix
+    type = type.substring(type.indexOf(':') + 1);
+    String name = r.getAttributeValue(null, "name");
+
+    switch (type) {
+    case "VirtualProperty":
+      handler.property(element(r, "parent"), name, r.getAttributeValue(null, "type"));
+      break;
+
+    case "VirtualAssociation":
+      handler.association(element(r, "source"), name, element(r, "target"));
+      break;
+
+    case "Filter":
+      handler.filter(element(r, "target"));
+      break;
+
+    default:
+      // Concepts and the like only matter to viewpoints
+    }
+  }
+
+  private Element element(XMLStreamReader r, String attribute) throws IOException {
+    String ref = r.getAttributeValue(null, attribute);
+    Element e = ref != null ? lookup(ref) : null;
+    if (e == null) {
+      throw new IOException(String.format("Unresolved %s reference '%s' in weaving model %s",
+                                          attribute, ref, uri));
+    }
+    return e;
+  }
+
+  // The element at an XMI reference or ID, or null
+  private Element lookup(String ref) {
+    if (ref.startsWith(MODEL_REF)) {
+      int sep = ref.indexOf(ELEMENT_REF, MODEL_REF.length());
+      if (sep > 0) {
+        int m = index(ref, MODEL_REF.length(), sep);
+        int e = index(ref, sep + ELEMENT_REF.length(), ref.length());
+        if (m >= 0 && m < elements.length && e >= 0 && e < elements[m].length) {
+          return elements[m][e];
+        }
+      }
+    }
+    return ids.get(ref);
+  }
+
+  // The decimal number between from and to in s, or -1
+  private static int index(String s, int from, int to) {
+    if (from >= to || to - from > 9) {
+      return -1;
+    }
+    int n = 0;
+    for (int i = from; i < to; ++i) {
+      char c = s.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      n = n * 10 + (c - '0');
+    }
+    return n;
+  }
+
+}
@@ -53,8 +53,8 @@ public class BaseVirtualElement<T extends EObject> extends DynamicEObjectImpl im
   private T concreteObject;
   protected EcoreVirtualizer virtualizer;
 
-  public boolean filtered = false;
-  public boolean synthetic = false;
+  private boolean filtered = false;
+  private boolean synthetic = false;
 
   /**
    * Construct a virtual element as a proxy to a concrete object whose metaclass
@@ -76,6 +76,54 @@ public class BaseVirtualElement<T extends EObject> extends DynamicEObjectImpl im
     return synthetic || filtered == virtualizer.isWhitelist();
   }
 
+  public boolean isFiltered() {
+    return filtered;
+  }
+
+  /**
+   * Flip the filtered bit of this element.  Since visibility changes the
+   * features and supertypes of virtual classes, this advances the epoch of the
+   * virtualizer.
+   */
+  public void setFiltered(boolean filtered) {
+    checkNotSealed();
+    if (this.filtered != filtered) {
+      this.filtered = filtered;
+      virtualizer.advanceEpoch();
+    }
+  }
+
+  public boolean isSynthetic() {
+    return synthetic;
+  }
+
+  /** Mark this element as synthetic.  Synthetic elements are always visible. */
+  public void setSynthetic(boolean synthetic) {
+    checkNotSealed();
+    if (this.synthetic != synthetic) {
+      this.synthetic = synthetic;
+      virtualizer.advanceEpoch();
+    }
+  }
+
+  /**
+   * Throw if the virtualizer is sealed.  Mutators should call this first.
+   */
+  protected void checkNotSealed() {
+    if (virtualizer.isSealed()) {
+      throw new IllegalStateException("Cannot modify a sealed viewpoint");
+    }
+  }
+
+  /**
+   * Precompute the derived lists of this element, so they can be returned
+   * as-is once the virtualizer is sealed.  Called by Viewpoint.seal, before the
+   * viewpoint is actually sealed.
+   */
+  public void precompute() {
+    // Nothing to precompute by default
+  }
+
   /**
    * @return the concrete element held by this virtual element.
    */
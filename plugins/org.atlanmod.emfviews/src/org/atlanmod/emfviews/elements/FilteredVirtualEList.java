@@ -17,26 +17,53 @@
 package org.atlanmod.emfviews.elements;
 
 import java.util.AbstractList;
+import java.util.Arrays;
 
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.notify.NotifyingList;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EObject;
 
 import org.atlanmod.emfviews.core.Virtualizer;
+import org.atlanmod.emfviews.util.ModificationCounter;
 
 // Like a VirtualEList, but behaves as if hidden virtual elements are not in the list.
-// Handling filtered elements makes the get and size methods O(n) instead of O(1), which
-// is unfortunate.
 public class FilteredVirtualEList extends AbstractList<EObject> implements EList<EObject> {
-  // Optimization: if we precompute a list of indices of visible objects in
-  // concreteList at construction time, this initialization is O(n), but
-  // further calls to get and size can be made in O(1).
+  // We keep the indices of visible objects in concreteList, so that get and
+  // size are O(1), and iterating is O(n).  Computing the indices is O(n), and
+  // is done again only when they may be stale: when an object of the view is
+  // hidden or shown (see Virtualizer.getHiddenVersion), or when the concrete
+  // list changes.
   //
-  // This comes at the cost of requiring that a new FilteredVirtualEList be obtained by the
-  // client whenever the set of hidden objects in this feature changes.
-  // Or, maybe we could leverage cross reference adapters somehow.
+  // We learn about changes to the concrete list from the notifications of its
+  // owner, through its ModificationCounter.  Lists that do not notify are
+  // assumed unchanged as long as their size is, and as long as the element
+  // read by get is the one seen by the last scan.  Otherwise they are scanned
+  // again.  Scanning them on each access would make iterating O(n^2).
 
-  private EList<EObject> concreteList;
-  private Virtualizer virtualizer;
+  private final EList<EObject> concreteList;
+  private final Virtualizer virtualizer;
+
+  private static final class Visible {
+    final int[] indices;
+    final EObject[] elements; // at indices, for lists that do not notify
+    final int hiddenVersion;
+    final int modifications;
+    final int concreteSize;
+
+    Visible(int[] indices, EObject[] elements, int hiddenVersion, int modifications,
+            int concreteSize) {
+      this.indices = indices;
+      this.elements = elements;
+      this.hiddenVersion = hiddenVersion;
+      this.modifications = modifications;
+      this.concreteSize = concreteSize;
+    }
+  }
+
+  private volatile Visible visible;
+  private volatile ModificationCounter counter;
+  private volatile boolean notifying = true;
 
   public FilteredVirtualEList(EList<EObject> concreteList, Virtualizer virtualizer) {
     this.concreteList = concreteList;
@@ -55,26 +82,111 @@ public class FilteredVirtualEList extends AbstractList<EObject> implements EList
 
   @Override
   public EObject get(int index) {
-    VirtualEObject vo = null;
-    for (int i=0; i < concreteList.size() && index >= 0; ++i) {
-      vo = virtualizer.getVirtual(concreteList.get(i));
-      if (!vo.isHidden())
-        --index;
+    Visible v = visible();
+    if (v.elements != null && index >= 0 && index < v.elements.length
+        && concreteList.get(v.indices[index]) != v.elements[index]) {
+      // The list changed without notifying
+      v = scan(null, concreteList.size());
     }
-
-    if (index >= 0 || (index == -1 && vo == null))
-      throw new IndexOutOfBoundsException();
-    else
-      return vo;
+    int[] indices = v.indices;
+    if (index < 0 || index >= indices.length) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + indices.length);
+    }
+    return virtualizer.getVirtual(concreteList.get(indices[index]));
   }
 
   @Override
   public int size() {
-    int size = 0;
-    for (EObject o : concreteList)
-      if (!virtualizer.getVirtual(o).isHidden())
-        ++size;
-    return size;
+    return visible().indices.length;
+  }
+
+  // Search for the concrete object of o instead, so that we do not virtualize
+  // the whole list.  Visible indices are sorted, so the position of the
+  // concrete index among them is the index in this list.
+  @Override
+  public int indexOf(Object o) {
+    if (o instanceof VirtualEObject) {
+      return visibleIndex(concreteList.indexOf(((VirtualEObject) o).getConcreteEObject()), o);
+    }
+    return super.indexOf(o);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    if (o instanceof VirtualEObject) {
+      return visibleIndex(concreteList.lastIndexOf(((VirtualEObject) o).getConcreteEObject()), o);
+    }
+    return super.lastIndexOf(o);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return indexOf(o) >= 0;
+  }
+
+  // Index of the concrete index i in this list if its element is o, or -1
+  private int visibleIndex(int i, Object o) {
+    if (i < 0) {
+      return -1;
+    }
+    int j = Arrays.binarySearch(visible().indices, i);
+    return j >= 0 && get(j) == o ? j : -1;
+  }
+
+  private Visible visible() {
+    ModificationCounter c = counter();
+    int concreteSize = concreteList.size();
+
+    Visible v = visible;
+    if (v != null
+        && v.hiddenVersion == virtualizer.getHiddenVersion()
+        && v.modifications == (c != null ? c.get() : 0)
+        && v.concreteSize == concreteSize) {
+      return v;
+    }
+    return scan(c, concreteSize);
+  }
+
+  private Visible scan(ModificationCounter c, int concreteSize) {
+    // Read the versions before scanning, so that changes made during the scan
+    // invalidate the result
+    int hiddenVersion = virtualizer.getHiddenVersion();
+    int modifications = c != null ? c.get() : 0;
+
+    int[] indices = new int[concreteSize];
+    EObject[] elements = c != null ? null : new EObject[concreteSize];
+    int n = 0;
+    for (int i = 0; i < concreteSize; ++i) {
+      EObject o = concreteList.get(i);
+      if (!virtualizer.isHidden(o)) {
+        if (elements != null) {
+          elements[n] = o;
+        }
+        indices[n++] = i;
+      }
+    }
+    if (n < concreteSize) {
+      indices = Arrays.copyOf(indices, n);
+      elements = elements != null ? Arrays.copyOf(elements, n) : null;
+    }
+    Visible v = new Visible(indices, elements, hiddenVersion, modifications, concreteSize);
+    visible = v;
+    return v;
+  }
+
+  private ModificationCounter counter() {
+    ModificationCounter c = counter;
+    if (c == null && notifying) {
+      Object owner = concreteList instanceof NotifyingList
+        ? ((NotifyingList<?>) concreteList).getNotifier()
+        : null;
+      if (owner instanceof Notifier) {
+        c = counter = virtualizer.getModificationCounter((Notifier) owner);
+      } else {
+        notifying = false;
+      }
+    }
+    return c;
   }
 
 }
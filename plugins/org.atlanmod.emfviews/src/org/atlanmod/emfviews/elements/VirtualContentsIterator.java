@@ -0,0 +1,143 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.elements;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.eclipse.emf.common.util.AbstractTreeIterator;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+import org.atlanmod.emfviews.core.Virtualizer;
+
+/**
+ * Iterates over all the contents of virtual objects, in the same order as
+ * eAllContents, but without going through their eContents lists.
+ *
+ * Children are read from the containment features of the concrete objects, and
+ * hidden ones are skipped before they are virtualized, so hidden subtrees are
+ * never visited.  Only the objects returned by next are virtualized.  Contents
+ * held by virtual features are read from the virtual object, as eContents
+ * does.  Like other tree iterators, subtrees can be pruned.
+ */
+public class VirtualContentsIterator extends AbstractTreeIterator<EObject> {
+  private static final long serialVersionUID = 1L;
+
+  /** Iterate over the contents of root, excluding root. */
+  public VirtualContentsIterator(VirtualEObject root) {
+    super(root, false);
+  }
+
+  /** Iterate over roots and all their contents. */
+  public VirtualContentsIterator(Collection<? extends EObject> roots) {
+    super(roots, false);
+  }
+
+  /**
+   * Iterate over the direct contents of o, in the same order as eContents.
+   * For virtual objects, hidden contents are skipped without being virtualized.
+   */
+  public static Iterator<EObject> contentsOf(EObject o) {
+    if (o instanceof VirtualEObject) {
+      return new Children((VirtualEObject) o);
+    } else {
+      return o.eContents().iterator();
+    }
+  }
+
+  @Override
+  protected Iterator<? extends EObject> getChildren(Object object) {
+    if (object instanceof EObject) {
+      return contentsOf((EObject) object);
+    } else {
+      @SuppressWarnings("unchecked")
+      Collection<? extends EObject> roots = (Collection<? extends EObject>) object;
+      return roots.iterator();
+    }
+  }
+
+  // The children of a virtual object, feature by feature.  Concrete values are
+  // filtered and virtualized on the way out; virtual values already are.
+  private static final class Children implements Iterator<EObject> {
+    private final VirtualEObject owner;
+    private final EObject concreteEObject;
+    private final Virtualizer virtualizer;
+    private final VirtualEClass virtualClass;
+    private final EList<EReference> containments;
+
+    private int segment = 0;
+    private Iterator<?> values = Collections.emptyIterator();
+    private boolean concrete;  // whether values are concrete objects
+    private EObject next;      // next value, not yet virtualized if concrete
+
+    Children(VirtualEObject owner) {
+      this.owner = owner;
+      this.concreteEObject = owner.getConcreteEObject();
+      this.virtualizer = owner.getVirtualizer();
+      this.virtualClass = (VirtualEClass) owner.eClass();
+      this.containments = virtualClass.getEAllContainments();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null) {
+        if (values.hasNext()) {
+          EObject o = (EObject) values.next();
+          if (o != null && !(concrete && virtualizer.isHidden(o))) {
+            next = o;
+          }
+        } else if (segment < containments.size()) {
+          nextSegment(containments.get(segment++));
+        } else {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public EObject next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      EObject o = next;
+      next = null;
+      return concrete ? virtualizer.getVirtual(o) : o;
+    }
+
+    private void nextSegment(EReference ref) {
+      EClass concreteClass = concreteEObject.eClass();
+      EStructuralFeature concreteFeature =
+        virtualClass.getConcreteFeature(virtualClass.getFeatureID(ref), concreteClass);
+      concrete = concreteFeature != null;
+      Object v = concrete ? concreteEObject.eGet(concreteFeature) : owner.eGet(ref);
+      if (ref.isMany()) {
+        values = ((List<?>) v).iterator();
+      } else {
+        values = Collections.singleton(v).iterator();
+      }
+    }
+  }
+
+}
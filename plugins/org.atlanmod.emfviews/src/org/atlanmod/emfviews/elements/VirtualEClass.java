@@ -17,8 +17,13 @@
 package org.atlanmod.emfviews.elements;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.eclipse.emf.common.util.EList;
@@ -36,6 +41,7 @@ import org.eclipse.emf.ecore.util.BasicExtendedMetaData.EClassifierExtendedMetaD
 import org.eclipse.emf.ecore.util.EcoreEList;
 
 import org.atlanmod.emfviews.core.EcoreVirtualizer;
+import org.atlanmod.emfviews.util.OpenAddressingIndex;
 
 // @Note @UnmodifiableElist:
 // We want views to be immutable.  When returning lists, we could use
@@ -52,12 +58,18 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
   // Supertypes that exist only on the virtual class, not the concrete one.
   private List<EClass> virtualSuperTypes = new ArrayList<>();
 
+  // Dense index of this class in its virtualizer.  See @SuperTypeClosure.
+  private final int index;
+
   public VirtualEClass(EClass concreteEClass, EcoreVirtualizer virtualizer) {
     super(EcorePackage.Literals.ECLASS, concreteEClass, virtualizer);
+    this.index = virtualizer.newClassIndex();
   }
 
   public void addVirtualFeature(VirtualEStructuralFeature<?> f) {
+    checkNotSealed();
     virtualFeatures.add(f);
+    virtualizer.advanceEpoch();
   }
 
   public int getVirtualFeaturesSize() {
@@ -65,11 +77,20 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
   }
 
   public void addVirtualSuperType(EClass c) {
+    checkNotSealed();
     if (!virtualSuperTypes.contains(c)) {
       virtualSuperTypes.add(c);
+      virtualizer.advanceEpoch();
     }
   }
 
+  @Override
+  public void precompute() {
+    FeatureLayout l = containmentLayout();
+    concreteFeatureMap(l, concrete());
+    superTypes();
+  }
+
   public boolean isFeatureVirtual(EStructuralFeature f) {
     return virtualFeatures.contains(virtualizer.getVirtual(f));
   }
@@ -150,8 +171,49 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
     throw new UnsupportedOperationException();
   }
 
-  @Override
-  public EList<EClass> getESuperTypes() {
+  // @SuperTypeClosure:
+  // Type tests (isSuperTypeOf, and thus isInstance) are the inner loop of
+  // queries like getAllInstances in ECL or oclIsKindOf in OCL, so they should
+  // not rebuild the supertypes of a class every time.  Each virtual class gets
+  // a dense index from its virtualizer, and caches the indexes of its
+  // supertypes in a BitSet, along with the supertypes lists.
+  //
+  // Like feature layouts, the cache goes stale when the epoch changes (filters
+  // and virtual supertypes), or when the concrete class changes (EClassImpl
+  // recreates its eAllSuperTypes list when a supertype is added to it or to one
+  // of its supertypes).  The supertypes of virtual supertypes are not part of
+  // the closure, so there are no dependencies to track.
+
+  static final class SuperTypes {
+    int epoch;
+    EList<EClass> concreteStamp;
+    EList<EClass> eSuperTypes;
+    EList<EClass> eAllSuperTypes;
+    BitSet indexes;
+  }
+
+  // Volatile for the same reason as the layout
+  private volatile SuperTypes superTypes;
+
+  private SuperTypes superTypes() {
+    SuperTypes t = superTypes;
+    if (virtualizer.isSealed() && t != null) {
+      return t;
+    }
+    if (t == null
+        || t.epoch != virtualizer.getEpoch()
+        || t.concreteStamp != concrete().getEAllSuperTypes()) {
+      t = computeSuperTypes();
+      superTypes = t;
+    }
+    return t;
+  }
+
+  private SuperTypes computeSuperTypes() {
+    SuperTypes t = new SuperTypes();
+    t.epoch = virtualizer.getEpoch();
+    t.concreteStamp = concrete().getEAllSuperTypes();
+
     // This is just a map(getVirtual).filter(!filtered)
     List<EClass> types = new ArrayList<>();
 
@@ -169,13 +231,6 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
       }
     }
 
-    // See @UnmodifiableEList
-    return new EcoreEList.UnmodifiableEList<>(this,
-        EcorePackage.Literals.ECLASS__ESUPER_TYPES, types.size(), types.toArray());
-  }
-
-  @Override
-  public EList<EClass> getEAllSuperTypes() {
     // Use a set to ensure no duplicate super types.
     // LinkedHashSet preserves the insertion order for stability.
     Set<EClass> sups = new LinkedHashSet<>();
@@ -183,8 +238,7 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
     // We have to take all concrete supertypes into account, and do the
     // filtering again, otherwise we may miss the case where A <- B <- C
     // and B is filtered.  We want to maintain A <- C.
-    EClass c = concrete();
-    for (EClass sup : c.getEAllSuperTypes()) {
+    for (EClass sup : t.concreteStamp) {
       VirtualEClass vsup = virtualizer.getVirtual(sup);
       if (vsup.isVisible()) {
         sups.add(vsup);
@@ -192,11 +246,37 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
     }
 
     // This gets us all the virtual super types as well
-    sups.addAll(getESuperTypes());
+    sups.addAll(types);
 
-    // See @UnmodifiableEList.
-    return new EcoreEList.UnmodifiableEList<>(this,
+    t.indexes = new BitSet();
+    for (EClass sup : sups) {
+      t.indexes.set(((VirtualEClass) sup).index);
+    }
+    // Virtual supertypes given as virtual classes count as supertypes, even
+    // when filtered.
+    for (EClass sup : virtualSuperTypes) {
+      if (sup instanceof VirtualEClass && ((VirtualEClass) sup).virtualizer == virtualizer) {
+        t.indexes.set(((VirtualEClass) sup).index);
+      }
+    }
+
+    // See @UnmodifiableEList
+    t.eSuperTypes = new EcoreEList.UnmodifiableEList<>(this,
+        EcorePackage.Literals.ECLASS__ESUPER_TYPES, types.size(), types.toArray());
+    t.eAllSuperTypes = new EcoreEList.UnmodifiableEList<>(this,
         EcorePackage.Literals.ECLASS__EALL_SUPER_TYPES, sups.size(), sups.toArray());
+
+    return t;
+  }
+
+  @Override
+  public EList<EClass> getESuperTypes() {
+    return superTypes().eSuperTypes;
+  }
+
+  @Override
+  public EList<EClass> getEAllSuperTypes() {
+    return superTypes().eAllSuperTypes;
   }
 
   @Override
@@ -204,75 +284,244 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
     return virtualizer.getVirtual(concrete().getEIDAttribute());
   }
 
-  protected List<EStructuralFeature> getAllFeatures() {
+  // @FeatureLayout:
+  // Computing the features of a virtual class means walking all its supertypes,
+  // merging concrete and virtual features, and checking their visibility.
+  // Since VirtualEObject asks its class for features on every eGet and eSet, we
+  // compute all the feature lists once into a FeatureLayout, and reuse it until
+  // it becomes stale.
+  //
+  // A layout is stale when:
+  // - the epoch of the virtualizer has changed (a virtual feature or supertype
+  //   was added, or an element was filtered anywhere in the viewpoint),
+  // - the concrete class has changed (EClassImpl recreates its
+  //   eAllStructuralFeatures list when a feature or a supertype is added to it
+  //   or to one of its concrete supertypes),
+  // - the layout of a dependency is stale.  Dependencies are the virtual
+  //   supertypes, since the concrete class knows nothing of them, and the
+  //   supertypes that have dependencies themselves.
+  //
+  // Containments and cross references depend on the containment flag of each
+  // reference, so, like EClassImpl, we compute them lazily from the layout on
+  // first access.
+  //
+  // Once the viewpoint is sealed, layouts never go stale, and are computed
+  // eagerly, so that readers on different threads only ever see complete
+  // layouts.
+  //
+  // The layout also indexes the visible features by name and by identity, for
+  // getEStructuralFeature(String) and getFeatureID.  Like the name map of
+  // EClassImpl, the name index assumes features are not renamed once the layout
+  // is built.
+
+  static final class FeatureLayout {
+    int epoch;
+    EList<EStructuralFeature> concreteStamp;
+    VirtualEClass[] dependencies;
+    FeatureLayout[] dependencyLayouts;
+
+    // All features, including filtered ones.  Used by subclasses.
+    EStructuralFeature[] rawFeatures;
+
+    // Visible features
+    EStructuralFeature[] allFeatures;
+    EStructuralFeature[] localFeatures;
+
+    // Indexes into allFeatures
+    OpenAddressingIndex nameIndex;
+    OpenAddressingIndex idIndex;
+
+    EList<EStructuralFeature> eAllStructuralFeatures;
+    EList<EStructuralFeature> eStructuralFeatures;
+    EList<EAttribute> eAllAttributes;
+    EList<EAttribute> eAttributes;
+    EList<EReference> eAllReferences;
+    EList<EReference> eReferences;
+
+    // Computed lazily, see @FeatureLayout
+    EReference[] containments;
+    EReference[] crossReferences;
+    EList<EReference> eAllContainments;
+
+    // See @ConcreteFeatureMap
+    ConcreteFeatureMap lastFeatureMap;
+    Map<EClass, ConcreteFeatureMap> featureMaps;
+  }
+
+  // Volatile, since a class virtualized after the viewpoint is sealed may have
+  // its layout computed by any thread.
+  private volatile FeatureLayout layout;
+
+  /**
+   * Return the up-to-date feature layout of this class, computing it if
+   * needed.  See @FeatureLayout.
+   */
+  FeatureLayout layout() {
+    FeatureLayout l = layout;
+    if (virtualizer.isSealed() && l != null) {
+      return l;
+    }
+    if (l == null || !isCurrent(l)) {
+      l = computeLayout();
+      layout = l;
+    }
+    return l;
+  }
+
+  private boolean isCurrent(FeatureLayout l) {
+    if (l.epoch != virtualizer.getEpoch()
+        || l.concreteStamp != concrete().getEAllStructuralFeatures()) {
+      return false;
+    }
+    for (int i = 0; i < l.dependencies.length; ++i) {
+      if (l.dependencies[i].layout() != l.dependencyLayouts[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private FeatureLayout computeLayout() {
+    FeatureLayout l = new FeatureLayout();
+    l.epoch = virtualizer.getEpoch();
+    l.concreteStamp = concrete().getEAllStructuralFeatures();
+
     // Use a set to ensure features are not added twice.
     // LinkedHashSet preserves the insertion order for stability.
-    Set<EStructuralFeature> elems = new LinkedHashSet<>();
+    Set<EStructuralFeature> raw = new LinkedHashSet<>();
+    List<VirtualEClass> deps = new ArrayList<>();
+    List<FeatureLayout> depLayouts = new ArrayList<>();
 
     for (EClass sup : getESuperTypes()) {
+      VirtualEClass vsup = (VirtualEClass) sup;
+      FeatureLayout supLayout = vsup.layout();
+
       // Add all (filtered and non-filtered) features from supertypes
-      elems.addAll(((VirtualEClass) sup).getAllFeatures());
+      raw.addAll(Arrays.asList(supLayout.rawFeatures));
+
+      if (isVirtualSuperType(vsup) || supLayout.dependencies.length > 0) {
+        deps.add(vsup);
+        depLayouts.add(supLayout);
+      }
     }
 
+    List<EStructuralFeature> local = new ArrayList<>();
+
     // Add all features from the concrete class
     for (EStructuralFeature f : concrete().getEStructuralFeatures()) {
-      elems.add(virtualizer.getVirtual(f));
+      local.add(virtualizer.getVirtual(f));
     }
 
     // Add virtual feature at the end
-    for (VirtualEStructuralFeature<?> f : virtualFeatures) {
-      elems.add(f);
-    }
+    local.addAll(virtualFeatures);
 
-    return new ArrayList<>(elems);
-  }
+    raw.addAll(local);
 
-  protected List<EStructuralFeature> getAllLocalFeatures() {
-    List<EStructuralFeature> elems = new ArrayList<>();
+    l.dependencies = deps.toArray(new VirtualEClass[0]);
+    l.dependencyLayouts = depLayouts.toArray(new FeatureLayout[0]);
+    l.rawFeatures = raw.toArray(new EStructuralFeature[0]);
+    l.allFeatures = visible(raw);
+    l.localFeatures = visible(local);
 
-    // Add all features from the concrete class
-    for (EStructuralFeature f : concrete().getEStructuralFeatures()) {
-      elems.add(virtualizer.getVirtual(f));
+    l.nameIndex = OpenAddressingIndex.byEquality(l.allFeatures.length);
+    l.idIndex = OpenAddressingIndex.byIdentity(l.allFeatures.length);
+    for (int i = 0; i < l.allFeatures.length; ++i) {
+      l.nameIndex.putIfAbsent(l.allFeatures[i].getName(), i);
+      l.idIndex.putIfAbsent(l.allFeatures[i], i);
     }
 
-    // Add virtual feature at the end
-    for (VirtualEStructuralFeature<?> f : virtualFeatures) {
-      elems.add(f);
+    // ECrossReferenceList expects this list to be castable to EClassImpl.FeatureSubsetSupplier.
+    l.eAllStructuralFeatures = new FeatureSupplierList<>(this,
+        EcorePackage.Literals.ECLASS__EALL_STRUCTURAL_FEATURES, l.allFeatures.length, l.allFeatures);
+    // See @UnmodifiableEList
+    l.eStructuralFeatures = new EcoreEList.UnmodifiableEList<>(this,
+        EcorePackage.Literals.ECLASS__ESTRUCTURAL_FEATURES, l.localFeatures.length, l.localFeatures);
+
+    EAttribute[] allAttrs = ofType(l.allFeatures, EAttribute.class, new EAttribute[0]);
+    l.eAllAttributes = new EcoreEList.UnmodifiableEList<>(this,
+        EcorePackage.Literals.ECLASS__EALL_ATTRIBUTES, allAttrs.length, allAttrs);
+    EAttribute[] attrs = ofType(l.localFeatures, EAttribute.class, new EAttribute[0]);
+    l.eAttributes = new EcoreEList.UnmodifiableEList<>(this,
+        EcorePackage.Literals.ECLASS__EATTRIBUTES, attrs.length, attrs);
+
+    EReference[] allRefs = ofType(l.allFeatures, EReference.class, new EReference[0]);
+    l.eAllReferences = new EcoreEList.UnmodifiableEList<>(this,
+        EcorePackage.Literals.ECLASS__EALL_REFERENCES, allRefs.length, allRefs);
+    EReference[] refs = ofType(l.localFeatures, EReference.class, new EReference[0]);
+    l.eReferences = new EcoreEList.UnmodifiableEList<>(this,
+        EcorePackage.Literals.ECLASS__EREFERENCES, refs.length, refs);
+
+    if (virtualizer.isSealed()) {
+      computeContainments(l);
+      l.lastFeatureMap = new ConcreteFeatureMap(l.allFeatures, concrete());
     }
 
-    return elems;
+    return l;
+  }
+
+  private boolean isVirtualSuperType(VirtualEClass c) {
+    for (EClass sup : virtualSuperTypes) {
+      if (virtualizer.getVirtual(sup) == c) {
+        return true;
+      }
+    }
+    return false;
   }
 
-  protected List<EStructuralFeature> getVisibleFeatures() {
+  private static EStructuralFeature[] visible(Collection<EStructuralFeature> features) {
     List<EStructuralFeature> elems = new ArrayList<>();
 
-    for (EStructuralFeature f : getAllFeatures()) {
+    for (EStructuralFeature f : features) {
       if (((VirtualEStructuralFeature<?>) f).isVisible()) {
         elems.add(f);
       }
     }
 
-    return elems;
+    return elems.toArray(new EStructuralFeature[0]);
   }
 
-  protected List<EStructuralFeature> getVisibleLocalFeatures() {
-    List<EStructuralFeature> elems = new ArrayList<>();
+  private static <T> T[] ofType(EStructuralFeature[] features, Class<T> type, T[] a) {
+    List<T> elems = new ArrayList<>();
 
-    for (EStructuralFeature f : getAllLocalFeatures()) {
-      if (((VirtualEStructuralFeature<?>) f).isVisible()) {
-        elems.add(f);
+    for (EStructuralFeature f : features) {
+      if (type.isInstance(f)) {
+        elems.add(type.cast(f));
+      }
+    }
+
+    return elems.toArray(a);
+  }
+
+  private void computeContainments(FeatureLayout l) {
+    List<EReference> containments = new ArrayList<>();
+    List<EReference> crossRefs = new ArrayList<>();
+
+    for (EReference ref : l.eAllReferences) {
+      if (ref.isContainment()) {
+        containments.add(ref);
+      } else {
+        crossRefs.add(ref);
       }
     }
 
-    return elems;
+    l.crossReferences = crossRefs.toArray(new EReference[0]);
+    // See @UnmodifiableElist
+    l.eAllContainments = new EcoreEList.UnmodifiableEList<>(this,
+        EcorePackage.Literals.ECLASS__EALL_CONTAINMENTS, containments.size(), containments.toArray());
+    l.containments = containments.toArray(new EReference[0]);
+  }
+
+  private FeatureLayout containmentLayout() {
+    FeatureLayout l = layout();
+    if (l.containments == null) {
+      computeContainments(l);
+    }
+    return l;
   }
 
   @Override
   public EList<EStructuralFeature> getEStructuralFeatures() {
-    List<EStructuralFeature> cs = getVisibleLocalFeatures();
-    // See @UnmodifiableElist
-    return new EcoreEList.UnmodifiableEList<>(
-        this, EcorePackage.Literals.ECLASS__ESTRUCTURAL_FEATURES, cs.size(), cs.toArray());
+    return layout().eStructuralFeatures;
   }
 
   @Override
@@ -287,85 +536,32 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
 
   @Override
   public EList<EAttribute> getEAttributes() {
-    List<EAttribute> attrs = new ArrayList<>();
-
-    for (EStructuralFeature f : getEStructuralFeatures()) {
-      if (f instanceof EAttribute) {
-        attrs.add((EAttribute) f);
-      }
-    }
-
-    // See @UnmodifiableElist
-    return new EcoreEList.UnmodifiableEList<>(this,
-        EcorePackage.Literals.ECLASS__EATTRIBUTES, attrs.size(), attrs.toArray());
+    return layout().eAttributes;
   }
 
   @Override
   public EList<EAttribute> getEAllAttributes() {
-    List<EAttribute> attrs = new ArrayList<>();
-
-    for (EStructuralFeature f : getEAllStructuralFeatures()) {
-      if (f instanceof EAttribute) {
-        attrs.add((EAttribute) f);
-      }
-    }
-
-    // See @UnmodifiableElist
-    return new EcoreEList.UnmodifiableEList<>(this,
-        EcorePackage.Literals.ECLASS__EALL_ATTRIBUTES, attrs.size(), attrs.toArray());
+    return layout().eAllAttributes;
   }
 
   @Override
   public EList<EReference> getEReferences() {
-    List<EReference> refs = new ArrayList<>();
-
-    for (EStructuralFeature f : getEStructuralFeatures()) {
-      if (f instanceof EReference) {
-        refs.add((EReference) f);
-      }
-    }
-
-    // See @UnmodifiableElist
-    return new EcoreEList.UnmodifiableEList<>(this,
-        EcorePackage.Literals.ECLASS__EREFERENCES, refs.size(), refs.toArray());
+    return layout().eReferences;
   }
 
   @Override
   public EList<EReference> getEAllReferences() {
-    List<EReference> refs = new ArrayList<>();
-
-    for (EStructuralFeature f : getEAllStructuralFeatures()) {
-      if (f instanceof EReference) {
-        refs.add((EReference) f);
-      }
-    }
-
-    // See @UnmodifiableElist
-    return new EcoreEList.UnmodifiableEList<>(this,
-        EcorePackage.Literals.ECLASS__EALL_REFERENCES, refs.size(), refs.toArray());
+    return layout().eAllReferences;
   }
 
   @Override
   public EList<EReference> getEAllContainments() {
-    List<EReference> containments = new ArrayList<>();
-
-    for (EReference ref : getEAllReferences()) {
-      if (ref.isContainment()) {
-        containments.add(ref);
-      }
-    }
-
-    // See @UnmodifiableElist
-    return new EcoreEList.UnmodifiableEList<>(this,
-        EcorePackage.Literals.ECLASS__EALL_CONTAINMENTS, containments.size(), containments.toArray());
+    return containmentLayout().eAllContainments;
   }
 
   @Override
   public EList<EStructuralFeature> getEAllStructuralFeatures() {
-    List<EStructuralFeature> cs = getVisibleFeatures();
-    // ECrossReferenceList expects this method to be castable to EClassImpl.FeatureSubsetSupplier.
-    return new FeatureSupplierList<>(
-        this, EcorePackage.Literals.ECLASS__ESTRUCTURAL_FEATURES, cs.size(), cs.toArray());
+    return layout().eAllStructuralFeatures;
   }
 
   class FeatureSupplierList<E> extends EcoreEList.UnmodifiableEList<E> implements EClassImpl.FeatureSubsetSupplier {
@@ -378,17 +574,12 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
 
     @Override
     public EStructuralFeature[] containments() {
-      return getEAllContainments().toArray(new EStructuralFeature[0]);
+      return containmentLayout().containments;
     }
 
     @Override
     public EStructuralFeature[] crossReferences() {
-      List<EStructuralFeature> crossRefs = new ArrayList<>();
-      for (EReference ref : getEAllReferences()) {
-        if (!ref.isContainment())
-          crossRefs.add(ref);
-      }
-      return crossRefs.toArray(new EStructuralFeature[0]);
+      return containmentLayout().crossReferences;
     }
 
     @Override
@@ -412,8 +603,17 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
     if (someClass instanceof VirtualEClass) {
       VirtualEClass c = (VirtualEClass) someClass;
 
-      return c.concrete() == this.concrete()
-          || c.virtualSuperTypes.contains(this)
+      if (c.concrete() == this.concrete()) {
+        return true;
+      }
+
+      // See @SuperTypeClosure
+      if (c.virtualizer == virtualizer) {
+        return c.superTypes().indexes.get(index);
+      }
+
+      // Indexes are not comparable across virtualizers
+      return c.virtualSuperTypes.contains(this)
           || c.getEAllSuperTypes().contains(this);
     } else {
       return concrete().isSuperTypeOf(someClass);
@@ -422,14 +622,14 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
 
   @Override
   public int getFeatureCount() {
-    return getEStructuralFeatures().size();
+    return layout().localFeatures.length;
   }
 
   @Override
   public EStructuralFeature getEStructuralFeature(int featureID) {
-    EList<EStructuralFeature> features = getEAllStructuralFeatures();
-    if (featureID < features.size()) {
-      return features.get(featureID);
+    EStructuralFeature[] features = layout().allFeatures;
+    if (featureID >= 0 && featureID < features.length) {
+      return features[featureID];
     } else {
       return null;
     }
@@ -437,12 +637,9 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
 
   @Override
   public EStructuralFeature getEStructuralFeature(String featureName) {
-    for (EStructuralFeature f : getEAllStructuralFeatures()) {
-      if (featureName.equals(f.getName())) {
-        return f;
-      }
-    }
-    return null;
+    FeatureLayout l = layout();
+    int i = l.nameIndex.get(featureName);
+    return i >= 0 ? l.allFeatures[i] : null;
   }
 
   @Override
@@ -472,7 +669,141 @@ public class VirtualEClass extends VirtualEClassifier<EClass>
 
   @Override
   public int getFeatureID(EStructuralFeature feature) {
-    return getEAllStructuralFeatures().indexOf(feature);
+    return layout().idIndex.get(feature);
+  }
+
+  // @ConcreteFeatureMap:
+  // VirtualEObject delegates concrete features to its concrete object, so it
+  // needs the concrete feature matching a virtual one.  Features are matched by
+  // name, since IDs differ as soon as a feature is filtered or added.  Rather
+  // than looking up names on every eGet, we map virtual feature IDs to concrete
+  // feature IDs once per concrete class.
+  //
+  // The maps are kept in the layout, so they go stale with it.  They also go
+  // stale when the concrete class changes, which we detect the same way as for
+  // the layout.  Usually all instances of a virtual class share the same
+  // concrete class, hence the shortcut to the last map used.
+
+  static final class ConcreteFeatureMap {
+    final EClass concreteClass;
+    final EList<EStructuralFeature> concreteStamp;
+    // Concrete feature ID of each virtual feature, or -1 for virtual features
+    final int[] ids;
+
+    ConcreteFeatureMap(EStructuralFeature[] features, EClass concreteClass) {
+      this.concreteClass = concreteClass;
+      this.concreteStamp = concreteClass.getEAllStructuralFeatures();
+      this.ids = new int[features.length];
+      for (int i = 0; i < features.length; ++i) {
+        EStructuralFeature f = concreteClass.getEStructuralFeature(features[i].getName());
+        ids[i] = f != null ? concreteClass.getFeatureID(f) : -1;
+      }
+    }
+
+    boolean isCurrent(EClass c) {
+      return concreteClass == c && concreteStamp == c.getEAllStructuralFeatures();
+    }
+  }
+
+  private ConcreteFeatureMap concreteFeatureMap(FeatureLayout l, EClass concreteClass) {
+    ConcreteFeatureMap m = l.lastFeatureMap;
+    if (m != null && m.isCurrent(concreteClass)) {
+      return m;
+    }
+
+    if (virtualizer.isSealed()) {
+      // The layout may be shared by several threads, so leave the shortcut
+      // alone and guard the map.
+      synchronized (l) {
+        return cachedFeatureMap(l, concreteClass);
+      }
+    }
+
+    m = cachedFeatureMap(l, concreteClass);
+    l.lastFeatureMap = m;
+    return m;
+  }
+
+  private ConcreteFeatureMap cachedFeatureMap(FeatureLayout l, EClass concreteClass) {
+    if (l.featureMaps == null) {
+      l.featureMaps = new HashMap<>();
+    }
+    ConcreteFeatureMap m = l.featureMaps.get(concreteClass);
+    if (m == null || !m.isCurrent(concreteClass)) {
+      m = new ConcreteFeatureMap(l.allFeatures, concreteClass);
+      l.featureMaps.put(concreteClass, m);
+    }
+    return m;
+  }
+
+  /**
+   * Return the feature of concreteClass matching the virtual feature of this
+   * class with the given ID, or null if the virtual feature has no concrete
+   * counterpart.  See @ConcreteFeatureMap.
+   */
+  EStructuralFeature getConcreteFeature(int featureID, EClass concreteClass) {
+    FeatureLayout l = layout();
+    if (featureID < 0 || featureID >= l.allFeatures.length) {
+      return null;
+    }
+    int id = concreteFeatureMap(l, concreteClass).ids[featureID];
+    return id >= 0 ? concreteClass.getEStructuralFeature(id) : null;
+  }
+
+  // @ValueSlots:
+  // VirtualEObject stores the values of features without a concrete counterpart
+  // in an array rather than a map.  Each such feature gets a slot in the class
+  // the first time an instance stores a value for it.  Slots are never reused
+  // nor renumbered, unlike feature IDs which shift when features are filtered
+  // or added: a value stays associated to its feature whatever happens to the
+  // layout.
+  //
+  // Slots are looked up far more often than assigned, so the index is copied
+  // on write, and lookups do not lock.
+
+  private static final class Slots {
+    final EStructuralFeature[] features; // by slot
+    final OpenAddressingIndex index;     // from feature to slot
+
+    Slots(EStructuralFeature[] features) {
+      this.features = features;
+      this.index = OpenAddressingIndex.byIdentity(features.length);
+      for (int i = 0; i < features.length; ++i) {
+        index.putIfAbsent(features[i], i);
+      }
+    }
+  }
+
+  private static final Slots noSlots = new Slots(new EStructuralFeature[0]);
+
+  private volatile Slots slots = noSlots;
+
+  /**
+   * Return the slot of feature in the instances of this class, assigning a new
+   * one if needed.  See @ValueSlots.
+   */
+  int getValueSlot(EStructuralFeature feature) {
+    int i = slots.index.get(feature);
+    if (i >= 0) {
+      return i;
+    }
+
+    synchronized (this) {
+      Slots s = slots;
+      i = s.index.get(feature);
+      if (i < 0) {
+        i = s.features.length;
+        EStructuralFeature[] features = Arrays.copyOf(s.features, i + 1);
+        features[i] = feature;
+        slots = new Slots(features);
+      }
+      return i;
+    }
+  }
+
+  /** Number of slots assigned so far.  See @ValueSlots. */
+  int getValueSlotCount() {
+    return slots.features.length;
   }
 
   @Override
@@ -25,8 +25,8 @@ import org.atlanmod.emfviews.core.Virtualizer;
 
 public class VirtualEList extends AbstractList<EObject> implements EList<EObject> {
 
-  private EList<EObject> concreteList;
-  private Virtualizer virtualizer;
+  private final EList<EObject> concreteList;
+  private final Virtualizer virtualizer;
 
   public VirtualEList(EList<EObject> concreteList, Virtualizer virtualizer) {
     this.concreteList = concreteList;
@@ -54,4 +54,29 @@ public class VirtualEList extends AbstractList<EObject> implements EList<EObject
     return concreteList.size();
   }
 
+  // Search for the concrete object of o instead, so that we do not virtualize
+  // the whole list
+  @Override
+  public int indexOf(Object o) {
+    if (o instanceof VirtualEObject) {
+      int i = concreteList.indexOf(((VirtualEObject) o).getConcreteEObject());
+      return i >= 0 && get(i) == o ? i : -1;
+    }
+    return super.indexOf(o);
+  }
+
+  @Override
+  public int lastIndexOf(Object o) {
+    if (o instanceof VirtualEObject) {
+      int i = concreteList.lastIndexOf(((VirtualEObject) o).getConcreteEObject());
+      return i >= 0 && get(i) == o ? i : -1;
+    }
+    return super.lastIndexOf(o);
+  }
+
+  @Override
+  public boolean contains(Object o) {
+    return indexOf(o) >= 0;
+  }
+
 }
@@ -16,16 +16,23 @@
 
 package org.atlanmod.emfviews.elements;
 
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
 import org.eclipse.emf.common.util.BasicEList;
 import org.eclipse.emf.common.util.ECollections;
 import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EObject;
 import org.eclipse.emf.ecore.EReference;
 import org.eclipse.emf.ecore.EStructuralFeature;
@@ -35,6 +42,7 @@ import org.eclipse.emf.ecore.resource.Resource;
 
 import org.atlanmod.emfviews.core.View;
 import org.atlanmod.emfviews.core.Virtualizer;
+import org.atlanmod.emfviews.util.Adapters;
 import org.atlanmod.emfviews.util.LazyEContentsList;
 
 /**
@@ -47,113 +55,338 @@ import org.atlanmod.emfviews.util.LazyEContentsList;
  */
 public class VirtualEObject extends DynamicEObjectImpl {
 
-  private EObject concreteEObject;
-
-  private boolean hidden = false;
+  // @ConcurrentReaders: a view can be read from several threads at once, as
+  // long as its viewpoint is sealed.  Reads of concrete features go straight to
+  // the concrete object.  Virtual values live in slots that are copied on
+  // write, and are lazily initialized by match rules on first access (see
+  // getVirtualValue).
+  // Match rules run without holding any lock, since they are the expensive
+  // part of initializing a feature, and may read other objects of the view.
+  // Their results only concern this object, and are published under the lock
+  // of this object, which is never held while calling out to other objects,
+  // and thus cannot deadlock.  Threads racing to initialize the same feature
+  // compute equal results, and only the first one is published.  Features
+  // that are already initialized are read without locking.
+
+  private final EObject concreteEObject;
+
+  // Whether the virtualizer was told to retain this object.  A virtual object
+  // with virtual state cannot be recreated from its concrete object, so it must
+  // stay the virtual counterpart of it.  See View@VirtualCache.
+  private volatile boolean retained = false;
+
+  // Hidden objects are kept by the virtualizer, by concrete object, so that
+  // they can be skipped without virtualizing them.
 
   public void setHidden(boolean hidden) {
-    this.hidden = hidden;
-    if (hidden) {
-      virtualizer.activateObjectFiltering();
-    }
+    virtualizer.setHidden(concreteEObject, hidden);
   }
 
   public boolean isHidden() {
-    return hidden;
+    return virtualizer.isHidden(concreteEObject);
   }
 
-  // Using a map here as using feature ID as keys for virtual values is
+  // Virtual values are stored by slot, not by feature ID, as feature IDs are
   // unreliable when filters come into play.
   //
   // e.g., class A with feature 'a', 'b', 'c'.  Delete feature 'b', add feature
   // 'd'.
   //
   // With feature ID, the mapping is: 'a': 0, 'c': 1, 'd': 2, so the virtual
-  // value associated to 'b' is now associated to 'c'.  With a map we keep track
-  // of all structural features, filtered or not.
-  private Map<EStructuralFeature, Object> virtualValues = new HashMap<>();
+  // value associated to 'b' is now associated to 'c'.  Slots are assigned by
+  // the class to each feature for good, filtered or not (see
+  // VirtualEClass@ValueSlots).
+  //
+  // Most objects of a view have no virtual value at all, so the arrays are only
+  // allocated on the first write.  They are copied on write, since they can be
+  // read from several threads (see @ConcurrentReaders); writers swap them with a
+  // compare-and-set, so writers to different objects never contend.  Null
+  // values are stored as NULL.
+  private volatile Object[] slots;
+  private static final AtomicReferenceFieldUpdater<VirtualEObject, Object[]> SLOTS =
+    AtomicReferenceFieldUpdater.newUpdater(VirtualEObject.class, Object[].class, "slots");
+  private static final Object NULL = new Object();
+
+  // Bitset over slots: features whose virtual value has been initialized, and
+  // can be read without locking.  Written under the lock of this object.
+  private volatile long[] initializedBits;
+
+  private int slotOf(EStructuralFeature feature) {
+    return ((VirtualEClass) eClass()).getValueSlot(feature);
+  }
+
+  private static boolean testBit(long[] bits, int i) {
+    return bits != null && (i >>> 6) < bits.length && (bits[i >>> 6] & (1L << i)) != 0;
+  }
+
+  private static long[] withBit(long[] bits, int i, boolean value) {
+    int word = i >>> 6;
+    long[] b = bits == null ? new long[word + 1]
+                            : Arrays.copyOf(bits, Math.max(bits.length, word + 1));
+    if (value) {
+      b[word] |= 1L << i;
+    } else {
+      b[word] &= ~(1L << i);
+    }
+    return b;
+  }
+
+  // @MatchRules: virtual features populated by match rules depend on the
+  // concrete object, and on the objects it was matched with.  When the
+  // concrete object changes, the initialized virtual features of this object
+  // are reset, along with the opposite features of the objects they hold,
+  // since these were matched against the old state.  All are populated again
+  // on next access.  Other objects that would now match this one only see it
+  // once they are reset themselves.  Only features that have a rule (or whose
+  // opposite has one) are reset; values set by hand or by the weaving model on
+  // other features are kept.  Values set by hand on features with a rule are
+  // lost on reset.
+  //
+  // The reset is pushed by an adapter on the concrete object, attached when a
+  // feature with a rule is first initialized, since the objects on the other
+  // side of the matches must be reset even if this object is not accessed
+  // again.  The adapter only holds this object weakly, so that it does not
+  // keep the view alive; objects that hold matches are retained by the view
+  // anyway.  The view detaches the adapters when it is disposed.  Views
+  // without match rules do not track changes.  See View@ViewMaintenance.
+  private volatile boolean trackingChanges = false;
+
+  private static final class MatchRuleTracker extends AdapterImpl {
+    private final WeakReference<VirtualEObject> virtual;
+
+    MatchRuleTracker(VirtualEObject virtual) {
+      this.virtual = new WeakReference<>(virtual);
+    }
+
+    @Override
+    public void notifyChanged(Notification msg) {
+      if (msg.isTouch()) {
+        return;
+      }
+      VirtualEObject v = virtual.get();
+      if (v != null) {
+        v.resetVirtualFeatures();
+      } else {
+        // The view is gone
+        Adapters.remove((Notifier) msg.getNotifier(), this);
+      }
+    }
+  }
 
   private Object getVirtualValue(EStructuralFeature feature) {
+    // If this is the first time this feature is accessed, initialize it
+    if (!testBit(initializedBits, slotOf(feature))) {
+      initializeVirtualValue(feature);
+    }
+
     // If it's many-valued, make sure it's a list
-    if (feature.isMany() && virtualValues.get(feature) == null) {
-      // Start with a regular list
-      virtualValues.put(feature, ECollections.asEList(new ArrayList<>()));
+    if (feature.isMany() && storedVirtualValue(feature) == null) {
+      synchronized (this) {
+        if (storedVirtualValue(feature) == null) {
+          putVirtualList(feature);
+        }
+      }
+    }
 
-      if (feature instanceof EReference) {
-        VirtualEReference ref = (VirtualEReference) feature;
-        EReference opposite = ref.getEOpposite();
+    return storedVirtualValue(feature);
+  }
 
-        // If the virtual feature has a virtual opposite, we need to return a
-        // list that will keep the opposite in sync.
-        if (opposite != null && opposite == ref.virtualOpposite) {
-        virtualValues.put(feature, new EListWithInverse(opposite));
+  /**
+   * Initialize all the virtual features of this object now, rather than on
+   * first access.  See View.materialize.
+   */
+  public void initializeVirtualFeatures() {
+    // All features, inherited ones included
+    EClass c = eClass();
+    for (EStructuralFeature f : c.getEAllStructuralFeatures()) {
+      if (concreteFeature(c.getFeatureID(f)) == null) {
+        getVirtualValue(f);
+      }
+    }
+  }
+
+  private void initializeVirtualValue(EStructuralFeature feature) {
+    // Populate the virtual feature with matches from the virtual links
+    // delegator.  The opposite feature may have a matching rule as well.
+    List<EObject> matches = Collections.emptyList();
+    List<EObject> oppositeMatches = Collections.emptyList();
+    if (hasMatchRule(feature)) {
+      if (!trackingChanges) {
+        boolean attach;
+        synchronized (this) {
+          attach = !trackingChanges;
+          trackingChanges = true;
+        }
+        if (attach) {
+          virtualizer.attachAdapter(concreteEObject, new MatchRuleTracker(this));
         }
       }
+
+      matches = matchesForRule(feature.getName(), false);
+      EReference opposite = feature instanceof EReference ? ((EReference) feature).getEOpposite() : null;
+      if (opposite != null) {
+        oppositeMatches = matchesForRule(opposite.getName(), true);
+      }
     }
 
-    // If this is the first time this feature is accessed,
-    // populate the virtual feature with matches from the virtual links delegator.
-    if (!initializedFeatures.contains(feature)) {
-      initializeFeatureFromMatchRule(feature.getName(), feature, false);
+    synchronized (this) {
+      int slot = slotOf(feature);
+      if (testBit(initializedBits, slot)) {
+        // Another thread was faster
+        return;
+      }
 
-      // The opposite feature may have a matching rule as well
-      if (feature instanceof EReference) {
-        VirtualEReference ref = (VirtualEReference) feature;
-        EReference opposite = ref.getEOpposite();
-        if (opposite != null) {
-          initializeFeatureFromMatchRule(opposite.getName(), feature, true);
+      if (feature.isMany() && storedVirtualValue(feature) == null) {
+        putVirtualList(feature);
+      }
+      addMatches(feature, matches);
+      addMatches(feature, oppositeMatches);
+
+      // Only now can other threads read the feature without locking
+      initializedBits = withBit(initializedBits, slot, true);
+    }
+  }
+
+  // The concrete object changed: reset the virtual features populated from
+  // match rules.  See @MatchRules.
+  private void resetVirtualFeatures() {
+    EClass c = eClass();
+    for (EStructuralFeature f : c.getEAllStructuralFeatures()) {
+      if (concreteFeature(c.getFeatureID(f)) == null && hasMatchRule(f)) {
+        resetVirtualFeature(f, true);
+      }
+    }
+  }
+
+  // Whether feature is populated by a match rule, of its own or of its opposite
+  private boolean hasMatchRule(EStructuralFeature feature) {
+    if (virtualizer.hasMatchRule(feature.getName())) {
+      return true;
+    }
+    EReference opposite = feature instanceof EReference ? ((EReference) feature).getEOpposite() : null;
+    return opposite != null && virtualizer.hasMatchRule(opposite.getName());
+  }
+
+  // Forget the value of feature, so that it is initialized again on next
+  // access.  The opposite features of other objects are reset after releasing
+  // the lock of this one.
+  private void resetVirtualFeature(EStructuralFeature feature, boolean withOpposites) {
+    Object v;
+    synchronized (this) {
+      int slot = slotOf(feature);
+      if (!testBit(initializedBits, slot)) {
+        return;
+      }
+      v = storedVirtualValue(feature);
+      putSlot(feature, null);
+      initializedBits = withBit(initializedBits, slot, false);
+    }
+
+    EReference opposite = feature instanceof EReference ? ((EReference) feature).getEOpposite() : null;
+    if (withOpposites && opposite != null) {
+      for (Object o : v instanceof List ? new ArrayList<>((List<?>) v) : Collections.singletonList(v)) {
+        if (o instanceof VirtualEObject) {
+          ((VirtualEObject) o).resetVirtualFeature(opposite, false);
         }
       }
     }
+  }
 
-    return virtualValues.get(feature);
+  // Put the list of values of a many-valued feature in its slot.  Caller holds
+  // the lock of this object.
+  private void putVirtualList(EStructuralFeature feature) {
+    // Values served by the virtualizer are not state of this object, and
+    // neither is an empty list, so they do not retain it until they are
+    // modified (see StoredEList)
+    List<EObject> stored = virtualizer.getStoredValues(concreteEObject, feature);
+    putSlot(feature, new StoredEList(feature, stored != null ? stored : Collections.emptyList()));
   }
 
-  private void initializeFeatureFromMatchRule(String ruleName, EStructuralFeature inFeature, boolean rightHand) {
-    // Set initialized now to avoid infinite recursive calls
-    // when calling getVirtualValue
-    initializedFeatures.add(inFeature);
+  private EList<EObject> newVirtualList(EStructuralFeature feature) {
+    if (feature instanceof EReference) {
+      VirtualEReference ref = (VirtualEReference) feature;
+      EReference opposite = ref.getEOpposite();
 
+      // If the virtual feature has a virtual opposite, we need to return a
+      // list that will keep the opposite in sync.
+      if (opposite != null && opposite == ref.virtualOpposite) {
+        return new EListWithInverse(opposite);
+      }
+    }
+
+    // Otherwise, start with a regular list
+    return ECollections.asEList(new ArrayList<>());
+  }
+
+  // Virtual counterparts of the matches of the rule for this object
+  private List<EObject> matchesForRule(String ruleName, boolean rightHand) {
     List<EObject> init = virtualizer.getMatchesForRule(ruleName, concreteEObject, rightHand);
+    List<EObject> matches = new ArrayList<>(init.size());
+    for (EObject o : init) {
+      matches.add(virtualizer.getVirtual(o));
+    }
+    return matches;
+  }
 
-    if (init.size() == 0)
+  // Add matches to the value of feature.  Caller holds the lock of this object.
+  private void addMatches(EStructuralFeature feature, List<EObject> matches) {
+    if (matches.isEmpty()) {
       return;
-
-    EReference opp = null;
-    if (inFeature instanceof EReference) {
-      EReference ref = (EReference) inFeature;
-      opp = ref.getEOpposite();
     }
 
-    if (inFeature.isMany()) {
+    if (feature.isMany()) {
       @SuppressWarnings("unchecked")
-      EList<EObject> list = (EList<EObject>) getVirtualValue(inFeature);
-
-      for (EObject o: init) {
-        VirtualEObject target = virtualizer.getVirtual(o);
+      EList<EObject> list = (EList<EObject>) storedVirtualValue(feature);
+      boolean hasOpposite = feature instanceof EReference && ((EReference) feature).getEOpposite() != null;
 
+      for (EObject target : matches) {
         // Don't add ourselves to the opposite feature, if any.
         // The opposite feature will populate itself from an existing rule anyway.
-        if (opp != null) {
-          EListWithInverse l = (EListWithInverse) list;
-          l.addWithoutInverse(target);
+        if (hasOpposite) {
+          addWithoutInverse(list, target);
         } else {
           list.add(target);
         }
       }
     } else {
-      VirtualEObject target = virtualizer.getVirtual(init.get(0));
-      putVirtualValue(inFeature, target);
+      putVirtualValue(feature, matches.get(0));
     }
   }
 
   private void putVirtualValue(EStructuralFeature feature, Object o) {
-    virtualValues.put(feature, o);
+    retain();
+    putSlot(feature, o);
+  }
+
+  private void putSlot(EStructuralFeature feature, Object o) {
+    int slot = slotOf(feature);
+    Object[] s, t;
+    do {
+      s = slots;
+      t = s == null ? new Object[Math.max(slot + 1, 2)]
+                    : Arrays.copyOf(s, Math.max(s.length, slot + 1));
+      t[slot] = o == null ? NULL : o;
+    } while (!SLOTS.compareAndSet(this, s, t));
   }
 
-  private Virtualizer virtualizer;
+  private void retain() {
+    if (!retained) {
+      retained = true;
+      virtualizer.retain(this);
+    }
+  }
+
+  private Object storedVirtualValue(EStructuralFeature feature) {
+    Object[] s = slots;
+    if (s == null) {
+      return null;
+    }
+    int slot = slotOf(feature);
+    Object o = slot < s.length ? s[slot] : null;
+    return o == NULL ? null : o;
+  }
 
-  private Set<EStructuralFeature> initializedFeatures = new HashSet<>();
+  private final Virtualizer virtualizer;
 
   /**
    * Create a virtual counterpart to concreteEObject, having virtualEClass as
@@ -165,18 +398,43 @@ public class VirtualEObject extends DynamicEObjectImpl {
     eSetClass(virtualEClass);
   }
 
-  private EList<EObject> cachedContents;
+  /** The concrete object this virtual object is a proxy to. */
+  public EObject getConcreteEObject() {
+    return concreteEObject;
+  }
+
+  Virtualizer getVirtualizer() {
+    return virtualizer;
+  }
+
+  private volatile EList<EObject> cachedContents;
 
   @Override
   public EList<EObject> eContents() {
-    if (cachedContents == null) {
-      // The lazy contents list saves us from virtualizing every contained
-      // object prematurely, and thus paying the overhead of virtualization on
-      // potentially large objects even when they are never in fact accessed.
-      cachedContents = new LazyEContentsList(this);
+    EList<EObject> contents = cachedContents;
+    if (contents == null) {
+      synchronized (this) {
+        contents = cachedContents;
+        if (contents == null) {
+          // The lazy contents list saves us from virtualizing every contained
+          // object prematurely, and thus paying the overhead of virtualization
+          // on potentially large objects even when they are never in fact
+          // accessed.
+          contents = cachedContents =
+            new LazyEContentsList(this, virtualizer.getModificationCounter(concreteEObject));
+        }
+      }
     }
 
-    return cachedContents;
+    return contents;
+  }
+
+  @Override
+  public TreeIterator<EObject> eAllContents() {
+    // The generic iterator goes through eContents, which virtualizes children
+    // before hidden ones can be skipped.  This one reads the concrete
+    // containment lists directly.
+    return new VirtualContentsIterator(this);
   }
 
   @Override
@@ -196,9 +454,9 @@ public class VirtualEObject extends DynamicEObjectImpl {
       throw new IllegalArgumentException("Invalid feature ID " + dynamicFeatureID);
     }
 
-    // Lookup the feature by name.  Names are unique, while IDs involve messy
-    // calculations that introduce bugs.
-    EStructuralFeature concreteFeature = concreteEObject.eClass().getEStructuralFeature(feature.getName());
+    // The concrete feature is matched by name, but the virtual class caches the
+    // mapping.  See @ConcreteFeatureMap.
+    EStructuralFeature concreteFeature = concreteFeature(dynamicFeatureID);
 
     // If it's a concrete feature, delegate to the concrete object
     if (concreteFeature != null) {
@@ -209,8 +467,8 @@ public class VirtualEObject extends DynamicEObjectImpl {
         EList<EObject> list = (EList<EObject>) value;
         return virtualizer.getVirtual(list);
       } else if (value instanceof EObject) {
-        VirtualEObject v = virtualizer.getVirtual((EObject) value);
-        return v.isHidden() ? null : v;
+        EObject o = (EObject) value;
+        return virtualizer.isHidden(o) ? null : virtualizer.getVirtual(o);
       } else {
         return value;
       }
@@ -219,6 +477,10 @@ public class VirtualEObject extends DynamicEObjectImpl {
     }
   }
 
+  private EStructuralFeature concreteFeature(int featureID) {
+    return ((VirtualEClass) eClass()).getConcreteFeature(featureID, concreteEObject.eClass());
+  }
+
   class EListWithInverse extends BasicEList<EObject> {
     private static final long serialVersionUID = 1L;
 
@@ -237,7 +499,7 @@ public class VirtualEObject extends DynamicEObjectImpl {
         if (opposite.isMany()) {
           // @Assumption: the opposite is a virtual feature.
           // Otherwise, maybe we can use eInverseAdd?
-          ((EListWithInverse) e.eGet(opposite)).addWithoutInverse(VirtualEObject.this);
+          VirtualEObject.addWithoutInverse(e.eGet(opposite), VirtualEObject.this);
         } else {
           e.eSet(opposite, VirtualEObject.this);
         }
@@ -251,6 +513,106 @@ public class VirtualEObject extends DynamicEObjectImpl {
     }
   }
 
+  // Add e to a list of values of an opposite feature, without syncing back
+  private static void addWithoutInverse(Object list, EObject e) {
+    if (list instanceof StoredEList) {
+      ((StoredEList) list).addWithoutInverse(e);
+    } else {
+      ((EListWithInverse) list).addWithoutInverse(e);
+    }
+  }
+
+  // Values served by the virtualizer (or no values at all), until they are
+  // first modified.  Then the list copies them into a list of its own, as
+  // newVirtualList would have created, and this object is retained since it
+  // now holds state.
+  class StoredEList extends AbstractList<EObject> implements EList<EObject>, RandomAccess {
+    private final EStructuralFeature feature;
+    private final List<EObject> stored;
+    private volatile EList<EObject> own;
+
+    StoredEList(EStructuralFeature feature, List<EObject> stored) {
+      this.feature = feature;
+      this.stored = stored;
+    }
+
+    private EList<EObject> own() {
+      EList<EObject> l = own;
+      if (l == null) {
+        synchronized (this) {
+          l = own;
+          if (l == null) {
+            l = newVirtualList(feature);
+            // The stored values already appear in the opposite lists
+            for (EObject e : stored) {
+              if (l instanceof EListWithInverse) {
+                ((EListWithInverse) l).addWithoutInverse(e);
+              } else {
+                l.add(e);
+              }
+            }
+            own = l;
+          }
+        }
+        // Outside the lock of this list.  Callers may still hold the lock of
+        // this object (see addMatches), which is fine: retain only takes a lock
+        // of the virtualizer cache, and never calls back into virtual objects
+        // or lists while holding it.
+        retain();
+      }
+      return l;
+    }
+
+    private List<EObject> values() {
+      EList<EObject> l = own;
+      return l != null ? l : stored;
+    }
+
+    @Override
+    public EObject get(int index) {
+      return values().get(index);
+    }
+
+    @Override
+    public int size() {
+      return values().size();
+    }
+
+    @Override
+    public boolean add(EObject e) {
+      return own().add(e);
+    }
+
+    @Override
+    public void add(int index, EObject e) {
+      own().add(index, e);
+    }
+
+    @Override
+    public EObject set(int index, EObject e) {
+      return own().set(index, e);
+    }
+
+    @Override
+    public EObject remove(int index) {
+      return own().remove(index);
+    }
+
+    @Override
+    public void move(int newPosition, EObject e) {
+      own().move(newPosition, e);
+    }
+
+    @Override
+    public EObject move(int newPosition, int oldPosition) {
+      return own().move(newPosition, oldPosition);
+    }
+
+    void addWithoutInverse(EObject e) {
+      VirtualEObject.addWithoutInverse(own(), e);
+    }
+  }
+
   @Override
   public void dynamicSet(int dynamicFeatureID, Object value) {
     // If it's a concrete feature, delegate to the concrete object
@@ -260,13 +622,13 @@ public class VirtualEObject extends DynamicEObjectImpl {
       throw new IllegalArgumentException("Invalid feature ID " + dynamicFeatureID);
     }
 
-    EStructuralFeature concreteFeature = concreteEObject.eClass().getEStructuralFeature(feature.getName());
+    EStructuralFeature concreteFeature = concreteFeature(dynamicFeatureID);
     // If it's a concrete feature, delegate to the concrete object
     if (concreteFeature != null) {
       concreteEObject.eSet(concreteFeature, value);
     } else {
       // If not then it's a virtual feature
-      virtualValues.put(feature, value);
+      putVirtualValue(feature, value);
 
       if (feature instanceof EReference) {
         // If it's a reference, then the value must be an EObject
@@ -277,7 +639,7 @@ public class VirtualEObject extends DynamicEObjectImpl {
 
         if (opposite != null) {
           if (opposite.isMany()) {
-            ((EListWithInverse) e.eGet(opposite)).addWithoutInverse(VirtualEObject.this);
+            addWithoutInverse(e.eGet(opposite), VirtualEObject.this);
           } else {
             if (e instanceof VirtualEObject) {
               ((VirtualEObject) e).eSetWithoutInverse(opposite, VirtualEObject.this);
@@ -291,7 +653,7 @@ public class VirtualEObject extends DynamicEObjectImpl {
   }
 
   void eSetWithoutInverse(EStructuralFeature feature, Object value) {
-    virtualValues.put(feature, value);
+    putVirtualValue(feature, value);
   }
 
   @Override
@@ -303,7 +665,7 @@ public class VirtualEObject extends DynamicEObjectImpl {
       throw new IllegalArgumentException("Invalid feature ID " + featureID);
     }
 
-    EStructuralFeature concreteFeature = concreteEObject.eClass().getEStructuralFeature(feature.getName());
+    EStructuralFeature concreteFeature = concreteFeature(featureID);
     // If it's a concrete feature, delegate to the concrete object...
     if (concreteFeature != null) {
       return concreteEObject.eIsSet(concreteFeature);
@@ -37,6 +37,7 @@ import org.eclipse.emf.ecore.util.EcoreEList;
 import org.atlanmod.emfviews.core.EcoreVirtualizer;
 import org.atlanmod.emfviews.core.View;
 import org.atlanmod.emfviews.core.Viewpoint;
+import org.atlanmod.emfviews.util.OpenAddressingIndex;
 
 public class VirtualEPackage extends BaseVirtualElement<EPackage> implements EPackage,
   BasicExtendedMetaData.EPackageExtendedMetaData.Holder {
@@ -45,6 +46,13 @@ public class VirtualEPackage extends BaseVirtualElement<EPackage> implements EPa
   private List<VirtualEPackage> virtualPackages = new ArrayList<>();
   private VirtualEPackage virtualSuperPackage;
 
+  // Index of virtualClassifiers by name.  See getEClassifier.
+  private OpenAddressingIndex virtualClassifierIndex = OpenAddressingIndex.byEquality(0);
+
+  // Returned as-is once the viewpoint is sealed
+  private EList<EClassifier> sealedClassifiers;
+  private EList<EPackage> sealedSubpackages;
+
   public VirtualEPackage(EPackage concreteEPackage, EcoreVirtualizer virtualizer) {
     super(EcorePackage.Literals.EPACKAGE, concreteEPackage, virtualizer);
   }
@@ -53,18 +61,32 @@ public class VirtualEPackage extends BaseVirtualElement<EPackage> implements EPa
   // I guess since only Viewpoint calls this method, and only with VirtualEClass,
   // there is need for the moment.
   public void addVirtualClassifier(VirtualEClass f) {
+    checkNotSealed();
     if (!virtualClassifiers.contains(f)) {
       virtualClassifiers.add(f);
+      virtualClassifierIndex = OpenAddressingIndex.byEquality(virtualClassifiers.size());
+      for (int i = 0; i < virtualClassifiers.size(); ++i) {
+        virtualClassifierIndex.putIfAbsent(virtualClassifiers.get(i).getName(), i);
+      }
+      virtualizer.advanceEpoch();
     }
   }
 
   public void addVirtualPackage(VirtualEPackage p) {
+    checkNotSealed();
     if (!virtualPackages.contains(p)) {
       virtualPackages.add(p);
       p.virtualSuperPackage = this;
+      virtualizer.advanceEpoch();
     }
   }
 
+  @Override
+  public void precompute() {
+    sealedClassifiers = getEClassifiers();
+    sealedSubpackages = getESubpackages();
+  }
+
   @Override
   public Object dynamicGet(int dynamicFeatureID) {
     EStructuralFeature feature = eDynamicFeature(dynamicFeatureID);
@@ -243,6 +265,10 @@ public class VirtualEPackage extends BaseVirtualElement<EPackage> implements EPa
 
   @Override
   public EList<EClassifier> getEClassifiers() {
+    if (virtualizer.isSealed() && sealedClassifiers != null) {
+      return sealedClassifiers;
+    }
+
     List<EClassifier> cs = getVisibleClassifiers();
     // See @UnmodifiableEList
     return new EcoreEList.UnmodifiableEList<>(
@@ -251,6 +277,10 @@ public class VirtualEPackage extends BaseVirtualElement<EPackage> implements EPa
 
   @Override
   public EList<EPackage> getESubpackages() {
+    if (virtualizer.isSealed() && sealedSubpackages != null) {
+      return sealedSubpackages;
+    }
+
     List<EPackage> subs = new ArrayList<>();
 
     for (EPackage p : concrete().getESubpackages()) {
@@ -278,11 +308,36 @@ public class VirtualEPackage extends BaseVirtualElement<EPackage> implements EPa
 
   @Override
   public EClassifier getEClassifier(String name) {
-    for (EClassifier f : getEClassifiers()) {
-      if (name.equals(f.getName())) {
-        return f;
+    // Like getEClassifiers, concrete classifiers come before virtual ones.
+    // The concrete package already indexes its classifiers by name, so we only
+    // need to index the virtual ones.
+    EClassifier c = concrete().getEClassifier(name);
+    if (c != null) {
+      VirtualEClassifier<?> vc = virtualizer.getVirtual(c);
+      if (vc.isVisible()) {
+        return vc;
+      }
+
+      // The first classifier by that name is filtered, but there may be
+      // another one.  Uncommon enough that a scan will do.
+      for (EClassifier f : concrete().getEClassifiers()) {
+        if (name.equals(f.getName())) {
+          vc = virtualizer.getVirtual(f);
+          if (vc.isVisible()) {
+            return vc;
+          }
+        }
       }
     }
+
+    int i = virtualClassifierIndex.get(name);
+    if (i >= 0) {
+      VirtualEClass vc = virtualClassifiers.get(i);
+      if (vc.isVisible() && name.equals(vc.getName())) {
+        return vc;
+      }
+    }
+
     return null;
   }
 
@@ -33,10 +33,18 @@ public class VirtualEReference extends VirtualEStructuralFeature<EReference> imp
 
   public EReference virtualOpposite;
 
+  // Returned as-is once the viewpoint is sealed
+  private EList<EAttribute> sealedKeys;
+
   public VirtualEReference(EReference concreteReference, EcoreVirtualizer virtualizer) {
     super(EcorePackage.Literals.EREFERENCE, concreteReference, virtualizer);
   }
 
+  @Override
+  public void precompute() {
+    sealedKeys = getEKeys();
+  }
+
   @Override
   public Object dynamicGet(int dynamicFeatureID) {
     EStructuralFeature feature = eDynamicFeature(dynamicFeatureID);
@@ -114,6 +122,10 @@ public class VirtualEReference extends VirtualEStructuralFeature<EReference> imp
 
   @Override
   public EList<EAttribute> getEKeys() {
+    if (virtualizer.isSealed() && sealedKeys != null) {
+      return sealedKeys;
+    }
+
     List<EAttribute> keys = new ArrayList<>();
 
     for (EAttribute a : concrete().getEKeys()) {
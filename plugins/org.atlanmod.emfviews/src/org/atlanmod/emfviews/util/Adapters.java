@@ -0,0 +1,59 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.util;
+
+import org.eclipse.emf.common.notify.Adapter;
+import org.eclipse.emf.common.notify.Notifier;
+
+/**
+ * Adds and removes the adapters of views on concrete objects.
+ *
+ * Views read from several threads attach adapters lazily, but adapter lists
+ * are not thread-safe, so additions to the same notifier must be serialized.
+ * The notifiers belong to the contributing models, and their users may lock
+ * them for their own purposes, so we do not lock them.  Instead, notifiers are
+ * spread over a fixed set of locks of our own.
+ */
+public final class Adapters {
+  private static final Object[] LOCKS = new Object[64];
+  static {
+    for (int i = 0; i < LOCKS.length; ++i) {
+      LOCKS[i] = new Object();
+    }
+  }
+
+  private Adapters() {}
+
+  /** The lock guarding the adapters of n. */
+  public static Object lockFor(Notifier n) {
+    int h = System.identityHashCode(n);
+    return LOCKS[(h ^ (h >>> 16)) & (LOCKS.length - 1)];
+  }
+
+  public static void add(Notifier n, Adapter a) {
+    synchronized (lockFor(n)) {
+      n.eAdapters().add(a);
+    }
+  }
+
+  public static void remove(Notifier n, Adapter a) {
+    synchronized (lockFor(n)) {
+      n.eAdapters().remove(a);
+    }
+  }
+
+}
@@ -1,10 +1,14 @@
 package org.atlanmod.emfviews.util;
 
-import java.util.Arrays;
+import java.util.AbstractList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.eclipse.emf.common.notify.NotificationChain;
 import org.eclipse.emf.common.util.EList;
@@ -19,88 +23,137 @@ import org.atlanmod.emfviews.elements.VirtualEObject;
  * contents until they are accessed.
  *
  * This class is used in VirtualEObject to avoid virtualizing all contents up
- * front.
+ * front.  Like the eContents list of EMF, it cannot be modified.
  */
-public class LazyEContentsList implements EList<EObject>, InternalEList<EObject> {
-  // @Correctness: only the essential EList methods are implemented.  This is
-  // enough to make VirtualEObject work in most cases, but surely we should take
-  // a look at the remaining methods.
-
-  private VirtualEObject owner;
+public class LazyEContentsList extends AbstractList<EObject>
+  implements EList<EObject>, InternalEList<EObject>, RandomAccess {
+  // The contents are the values of each containment feature of the owner, one
+  // after the other.  We call the values of one feature a segment.  Once the
+  // sizes of all segments are known, we keep the offset of each segment in the
+  // list, so get is a binary search over the segments.  Iterators move from
+  // segment to segment, and never compute the size of the whole list.
+  // Searches (contains, indexOf) are delegated to the values of each feature,
+  // which can look for the concrete object instead of virtualizing every
+  // element (see VirtualEList.indexOf).
+
+  // The list can be read from several threads (see
+  // VirtualEObject@ConcurrentReaders).  All cached values are idempotent: two
+  // threads computing the same value get equal results, so we only need to
+  // publish them safely, not to lock.
+  //
+  // The cached values are those of the concrete object at the time they were
+  // computed.  When it changes, they are dropped and computed again on demand.
+  // Changes elsewhere in the model do not concern this list.
+
+  private final VirtualEObject owner;
 
   // Cached values
-  private EList<EReference> containments;
-  private int numContainments = -1;
-  private Object[] containedValues;
-  private int[] containedSizes;
-  private int size = -1;
+  private final EList<EReference> containments;
+  private final int numContainments;
+  private final AtomicReferenceArray<Object> containedValues;
+  private final AtomicIntegerArray containedSizes; // size + 1, or 0 if unknown
+  private volatile int[] offsets; // offset of each segment, then the size, or null
 
-  public LazyEContentsList(VirtualEObject owner) {
-    this.owner = owner;
-  }
+  private final ModificationCounter counter; // of the concrete object
+  private volatile int modifications;        // when the values were cached
 
-  private EList<EReference> containments() {
-    if (containments == null) {
-      containments = owner.eClass().getEAllContainments();
-      numContainments = containments.size();
-    }
-    return containments;
-  }
-
-  private int numContainments() {
-    if (numContainments == -1) {
-      numContainments = containments().size();
+  public LazyEContentsList(VirtualEObject owner, ModificationCounter counter) {
+    this.owner = owner;
+    this.containments = owner.eClass().getEAllContainments();
+    this.numContainments = containments.size();
+    this.containedValues = new AtomicReferenceArray<>(numContainments);
+    this.containedSizes = new AtomicIntegerArray(numContainments);
+    this.counter = counter;
+    this.modifications = counter.get();
+  }
+
+  // Drop the cached values if the concrete object changed since they were
+  // computed
+  private void validate() {
+    int m = counter.get();
+    if (m != modifications) {
+      for (int i = 0; i < numContainments; ++i) {
+        containedValues.set(i, null);
+        containedSizes.set(i, 0);
+      }
+      offsets = null;
+      modifications = m;
     }
-    return numContainments;
   }
 
   private Object containedValue(int index) {
-    if (containedValues == null) {
-      containedValues = new Object[numContainments()];
-    }
-
-    if (containedValues[index] == null) {
+    Object v = containedValues.get(index);
+    if (v == null) {
       // What if eGet returns null?  We will call eGet again.
       // We could differentiate between null (unfetched) and null (fetched).
-      containedValues[index] = owner.eGet(containments().get(index));
+      v = owner.eGet(containments.get(index));
+      containedValues.set(index, v);
     }
 
-    return containedValues[index];
+    return v;
   }
 
   private int containedSize(int index) {
-    if (containedSizes == null) {
-      containedSizes = new int[numContainments()];
-      Arrays.fill(containedSizes, -1);
+    int s = containedSizes.get(index) - 1;
+    if (s == -1) {
+      if (containments.get(index).isMany()) {
+        s = ((List<?>) containedValue(index)).size();
+      } else {
+        s = containedValue(index) == null ? 0 : 1;
+      }
+      containedSizes.set(index, s + 1);
     }
 
-    if (containedSizes[index] == -1) {
-      if (containments().get(index).isMany()) {
-        containedSizes[index] = ((List<?>) containedValue(index)).size();
-      } else {
-        containedSizes[index] = containedValue(index) == null ? 0 : 1;
+    return s;
+  }
+
+  // Element at position i of segment
+  private EObject element(int segment, int i) {
+    Object v = containedValue(segment);
+    if (containments.get(segment).isMany()) {
+      @SuppressWarnings("unchecked")
+      List<EObject> list = (List<EObject>) v;
+      return list.get(i);
+    } else {
+      return (EObject) v;
+    }
+  }
+
+  private int[] offsets() {
+    validate();
+    int[] o = offsets;
+    if (o == null) {
+      o = new int[numContainments + 1];
+      for (int i = 0; i < numContainments; ++i) {
+        o[i + 1] = o[i] + containedSize(i);
       }
+      offsets = o;
     }
+    return o;
+  }
 
-    return containedSizes[index];
+  // Position of o in segment, or -1
+  private int indexIn(int segment, Object o, boolean last) {
+    if (containments.get(segment).isMany()) {
+      List<?> list = (List<?>) containedValue(segment);
+      return last ? list.lastIndexOf(o) : list.indexOf(o);
+    } else {
+      Object v = containedValue(segment);
+      return v != null && v.equals(o) ? 0 : -1;
+    }
   }
 
   @Override
   public int size() {
-    if (size == -1) {
-      size = 0;
-      for (int i=0; i < numContainments(); ++i) {
-        size += containedSize(i);
-      }
-    }
-    return size;
+    return offsets()[numContainments];
   }
 
   @Override
   public boolean isEmpty() {
     // If there is at least one element, then it's not empty.
     // This is faster than getting the actual size.
-    for (int i=0; i < numContainments(); ++i) {
+    validate();
+    for (int i=0; i < numContainments; ++i) {
       if (containedSize(i) > 0) {
         return false;
       }
@@ -108,147 +161,107 @@ public class LazyEContentsList implements EList<EObject>, InternalEList<EObject>
     return true;
   }
 
-  @Override
-  public boolean contains(Object o) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public Iterator<EObject> iterator() {
-    return new Iterator<EObject>() {
-      int cursor = 0;
-
-      @Override
-      public boolean hasNext() {
-        return cursor < size();
-      }
-
-      @Override
-      public EObject next() {
-        return get(cursor++);
-      }
-    };
-  }
-
-  @Override
-  public Object[] toArray() {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public <T> T[] toArray(T[] a) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public boolean add(EObject e) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public boolean remove(Object o) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public boolean containsAll(Collection<?> c) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public boolean addAll(Collection<? extends EObject> c) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public boolean addAll(int index, Collection<? extends EObject> c) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public boolean removeAll(Collection<?> c) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public boolean retainAll(Collection<?> c) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public void clear() {
-    throw new UnsupportedOperationException();
-  }
-
   @Override
   public EObject get(int index) {
-    for (int i=0; i < numContainments(); ++i) {
-      int s = containedSize(i);
-      if (index < s) {
-        Object v = containedValue(i);
-        if (containments().get(i).isMany()) {
-          @SuppressWarnings("unchecked")
-          List<EObject> list = (List<EObject>) v;
-          return list.get(index);
-        } else {
-          return (EObject) v;
-        }
+    int[] o = offsets();
+    if (index < 0 || index >= o[numContainments]) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + o[numContainments]);
+    }
+
+    // Find the last segment starting at or before index.  Empty segments
+    // before it start at the same offset, and empty ones after it start past
+    // index.
+    int lo = 0;
+    int hi = numContainments - 1;
+    while (lo < hi) {
+      int mid = (lo + hi + 1) >>> 1;
+      if (o[mid] <= index) {
+        lo = mid;
       } else {
-        index -= s;
+        hi = mid - 1;
       }
     }
-
-    throw new IndexOutOfBoundsException(index + "");
-  }
-
-  @Override
-  public EObject set(int index, EObject element) {
-    throw new UnsupportedOperationException();
-  }
-
-  @Override
-  public void add(int index, EObject element) {
-    throw new UnsupportedOperationException();
+    return element(lo, index - o[lo]);
   }
 
   @Override
-  public EObject remove(int index) {
-    throw new UnsupportedOperationException();
+  public boolean contains(Object o) {
+    validate();
+    for (int i = 0; i < numContainments; ++i) {
+      if (indexIn(i, o, false) >= 0) {
+        return true;
+      }
+    }
+    return false;
   }
 
   @Override
   public int indexOf(Object o) {
-    throw new UnsupportedOperationException();
+    int[] offs = offsets();
+    for (int i = 0; i < numContainments; ++i) {
+      int j = indexIn(i, o, false);
+      if (j >= 0) {
+        return offs[i] + j;
+      }
+    }
+    return -1;
   }
 
   @Override
   public int lastIndexOf(Object o) {
-    throw new UnsupportedOperationException();
+    int[] offs = offsets();
+    for (int i = numContainments - 1; i >= 0; --i) {
+      int j = indexIn(i, o, true);
+      if (j >= 0) {
+        return offs[i] + j;
+      }
+    }
+    return -1;
   }
 
   @Override
-  public ListIterator<EObject> listIterator() {
-    throw new UnsupportedOperationException();
-  }
+  public Iterator<EObject> iterator() {
+    return new Iterator<EObject>() {
+      int segment = 0;
+      int cursor = 0; // in segment
 
-  @Override
-  public ListIterator<EObject> listIterator(int index) {
-    throw new UnsupportedOperationException();
-  }
+      @Override
+      public boolean hasNext() {
+        validate();
+        while (segment < numContainments) {
+          if (cursor < containedSize(segment)) {
+            return true;
+          }
+          ++segment;
+          cursor = 0;
+        }
+        return false;
+      }
 
-  @Override
-  public List<EObject> subList(int fromIndex, int toIndex) {
-    throw new UnsupportedOperationException();
+      @Override
+      public EObject next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return element(segment, cursor++);
+      }
+    };
   }
 
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // InternalEList
+  //
+  // There are no proxies to resolve in a virtual contents list, so the basic
+  // methods are the regular ones.
+
   @Override
   public EObject basicGet(int index) {
-    throw new UnsupportedOperationException();
+    return get(index);
   }
 
   @Override
   public List<EObject> basicList() {
-    throw new UnsupportedOperationException();
+    return this;
   }
 
   @Override
@@ -258,44 +271,47 @@ public class LazyEContentsList implements EList<EObject>, InternalEList<EObject>
 
   @Override
   public ListIterator<EObject> basicListIterator() {
-    throw new UnsupportedOperationException();
+    return listIterator();
   }
 
   @Override
   public ListIterator<EObject> basicListIterator(int index) {
-    throw new UnsupportedOperationException();
+    return listIterator(index);
   }
 
   @Override
   public Object[] basicToArray() {
-    throw new UnsupportedOperationException();
+    return toArray();
   }
 
   @Override
   public <T> T[] basicToArray(T[] array) {
-    throw new UnsupportedOperationException();
+    return toArray(array);
   }
 
   @Override
   public int basicIndexOf(Object object) {
-    throw new UnsupportedOperationException();
+    return indexOf(object);
   }
 
   @Override
   public int basicLastIndexOf(Object object) {
-    throw new UnsupportedOperationException();
+    return lastIndexOf(object);
   }
 
   @Override
   public boolean basicContains(Object object) {
-    throw new UnsupportedOperationException();
+    return contains(object);
   }
 
   @Override
   public boolean basicContainsAll(Collection<?> collection) {
-    throw new UnsupportedOperationException();
+    return containsAll(collection);
   }
 
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Modifications are not supported
+
   @Override
   public NotificationChain basicRemove(Object object, NotificationChain notifications) {
     throw new UnsupportedOperationException();
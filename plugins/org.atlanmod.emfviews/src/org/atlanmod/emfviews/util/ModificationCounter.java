@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+
+package org.atlanmod.emfviews.util;
+
+import org.eclipse.emf.common.notify.Notification;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.notify.impl.AdapterImpl;
+
+/**
+ * Counts the modifications of a concrete object or resource, as seen through
+ * its notifications.
+ *
+ * Caches of the view record the count when they are computed, and compute
+ * again when it has changed.  Counters are attached lazily, to the objects
+ * whose virtual counterparts cache something, so that unobserved objects cost
+ * nothing.  Each view has its own counters (see
+ * Virtualizer.getModificationCounter), so that it can detach them when it is
+ * unloaded.
+ */
+public final class ModificationCounter extends AdapterImpl {
+  private volatile int modifications;
+
+  private ModificationCounter() {}
+
+  /** Number of modifications of the notifier since the counter was attached. */
+  public int get() {
+    return modifications;
+  }
+
+  @Override
+  public void notifyChanged(Notification msg) {
+    if (!msg.isTouch()) {
+      ++modifications;
+    }
+  }
+
+  /** Attach a new counter to owner. */
+  public static ModificationCounter attach(Notifier owner) {
+    ModificationCounter c = new ModificationCounter();
+    Adapters.add(owner, c);
+    return c;
+  }
+
+  /** Detach this counter from its notifier, if it is still attached. */
+  public void detach() {
+    Notifier n = getTarget();
+    if (n != null) {
+      Adapters.remove(n, this);
+    }
+  }
+
+}
@@ -0,0 +1,122 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.util;
+
+/**
+ * A hash index from keys to int values, using open addressing with linear
+ * probing.
+ *
+ * Virtual classes and packages use it to look up features and classifiers by
+ * name or by identity without allocating, unlike a HashMap which would box the
+ * values.  The index has a fixed capacity: it is filled once, and rebuilt when
+ * the indexed elements change.
+ */
+public final class OpenAddressingIndex {
+
+  private final Object[] keys;
+  private final int[] values;
+  private final int mask;
+  private final boolean identity;
+  private int size = 0;
+
+  private OpenAddressingIndex(int expectedSize, boolean identity) {
+    // Keep the load factor under 1/2 so that probe sequences stay short
+    int capacity = 2;
+    while (capacity < expectedSize * 2) {
+      capacity <<= 1;
+    }
+    this.keys = new Object[capacity];
+    this.values = new int[capacity];
+    this.mask = capacity - 1;
+    this.identity = identity;
+  }
+
+  /** An index comparing keys with equals, e.g. for names. */
+  public static OpenAddressingIndex byEquality(int expectedSize) {
+    return new OpenAddressingIndex(expectedSize, false);
+  }
+
+  /** An index comparing keys with ==, e.g. for model elements. */
+  public static OpenAddressingIndex byIdentity(int expectedSize) {
+    return new OpenAddressingIndex(expectedSize, true);
+  }
+
+  /**
+   * Associate value to key, unless key is null or already present.  Keeping the
+   * first value mimics the linear scans this index replaces.
+   *
+   * @return whether the key was added
+   */
+  public boolean putIfAbsent(Object key, int value) {
+    if (key == null) {
+      return false;
+    }
+
+    int i = slot(key);
+    while (keys[i] != null) {
+      if (matches(keys[i], key)) {
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+
+    if ((size + 1) * 2 > keys.length) {
+      throw new IllegalStateException("Index is full; expected size was too small");
+    }
+
+    keys[i] = key;
+    values[i] = value;
+    ++size;
+    return true;
+  }
+
+  /**
+   * @return the value associated to key, or -1 if key is absent
+   */
+  public int get(Object key) {
+    if (key == null) {
+      return -1;
+    }
+
+    int i = slot(key);
+    Object k;
+    while ((k = keys[i]) != null) {
+      if (matches(k, key)) {
+        return values[i];
+      }
+      i = (i + 1) & mask;
+    }
+    return -1;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  private boolean matches(Object k, Object key) {
+    return identity ? k == key : k.equals(key);
+  }
+
+  private int slot(Object key) {
+    int h = identity ? System.identityHashCode(key) : key.hashCode();
+    // Spread the high bits, since we only use the low ones
+    h *= 0x9E3779B9;
+    h ^= (h >>> 16);
+    return h & mask;
+  }
+
+}
@@ -0,0 +1,109 @@
+/*******************************************************************************
+ * Copyright (c) 2017, 2018 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.emf.ecore.ENamedElement;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EStructuralFeature;
+
+/**
+ * A trie of the named elements under a root object, for resolving many paths
+ * against the same root.
+ *
+ * Resolves paths the same way as EMFViewsUtil.findElement, but each level of
+ * the tree is scanned only once: the children of a node are indexed by name
+ * the first time a path goes through it.  Use it when resolving many paths
+ * (e.g., all the elements of a weaving model), and use findElement for a
+ * one-off lookup.
+ *
+ * The index assumes the tree under the root does not change while it is used.
+ */
+public final class PathIndex {
+
+  private static final class Node {
+    final EObject element;
+    Map<String, Node> children; // null until indexed
+
+    Node(EObject element) {
+      this.element = element;
+    }
+  }
+
+  private final Node root;
+
+  public PathIndex(EObject root) {
+    this.root = new Node(root);
+  }
+
+  /**
+   * Find and return the element that matches the path.  See
+   * EMFViewsUtil.findElement for the format of the path.
+   *
+   * @param path dot-separated list of names to match
+   * @return the matching object, if it can be found
+   */
+  public Optional<EObject> find(String path) {
+    String[] components = path.split("\\.");
+    // findElement matches nothing for an empty path
+    if (components.length == 0) {
+      return Optional.empty();
+    }
+
+    Node n = root;
+    for (String comp : components) {
+      n = children(n).get(comp);
+      if (n == null) {
+        return Optional.empty();
+      }
+    }
+    return Optional.of(n.element);
+  }
+
+  private static Map<String, Node> children(Node n) {
+    if (n.children == null) {
+      n.children = new HashMap<>();
+      for (EObject o : n.element.eContents()) {
+        String name = getName(o);
+        // Can only match named elements.  Like findElement, the first element
+        // with a given name wins.
+        if (name != null) {
+          n.children.putIfAbsent(name, new Node(o));
+        }
+      }
+    }
+    return n.children;
+  }
+
+  private static String getName(EObject o) {
+    // Shortcut for Ecore elements, which is what we index most of the time
+    if (o instanceof ENamedElement) {
+      return ((ENamedElement) o).getName();
+    }
+
+    EStructuralFeature nameFeature = o.eClass().getEStructuralFeature("name");
+    if (nameFeature != null) {
+      Object name = o.eGet(nameFeature);
+      return name instanceof String ? (String) name : null;
+    }
+    return null;
+  }
+
+}
@@ -19,24 +19,43 @@ package org.atlanmod.emfviews.tests;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Properties;
+import java.util.Spliterator;
 import java.util.StringJoiner;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.common.util.TreeIterator;
 import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
 import org.eclipse.emf.ecore.EClassifier;
 import org.eclipse.emf.ecore.EObject;
@@ -48,16 +67,30 @@ import org.eclipse.emf.ecore.EcorePackage;
 import org.eclipse.emf.ecore.resource.Resource;
 import org.eclipse.emf.ecore.resource.URIConverter;
 import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.eclipse.emf.ecore.util.InternalEList;
 import org.eclipse.epsilon.eol.exceptions.EolRuntimeException;
 import org.junit.BeforeClass;
 import org.junit.FixMethodOrder;
 import org.junit.Test;
 import org.junit.runners.MethodSorters;
 
+import org.atlanmod.emfviews.core.AssociationStore;
+import org.atlanmod.emfviews.core.BinaryWeavingModel;
+import org.atlanmod.emfviews.core.ModelCache;
 import org.atlanmod.emfviews.core.View;
 import org.atlanmod.emfviews.core.ViewResource;
 import org.atlanmod.emfviews.core.Viewpoint;
+import org.atlanmod.emfviews.core.ViewpointRegistry;
 import org.atlanmod.emfviews.core.ViewpointResource;
+import org.atlanmod.emfviews.elements.VirtualEClass;
+import org.atlanmod.emfviews.elements.VirtualEObject;
+import org.atlanmod.emfviews.util.EMFViewsUtil;
+import org.atlanmod.emfviews.util.PathIndex;
+import org.atlanmod.emfviews.virtuallinks.ConcreteConcept;
+import org.atlanmod.emfviews.virtuallinks.ContributingModel;
+import org.atlanmod.emfviews.virtuallinks.VirtualAssociation;
 import org.atlanmod.emfviews.virtuallinks.VirtualLinksFactory;
 import org.atlanmod.emfviews.virtuallinks.VirtualLinksPackage;
 import org.atlanmod.emfviews.virtuallinks.WeavingModel;
@@ -745,6 +778,80 @@ public class TestEMFViews {
     assertTrue(getFeature(C, "path").isPresent());
   }
 
+  @Test
+  public void pathIndex() {
+    // PathIndex resolves paths like EMFViewsUtil.findElement
+
+    // Every element of the test metamodels
+    for (String mm : Arrays.asList("metamodels/minimalA.ecore", "metamodels/minimalB.ecore",
+                                   "metamodels/contentfwk.ecore")) {
+      EPackage p = (EPackage) new ResourceSetImpl()
+        .getResource(resourceURI(mm), true).getContents().get(0);
+      PathIndex index = new PathIndex(p);
+      for (TreeIterator<EObject> it = p.eAllContents(); it.hasNext();) {
+        String path = EMFViewsUtil.getEObjectPath(it.next());
+        assertEquals(path, EMFViewsUtil.findElement(p, path), index.find(path));
+      }
+    }
+
+    // Nested packages, with a class and a subpackage both named 'sub', and
+    // two classes named 'Dup'
+    EcoreFactory f = EcoreFactory.eINSTANCE;
+    EPackage root = f.createEPackage();
+    root.setName("root");
+    EClass sub = f.createEClass();
+    sub.setName("sub");
+    EClass dup1 = f.createEClass();
+    dup1.setName("Dup");
+    EClass dup2 = f.createEClass();
+    dup2.setName("Dup");
+    root.getEClassifiers().addAll(Arrays.asList(sub, dup1, dup2));
+    EAttribute a = f.createEAttribute();
+    a.setName("a");
+    dup1.getEStructuralFeatures().add(a);
+    EAttribute b = f.createEAttribute();
+    b.setName("b");
+    dup2.getEStructuralFeatures().add(b);
+
+    EPackage subPackage = f.createEPackage();
+    subPackage.setName("sub");
+    EPackage other = f.createEPackage();
+    other.setName("other");
+    EPackage inner = f.createEPackage();
+    inner.setName("inner");
+    root.getESubpackages().addAll(Arrays.asList(subPackage, other));
+    other.getESubpackages().add(inner);
+    EClass C = f.createEClass();
+    C.setName("C");
+    inner.getEClassifiers().add(C);
+    EAttribute x = f.createEAttribute();
+    x.setName("x");
+    C.getEStructuralFeatures().add(x);
+
+    // Misses come first, before the levels they go through are indexed
+    List<String> paths = Arrays.asList("missing", "other.missing.C", "other.inner.D",
+                                       "other.inner.C.x.y", "", "other.inner.C.x", "other.",
+                                       "other.inner", "sub", "sub.inner", "Dup", "Dup.a",
+                                       "Dup.b");
+    PathIndex index = new PathIndex(root);
+    for (String path : paths) {
+      assertEquals(path, EMFViewsUtil.findElement(root, path), index.find(path));
+    }
+
+    // Nested packages
+    assertSame(x, index.find("other.inner.C.x").get());
+    assertSame(other, index.find("other.").get());
+    // Missing segments
+    assertFalse(index.find("other.missing.C").isPresent());
+    assertFalse(index.find("other.inner.C.x.y").isPresent());
+    // Ambiguous names: the first element wins, without backtracking
+    assertSame(sub, index.find("sub").get());
+    assertFalse(index.find("sub.inner").isPresent());
+    assertSame(dup1, index.find("Dup").get());
+    assertSame(a, index.find("Dup.a").get());
+    assertFalse(index.find("Dup.b").isPresent());
+  }
+
   @Test
   public void pureMemoryViewpoint() {
     // We should be able to create a viewpoint without creating any file
@@ -1147,6 +1254,1460 @@ public class TestEMFViews {
     }
   }
 
+  @Test
+  public void sealedViewpoint() {
+    // A sealed viewpoint computes its lists once, and cannot be modified
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'A'"
+        + "                  :eStructuralFeatures [(EAttribute :name 'a' :eType EInt)])"
+        + "               (EClass :name 'B' :eSuperTypes [@1])])",
+        EcoreFactory.eINSTANCE)[0];
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    Viewpoint viewpoint = new Viewpoint(m);
+    viewpoint.seal();
+    assertTrue(viewpoint.isSealed());
+
+    VirtualEClass B = (VirtualEClass) findClassifier(viewpoint.getRootPackage(), "B");
+    assertSame(B.getEAllStructuralFeatures(), B.getEAllStructuralFeatures());
+    assertSame(B.getEAllSuperTypes(), B.getEAllSuperTypes());
+    assertEquals("a", B.getEAllStructuralFeatures().get(0).getName());
+
+    // Views of a sealed viewpoint work as usual
+    EObject b = P.getEFactoryInstance().create((EClass) P.getEClassifier("B"));
+    eSet(b, "a", 1);
+    View view = new View(viewpoint);
+    assertEquals(1, eGet(view.getVirtual(b), "a"));
+
+    try {
+      B.setFiltered(true);
+      fail("Expected sealed viewpoint to throw");
+    } catch (IllegalStateException ex) {
+      assertEquals("Cannot modify a sealed viewpoint", ex.getMessage());
+    }
+  }
+
+  @Test
+  public void viewpointSnapshot() throws IOException {
+    // With the snapshot option, a viewpoint is saved in a binary file next to
+    // the eviewpoint file, and restored from it on subsequent loads
+
+    Properties p = new Properties();
+    p.setProperty(ViewpointResource.EVIEWPOINT_CONTRIBUTING_METAMODELS, "A::../../metamodels/minimalA.ecore");
+    p.setProperty(ViewpointResource.EVIEWPOINT_WEAVING_MODEL, "assoc-to-newconcept.xmi");
+    p.setProperty(ViewpointResource.EVIEWPOINT_SNAPSHOT, "true");
+    String path = "viewpoints/synthetic-elements/snapshot.eviewpoint";
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(path)), null);
+    File snapshot = new File(here + "/resources/" + path + ".snapshot");
+
+    try {
+      // The first load writes the snapshot, the second uses it.  A corrupt
+      // snapshot is rebuilt.
+      for (int i = 0; i < 3; ++i) {
+        ViewpointResource vr = new ViewpointResource(resourceURI(path));
+        vr.load(null);
+        assertNoErrors(vr);
+        Viewpoint v = vr.getViewpoint();
+        assertTrue(snapshot.exists());
+        // Only the second load finds a current snapshot
+        assertEquals(i == 1, vr.getLoadStats().fromSnapshot);
+
+        EList<EObject> l = v.getRootPackage().eContents();
+        EObject A = getClassifier(l.get(0), "A").get();
+        EObject C = getClassifier(l.get(1), "C").get();
+        EObject AtoC = getFeature(A, "refToC").get();
+        assertEquals(C, eGet(AtoC, "eType"));
+
+        if (i == 1) {
+          try (OutputStream out = new FileOutputStream(snapshot)) {
+            out.write(new byte[] { 1, 2, 3 });
+          }
+        }
+      }
+    } finally {
+      new File(here + "/resources/" + path).delete();
+      snapshot.delete();
+    }
+
+    // Edits are detected even when they keep the length and timestamp of the
+    // weaving model
+    File weaving = new File(here + "/resources/viewpoints/synthetic-elements/snapshot-weaving.xmi");
+    Files.copy(new File(here + "/resources/viewpoints/synthetic-elements/assoc-to-newconcept.xmi").toPath(),
+               weaving.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    p.setProperty(ViewpointResource.EVIEWPOINT_WEAVING_MODEL, weaving.getName());
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(path)), null);
+    try {
+      ViewpointResource vr = new ViewpointResource(resourceURI(path));
+      vr.load(null);
+      assertNoErrors(vr);
+      assertFalse(vr.getLoadStats().fromSnapshot);
+
+      long modified = weaving.lastModified();
+      String xmi = new String(Files.readAllBytes(weaving.toPath()), StandardCharsets.UTF_8);
+      Files.write(weaving.toPath(), xmi.replace("refToC", "refToD").getBytes(StandardCharsets.UTF_8));
+      assertTrue(weaving.setLastModified(modified));
+
+      vr = new ViewpointResource(resourceURI(path));
+      vr.load(null);
+      assertNoErrors(vr);
+      assertFalse(vr.getLoadStats().fromSnapshot);
+      EObject A = getClassifier(vr.getViewpoint().getRootPackage().eContents().get(0), "A").get();
+      assertTrue(getFeature(A, "refToD").isPresent());
+    } finally {
+      new File(here + "/resources/" + path).delete();
+      snapshot.delete();
+      weaving.delete();
+    }
+  }
+
+  @Test
+  public void viewpointRegistry() throws Exception {
+    // Concurrent loads of a registered viewpoint build it only once
+    ViewpointRegistry r = new ViewpointRegistry(2);
+    AtomicInteger builds = new AtomicInteger();
+    ViewpointRegistry.Loader loader = () -> {
+      builds.incrementAndGet();
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      Viewpoint v = new Viewpoint();
+      r.put("a", v);
+      return v;
+    };
+
+    ExecutorService pool = Executors.newFixedThreadPool(8);
+    List<Future<Viewpoint>> results = new ArrayList<>();
+    for (int i = 0; i < 8; ++i) {
+      results.add(pool.submit(() -> r.getOrLoad("a", loader)));
+    }
+    Viewpoint a = results.get(0).get();
+    for (Future<Viewpoint> f : results) {
+      assertSame(a, f.get());
+    }
+    pool.shutdown();
+    assertEquals(1, builds.get());
+    assertEquals(1, r.getStats().loads);
+
+    // The least recently used viewpoint is evicted first
+    r.put("b", new Viewpoint());
+    r.get("a");
+    r.put("c", new Viewpoint());
+    assertEquals(2, r.size());
+    assertSame(a, r.get("a"));
+    assertNull(r.get("b"));
+    assertEquals(1, r.getStats().evictions);
+
+    // Entries are invalidated when their file changes
+    File f = File.createTempFile("registry", ".eviewpoint");
+    try {
+      String uri = URI.createFileURI(f.getAbsolutePath()).toString();
+      Viewpoint v = new Viewpoint();
+      r.put(uri, v);
+      assertSame(v, r.get(uri));
+      f.setLastModified(f.lastModified() - 10000);
+      assertNull(r.get(uri));
+      assertEquals(1, r.getStats().invalidations);
+    } finally {
+      f.delete();
+    }
+
+    // The registry can still be used as a map
+    Map<String, Viewpoint> m = r;
+    Viewpoint d = new Viewpoint();
+    assertNull(m.put("d", d));
+    assertTrue(m.containsKey("d"));
+    assertSame(d, m.put("d", d));
+    assertTrue(m.entrySet().stream().anyMatch(e -> e.getKey().equals("d") && e.getValue() == d));
+    m.entrySet().removeIf(e -> e.getKey().equals("d"));
+    assertFalse(m.containsKey("d"));
+    assertSame(a, m.remove("a"));
+    assertTrue(m.isEmpty());
+
+    // Views on a viewpoint that will not be registered load it on their own,
+    // without waiting for other loads of the same viewpoint
+    ViewpointResource.registry.resetStats();
+    loadView("views/minimal/view.eview");
+    assertEquals(0, ViewpointResource.registry.getStats().loads);
+    assertEquals(1, ViewpointResource.registry.getStats().misses);
+  }
+
+  @Test
+  public void concurrentReaders() throws Exception {
+    // Threads reading a view at once all get the same virtual object for a
+    // concrete object
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'N'"
+        + "                  :eStructuralFeatures [(EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass N = (EClass) P.getEClassifier("N");
+    EReference children = (EReference) N.getEStructuralFeature("children");
+    children.setContainment(true);
+
+    // A tree of 1 + 10 + 100 + 1000 nodes
+    EObject root = P.getEFactoryInstance().create(N);
+    List<EObject> level = Arrays.asList(root);
+    for (int d = 0; d < 3; ++d) {
+      List<EObject> next = new ArrayList<>();
+      for (EObject parent : level) {
+        for (int i = 0; i < 10; ++i) {
+          EObject child = P.getEFactoryInstance().create(N);
+          eList(parent, "children").add(child);
+          next.add(child);
+        }
+      }
+      level = next;
+    }
+    Resource r = new ResourceImpl();
+    r.getContents().add(root);
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    Viewpoint viewpoint = new Viewpoint(m);
+    viewpoint.seal();
+    View view = new View(viewpoint, Arrays.asList(r));
+
+    // Each thread traverses the whole view, starting at the same time to
+    // maximize contention on the virtualization cache
+    int threads = 8;
+    CyclicBarrier start = new CyclicBarrier(threads);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    List<Future<List<EObject>>> results = new ArrayList<>();
+    for (int t = 0; t < threads; ++t) {
+      results.add(pool.submit(() -> {
+        start.await();
+        List<EObject> visited = new ArrayList<>();
+        TreeIterator<EObject> it = view.getVirtualContents().get(0).eAllContents();
+        while (it.hasNext()) {
+          EObject v = it.next();
+          eList(v, "children").size();
+          visited.add(v);
+        }
+        return visited;
+      }));
+    }
+
+    // All threads saw the same virtual objects, in the same order
+    List<EObject> first = results.get(0).get();
+    assertEquals(1110, first.size());
+    for (Future<List<EObject>> f : results) {
+      List<EObject> visited = f.get();
+      assertEquals(first.size(), visited.size());
+      for (int i = 0; i < first.size(); ++i) {
+        assertSame(first.get(i), visited.get(i));
+      }
+    }
+    pool.shutdown();
+
+    // And these are the virtual objects the view returns afterwards
+    for (EObject o : level) {
+      assertTrue(first.contains(view.getVirtual(o)));
+    }
+  }
+
+  @Test
+  public void virtualCacheEviction() {
+    // Virtual objects without virtual state are evicted once unused, but
+    // identity is stable while they are reachable
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [(EClass :name 'A')])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass A = (EClass) P.getEClassifier("A");
+    Resource r = new ResourceImpl();
+    for (int i = 0; i < 1000; ++i) {
+      r.getContents().add(P.getEFactoryInstance().create(A));
+    }
+
+    WeavingModel vwm = (WeavingModel) Sexp2EMF.build("(WeavingModel :name 'WM' "
+        + ":contributingModels [(ContributingModel :URI '00'"
+        + "                      :concreteElements [#1(ConcreteConcept :path 'A')])]"
+        + ":virtualLinks [(VirtualAssociation :name 'assoc' :source @1 :target @1"
+        + "                                   :lowerBound 0 :upperBound -1)])",
+        VirtualLinksFactory.eINSTANCE)[0];
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    View view = new View(new Viewpoint(m, vwm), Arrays.asList(r));
+
+    // Reading an empty virtual feature gives no state, modifying it does
+    EObject kept = view.getVirtual(r.getContents().get(0));
+    EObject empty = view.getVirtual(r.getContents().get(2));
+    assertTrue(eList(empty, "assoc").isEmpty());
+    EObject linked = view.getVirtual(r.getContents().get(3));
+    eList(linked, "assoc").add(kept);
+    view.getVirtual(r.getContents().get(1)).setHidden(true);
+    for (EObject o : r.getContents()) {
+      view.getVirtual(o);
+    }
+    assertEquals(1000, view.getCacheSize());
+
+    // Weak references to reachable objects are never cleared
+    System.gc();
+    assertSame(kept, view.getVirtual(r.getContents().get(0)));
+    assertEquals(1000, view.getCacheSize());
+
+    // Once unreachable, stateless objects are collected and evicted: only the
+    // modified object and the one we hold stay in the cache
+    empty = null;
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (view.getCacheSize() > 2 && System.currentTimeMillis() < deadline) {
+      System.gc();
+      byte[][] garbage = new byte[64][];
+      for (int i = 0; i < garbage.length; ++i) {
+        garbage[i] = new byte[1 << 16];
+      }
+    }
+    assertEquals(2, view.getCacheSize());
+    assertEquals(998, view.getCacheEvictions());
+    assertSame(kept, view.getVirtual(r.getContents().get(0)));
+    assertSame(linked, view.getVirtual(r.getContents().get(3)));
+    assertEquals(1, eList(linked, "assoc").size());
+
+    // Hidden objects are tracked by concrete object, and stay hidden
+    assertTrue(view.getVirtual(r.getContents().get(1)).isHidden());
+  }
+
+  @Test
+  public void materialize() {
+    // Materializing a view virtualizes all objects up front, and navigating
+    // afterwards returns the same objects
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'N'"
+        + "                  :eStructuralFeatures [(EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass N = (EClass) P.getEClassifier("N");
+    ((EReference) N.getEStructuralFeature("children")).setContainment(true);
+
+    // Two trees of 1 + 10 + 100 nodes
+    Resource r = new ResourceImpl();
+    for (int t = 0; t < 2; ++t) {
+      EObject root = P.getEFactoryInstance().create(N);
+      for (int i = 0; i < 10; ++i) {
+        EObject child = P.getEFactoryInstance().create(N);
+        eList(root, "children").add(child);
+        for (int j = 0; j < 10; ++j) {
+          eList(child, "children").add(P.getEFactoryInstance().create(N));
+        }
+      }
+      r.getContents().add(root);
+    }
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    Viewpoint viewpoint = new Viewpoint(m);
+
+    // Parallel materialization needs a sealed viewpoint
+    try {
+      new View(viewpoint, Arrays.asList(r)).materialize(4);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+
+    viewpoint.seal();
+    View view = new View(viewpoint, Arrays.asList(r));
+    View.MaterializeStats stats = view.materialize(4);
+    assertEquals(222, stats.objects);
+    assertEquals(222, view.getCacheSize());
+
+    // Materialized objects are not evicted
+    System.gc();
+    assertEquals(222, view.getCacheSize());
+    assertEquals(0, view.getCacheEvictions());
+
+    // Navigation gives the materialized objects
+    int visited = 0;
+    for (EObject root : view.getVirtualContents()) {
+      ++visited;
+      TreeIterator<EObject> it = root.eAllContents();
+      while (it.hasNext()) {
+        EObject v = it.next();
+        assertSame(v, view.getVirtual(((VirtualEObject) v).getConcreteEObject()));
+        ++visited;
+      }
+    }
+    assertEquals(222, visited);
+    assertEquals(222, view.getCacheSize());
+  }
+
+  @Test
+  public void materializeInheritedFeatures() {
+    // Materialization runs the match rules of inherited virtual features too
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [(EClass :name 'A') (EClass :name 'B')])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass A = (EClass) P.getEClassifier("A");
+    EClass B = (EClass) P.getEClassifier("B");
+    B.getESuperTypes().add(A);
+
+    WeavingModel vwm = (WeavingModel) Sexp2EMF.build("(WeavingModel :name 'WM' "
+        + ":contributingModels [(ContributingModel :URI '00'"
+        + "                      :concreteElements [#1(ConcreteConcept :path 'A')])]"
+        + ":virtualLinks [(VirtualAssociation :name 'assoc' :source @1 :target @1"
+        + "                                   :lowerBound 0 :upperBound -1)])",
+        VirtualLinksFactory.eINSTANCE)[0];
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+
+    Resource r = new ResourceImpl();
+    EObject a = P.getEFactoryInstance().create(A);
+    EObject b = P.getEFactoryInstance().create(B);
+    r.getContents().add(a);
+    r.getContents().add(b);
+
+    List<EObject> matched = new ArrayList<>();
+    View view = new View(new Viewpoint(m, vwm), Arrays.asList(r)) {
+      @Override
+      public List<EObject> getMatchesForRule(String ruleName, EObject param, boolean rightHand) {
+        if (ruleName.equals("assoc")) {
+          matched.add(param);
+        }
+        return super.getMatchesForRule(ruleName, param, rightHand);
+      }
+    };
+    view.materialize(1);
+
+    // The feature is declared by A, and inherited by B
+    assertEquals(2, matched.size());
+    assertEquals(new HashSet<>(Arrays.asList(a, b)), new HashSet<>(matched));
+    view.getVirtual(b).eGet(view.getVirtual(b).eClass().getEStructuralFeature("assoc"));
+    assertEquals(2, matched.size());
+  }
+
+  @Test
+  public void materializeDeepTree() {
+    // Materializing a deep containment chain does not overflow the stack
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'N'"
+        + "                  :eStructuralFeatures [(EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass N = (EClass) P.getEClassifier("N");
+    ((EReference) N.getEStructuralFeature("children")).setContainment(true);
+
+    // A chain of nodes, with a leaf on the side of each
+    int depth = 100_000;
+    Resource r = new ResourceImpl();
+    EObject node = P.getEFactoryInstance().create(N);
+    r.getContents().add(node);
+    for (int i = 1; i < depth; ++i) {
+      EObject child = P.getEFactoryInstance().create(N);
+      if (i % 2 == 0) {
+        eList(node, "children").add(P.getEFactoryInstance().create(N));
+      }
+      eList(node, "children").add(child);
+      node = child;
+    }
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    Viewpoint viewpoint = new Viewpoint(m);
+    viewpoint.seal();
+    View view = new View(viewpoint, Arrays.asList(r));
+    assertEquals(depth + (depth - 1) / 2, view.materialize(4).objects);
+  }
+
+  @Test
+  public void bulkBuild() {
+    // Links of a view weaving model are applied in bulk, but each source gets
+    // its targets in the order of the weaving model
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [(EClass :name 'A')])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass A = (EClass) P.getEClassifier("A");
+
+    WeavingModel vwm = (WeavingModel) Sexp2EMF.build("(WeavingModel :name 'WM' "
+        + ":contributingModels [(ContributingModel :URI '00'"
+        + "                      :concreteElements [#1(ConcreteConcept :path 'A')])]"
+        + ":virtualLinks [(VirtualAssociation :name 'assoc' :source @1 :target @1"
+        + "                                   :lowerBound 0 :upperBound -1)])",
+        VirtualLinksFactory.eINSTANCE)[0];
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    Viewpoint viewpoint = new Viewpoint(m, vwm);
+
+    int n = 100;
+    Resource r = new ResourceImpl();
+    for (int i = 0; i < n; ++i) {
+      r.getContents().add(P.getEFactoryInstance().create(A));
+    }
+
+    // Each object links to the next two, with the links of different sources
+    // interleaved
+    VirtualLinksFactory f = VirtualLinksFactory.eINSTANCE;
+    WeavingModel wm = f.createWeavingModel();
+    ContributingModel cm = f.createContributingModel();
+    cm.setURI("00");
+    wm.getContributingModels().add(cm);
+    List<ConcreteConcept> elems = new ArrayList<>();
+    for (int i = 0; i < n; ++i) {
+      ConcreteConcept c = f.createConcreteConcept();
+      c.setPath(r.getURIFragment(r.getContents().get(i)));
+      cm.getConcreteElements().add(c);
+      elems.add(c);
+    }
+    for (int d = 1; d <= 2; ++d) {
+      for (int i = 0; i < n; ++i) {
+        VirtualAssociation a = f.createVirtualAssociation();
+        a.setName("assoc");
+        a.setSource(elems.get(i));
+        a.setTarget(elems.get((i + d) % n));
+        wm.getVirtualLinks().add(a);
+      }
+    }
+
+    View view = new View(viewpoint, Arrays.asList(r), wm);
+
+    for (int i = 0; i < n; ++i) {
+      EObject v = view.getVirtual(r.getContents().get(i));
+      assertEquals(Arrays.asList(view.getVirtual(r.getContents().get((i + 1) % n)),
+                                 view.getVirtual(r.getContents().get((i + 2) % n))),
+                   eList(v, "assoc"));
+    }
+
+    View.BuildStats stats = view.getBuildStats();
+    assertFalse(stats.streamed);
+    assertEquals(0, stats.properties);
+    assertEquals(2 * n, stats.associations);
+    assertEquals(0, stats.filters);
+    assertEquals(n, stats.paths);
+  }
+
+  @Test
+  public void streamedWeavingModel() throws IOException {
+    // The weaving model of a view is applied as it is read, whether its links
+    // refer to concrete elements by path or by ID
+
+    for (String path : Arrays.asList("views/minimal-assoc/view.eview",
+                                     "views/minimal-assoc/view-ids.eview")) {
+      View v = loadView(path);
+      View.BuildStats stats = v.getBuildStats();
+      assertTrue(stats.streamed);
+      assertEquals(1, stats.associations);
+      assertEquals(2, stats.paths);
+
+      EList<EObject> l = v.getVirtualContents();
+      assertEquals(l.get(1), eGet(l.get(0), "assoc"));
+    }
+  }
+
+  @Test
+  public void binaryWeavingModel() throws IOException {
+    // Weaving models survive a round-trip through the binary format, and
+    // viewpoints and views can load them in place of XMI
+
+    WeavingModel wm = (WeavingModel) Sexp2EMF.build(
+      "(WeavingModel :name 'WM' :whitelist true "
+      + ":contributingModels [(ContributingModel :URI 'P0'"
+      + "                      :concreteElements [#A(ConcreteConcept :path 'A')"
+      + "                                         #R(ConcreteAssociation :path 'A/r')"
+      + "                                         #E(ConcreteElement :path 'A/x')])]"
+      + ":virtualLinks [(VirtualConcept :name 'B' :superConcepts [@A] :subConcepts [@C])"
+      + "               #C(VirtualConcept :name 'C')"
+      + "               (VirtualProperty :name 'prop' :parent @C :type 'String' :optional true)"
+      + "               (VirtualAssociation :name 'assoc' :source @A :target @C"
+      + "                :lowerBound 1 :upperBound -1 :opposite @R :composition true)"
+      + "               (Filter :name 'x' :target @E)])",
+      VirtualLinksFactory.eINSTANCE)[0];
+
+    File bin = File.createTempFile("weaving", ".bin");
+    try {
+      try (OutputStream out = new FileOutputStream(bin)) {
+        BinaryWeavingModel.write(wm, out);
+      }
+      URI uri = URI.createFileURI(bin.getAbsolutePath());
+      assertTrue(BinaryWeavingModel.isBinary(uri));
+      assertTrue(EcoreUtil.equals(wm, BinaryWeavingModel.read(uri)));
+    } finally {
+      bin.delete();
+    }
+
+    // XMI files are not binary
+    assertFalse(BinaryWeavingModel.isBinary(resourceURI("views/minimal-assoc/weaving.xmi")));
+
+    // Convert the weaving models of a viewpoint and of a view
+    String vpPath = "viewpoints/minimal-assoc/viewpoint-bin.eviewpoint";
+    String vPath = "views/minimal-assoc/view-bin.eview";
+    BinaryWeavingModel.convert(resourceURI("viewpoints/minimal-assoc/weaving.xmi"),
+                               resourceURI("viewpoints/minimal-assoc/weaving.bin"));
+    BinaryWeavingModel.convert(resourceURI("views/minimal-assoc/weaving.xmi"),
+                               resourceURI("views/minimal-assoc/weaving.bin"));
+
+    Properties p = new Properties();
+    p.setProperty(ViewpointResource.EVIEWPOINT_CONTRIBUTING_METAMODELS,
+                  "A::../../metamodels/minimalA.ecore,B::../../metamodels/minimalB.ecore");
+    p.setProperty(ViewpointResource.EVIEWPOINT_WEAVING_MODEL, "weaving.bin");
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vpPath)), null);
+
+    p = new Properties();
+    p.setProperty(ViewResource.EVIEW_VIEWPOINT, "../../" + vpPath);
+    p.setProperty(ViewResource.EVIEW_CONTRIBUTING_MODELS,
+                  "A::../../models/minimalA.xmi,B::../../models/minimalB.xmi");
+    p.setProperty(ViewResource.EVIEW_WEAVING_MODEL, "weaving.bin");
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vPath)), null);
+
+    try {
+      View v = loadView(vPath);
+      assertTrue(v.getBuildStats().streamed);
+      assertEquals(1, v.getBuildStats().associations);
+
+      EList<EObject> l = v.getVirtualContents();
+      assertEquals(l.get(1), eGet(l.get(0), "assoc"));
+    } finally {
+      for (String path : Arrays.asList(vpPath, vPath,
+                                       "viewpoints/minimal-assoc/weaving.bin",
+                                       "views/minimal-assoc/weaving.bin")) {
+        new File(here + "/resources/" + path).delete();
+      }
+    }
+  }
+
+  @Test
+  public void associationStore() {
+    // Links of many-valued virtual associations can be kept in a store rather
+    // than in lists of virtual objects.  Navigation gives the same values, but
+    // building the view does not virtualize the linked objects.
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [(EClass :name 'A') (EClass :name 'B')])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass A = (EClass) P.getEClassifier("A");
+    EClass B = (EClass) P.getEClassifier("B");
+
+    WeavingModel vwm = (WeavingModel) Sexp2EMF.build("(WeavingModel :name 'WM' "
+        + ":contributingModels [(ContributingModel :URI '00'"
+        + "                      :concreteElements [#1(ConcreteConcept :path 'A')"
+        + "                                         #2(ConcreteConcept :path 'B')])]"
+        + ":virtualLinks [#3(VirtualAssociation :name 'bs' :source @1 :target @2"
+        + "                                     :lowerBound 0 :upperBound -1 :opposite @4)"
+        + "               #4(VirtualAssociation :name 'as' :source @2 :target @1"
+        + "                                     :lowerBound 0 :upperBound -1 :opposite @3)])",
+        VirtualLinksFactory.eINSTANCE)[0];
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    Viewpoint viewpoint = new Viewpoint(m, vwm);
+
+    // n As, then n Bs
+    int n = 50;
+    Resource r = new ResourceImpl();
+    for (int i = 0; i < n; ++i) {
+      r.getContents().add(P.getEFactoryInstance().create(A));
+    }
+    for (int i = 0; i < n; ++i) {
+      r.getContents().add(P.getEFactoryInstance().create(B));
+    }
+
+    // Each A links to three Bs, and one B links back to an A
+    VirtualLinksFactory f = VirtualLinksFactory.eINSTANCE;
+    WeavingModel wm = f.createWeavingModel();
+    ContributingModel cm = f.createContributingModel();
+    cm.setURI("00");
+    wm.getContributingModels().add(cm);
+    List<ConcreteConcept> elems = new ArrayList<>();
+    for (EObject o : r.getContents()) {
+      ConcreteConcept c = f.createConcreteConcept();
+      c.setPath(r.getURIFragment(o));
+      cm.getConcreteElements().add(c);
+      elems.add(c);
+    }
+    for (int i = 0; i < n; ++i) {
+      for (int d = 0; d < 3; ++d) {
+        VirtualAssociation a = f.createVirtualAssociation();
+        a.setName("bs");
+        a.setSource(elems.get(i));
+        a.setTarget(elems.get(n + (i + d) % n));
+        wm.getVirtualLinks().add(a);
+      }
+    }
+    VirtualAssociation back = f.createVirtualAssociation();
+    back.setName("as");
+    back.setSource(elems.get(n));
+    back.setTarget(elems.get(1));
+    wm.getVirtualLinks().add(back);
+
+    View lists = new View(viewpoint, Arrays.asList(r), wm);
+    View stored = new View(viewpoint, Arrays.asList(r), wm, true);
+
+    assertNull(lists.getAssociationStore());
+    AssociationStore store = stored.getAssociationStore();
+    assertEquals(3 * n + 1, store.size());
+    // Each link is an int in each direction, off the heap
+    assertTrue(store.offHeapBytes() >= 8L * store.size());
+
+    // Lists retain both ends of every link, the store none
+    assertEquals(2 * n, lists.getCacheSize());
+    assertEquals(0, stored.getCacheSize());
+
+    // Same values in both views.  Links from the opposite side come last in
+    // the store, so the order can differ.
+    for (EObject o : r.getContents()) {
+      String feature = o.eClass() == A ? "bs" : "as";
+      List<EObject> expected = new ArrayList<>();
+      for (EObject v : eList(lists.getVirtual(o), feature)) {
+        expected.add(stored.getVirtual(((VirtualEObject) v).getConcreteEObject()));
+      }
+      List<EObject> actual = eList(stored.getVirtual(o), feature);
+      assertEquals(expected.size(), actual.size());
+      assertEquals(new HashSet<>(expected), new HashSet<>(actual));
+    }
+    assertEquals(4, eList(stored.getVirtual(r.getContents().get(n)), "as").size());
+    assertEquals(4, eList(stored.getVirtual(r.getContents().get(1)), "bs").size());
+
+    // Modifying a stored list gives it its own copy, still in sync with the
+    // opposite
+    EObject a0 = stored.getVirtual(r.getContents().get(0));
+    EObject b10 = stored.getVirtual(r.getContents().get(n + 10));
+    eList(a0, "bs").add(b10);
+    assertEquals(4, eList(a0, "bs").size());
+    assertSame(b10, eList(a0, "bs").get(3));
+    assertTrue(eList(b10, "as").contains(a0));
+    assertEquals(4, eList(b10, "as").size());
+  }
+
+  @Test
+  public void viewMaintenanceContents() {
+    // Changes to the containment trees of contributing models are reflected in
+    // the contents of virtual objects, and in the roots of the view
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'N'"
+        + "                  :eStructuralFeatures [(EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)"
+        + "                                        (EReference :name 'only' :eType @1)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass N = (EClass) P.getEClassifier("N");
+    EReference children = (EReference) N.getEStructuralFeature("children");
+    EReference only = (EReference) N.getEStructuralFeature("only");
+    children.setContainment(true);
+    only.setContainment(true);
+
+    Resource r = new ResourceImpl();
+    EObject root = P.getEFactoryInstance().create(N);
+    eList(root, "children").add(P.getEFactoryInstance().create(N));
+    r.getContents().add(root);
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    View view = new View(new Viewpoint(m), Arrays.asList(r));
+
+    EObject vRoot = view.getVirtualContents().get(0);
+    assertEquals(1, vRoot.eContents().size());
+
+    // Add to a many-valued containment
+    EObject c2 = P.getEFactoryInstance().create(N);
+    eList(root, "children").add(c2);
+    assertEquals(2, vRoot.eContents().size());
+    assertEquals(view.getVirtual(c2), vRoot.eContents().get(1));
+
+    // Set, then replace, a single-valued containment
+    EObject o1 = P.getEFactoryInstance().create(N);
+    root.eSet(only, o1);
+    assertEquals(3, vRoot.eContents().size());
+    assertEquals(view.getVirtual(o1), vRoot.eContents().get(2));
+    EObject o2 = P.getEFactoryInstance().create(N);
+    root.eSet(only, o2);
+    assertEquals(3, vRoot.eContents().size());
+    assertEquals(view.getVirtual(o2), vRoot.eContents().get(2));
+
+    // Move a child elsewhere
+    eList(o2, "children").add(c2);
+    assertEquals(2, vRoot.eContents().size());
+    assertEquals(Arrays.asList(view.getVirtual(c2)), view.getVirtual(o2).eContents());
+
+    // Add and remove roots
+    EObject root2 = P.getEFactoryInstance().create(N);
+    r.getContents().add(root2);
+    assertEquals(Arrays.asList(vRoot, view.getVirtual(root2)), view.getVirtualContents());
+    r.getContents().remove(root);
+    assertEquals(Arrays.asList(view.getVirtual(root2)), view.getVirtualContents());
+  }
+
+  @Test
+  public void viewMaintenanceMatchRules() throws Exception {
+    // Changing a concrete object resets the virtual features populated by
+    // match rules, on both sides of the match
+
+    try (CountExecutedRulesEclDelegate delegate = new CountExecutedRulesEclDelegate()) {
+      View v = loadView("views/lazy-rule/opposite.eview");
+
+      EList<EObject> c = v.getVirtualContents();
+      EObject A = c.get(0);
+      EObject B = c.get(1);
+
+      assertEquals(A, eGet(B, "refToA"));
+      assertEquals(B, eGet(A, "refToB"));
+      assertEquals(2, (int) delegate.executeCounter.get("refToB"));
+
+      EObject a = ((VirtualEObject) A).getConcreteEObject();
+      a.eSet(a.eClass().getEStructuralFeature("a"), false);
+
+      // Both features are matched again, once
+      assertEquals(A, eGet(B, "refToA"));
+      assertEquals(B, eGet(A, "refToB"));
+      assertEquals(A, eGet(B, "refToA"));
+      assertEquals(B, eGet(A, "refToB"));
+      assertEquals(4, (int) delegate.executeCounter.get("refToB"));
+    }
+
+    // Many-valued features are populated anew, without duplicates
+    try (CountExecutedRulesEclDelegate delegate = new CountExecutedRulesEclDelegate()) {
+      View v = loadView("views/lazy-rule/many-ref.eview");
+
+      EList<EObject> c = v.getVirtualContents();
+      EObject A = c.get(0);
+      EObject B = c.get(1);
+
+      assertEquals(Arrays.asList(B), eGet(A, "manyB"));
+      EObject a = ((VirtualEObject) A).getConcreteEObject();
+      a.eSet(a.eClass().getEStructuralFeature("a"), false);
+      assertEquals(Arrays.asList(B), eGet(A, "manyB"));
+      assertEquals(2, (int) delegate.executeCounter.get("manyB"));
+    }
+  }
+
+  @Test
+  public void viewMaintenanceRulesOnly() {
+    // Changing a concrete object resets the virtual features that have a match
+    // rule, but not the others, and disposing of the view detaches its
+    // trackers
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [(EClass :name 'A'"
+        + "                :eStructuralFeatures [(EAttribute :name 'x' :eType EInt)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass A = (EClass) P.getEClassifier("A");
+
+    WeavingModel vwm = (WeavingModel) Sexp2EMF.build("(WeavingModel :name 'WM' "
+        + ":contributingModels [(ContributingModel :URI '00'"
+        + "                      :concreteElements [#1(ConcreteConcept :path 'A')])]"
+        + ":virtualLinks [(VirtualAssociation :name 'matched' :source @1 :target @1"
+        + "                                   :lowerBound 0 :upperBound -1)"
+        + "               (VirtualAssociation :name 'byHand' :source @1 :target @1"
+        + "                                   :lowerBound 0 :upperBound -1)])",
+        VirtualLinksFactory.eINSTANCE)[0];
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+
+    Resource r = new ResourceImpl();
+    EObject a = P.getEFactoryInstance().create(A);
+    EObject b = P.getEFactoryInstance().create(A);
+    r.getContents().add(a);
+    r.getContents().add(b);
+
+    // Each object matches the other for 'matched'
+    AtomicInteger executed = new AtomicInteger();
+    View view = new View(new Viewpoint(m, vwm), Arrays.asList(r)) {
+      @Override
+      public boolean hasMatchRules() {
+        return true;
+      }
+
+      @Override
+      public boolean hasMatchRule(String ruleName) {
+        return ruleName.equals("matched");
+      }
+
+      @Override
+      public List<EObject> getMatchesForRule(String ruleName, EObject param, boolean rightHand) {
+        executed.incrementAndGet();
+        return Arrays.asList(param == a ? b : a);
+      }
+    };
+
+    EObject va = view.getVirtual(a);
+    EObject vb = view.getVirtual(b);
+    eList(va, "byHand").add(va);
+    assertEquals(Arrays.asList(vb), eList(va, "matched"));
+    assertEquals(1, executed.get());
+
+    // Only the feature with a rule is matched again
+    a.eSet(A.getEStructuralFeature("x"), 1);
+    assertEquals(Arrays.asList(va), eList(va, "byHand"));
+    assertEquals(Arrays.asList(vb), eList(va, "matched"));
+    assertEquals(2, executed.get());
+
+    // Trackers are only attached to objects with a rule feature initialized
+    assertFalse(a.eAdapters().isEmpty());
+    assertTrue(b.eAdapters().isEmpty());
+    view.dispose();
+    assertTrue(a.eAdapters().isEmpty());
+  }
+
+  @Test
+  public void parallelModelLoading() throws IOException {
+    // Contributing models are loaded concurrently, but the view does not depend
+    // on the order in which the loads finish
+
+    ViewResource v1 = new ViewResource(resourceURI("views/three-model-composition/view.eview"));
+    v1.load(null);
+    assertNoErrors(v1);
+
+    // Load times are reported for each model, in the order of the eview file
+    assertEquals(Arrays.asList("cfw", "bpmn", "reqif"),
+                 new ArrayList<>(v1.getModelLoadNanos().keySet()));
+    for (long t : v1.getModelLoadNanos().values()) {
+      assertTrue(t > 0);
+    }
+
+    ViewResource v2 = new ViewResource(resourceURI("views/three-model-composition/view.eview"));
+    v2.load(null);
+    assertNoErrors(v2);
+
+    List<String> names1 = v1.getContents().stream()
+        .map(o -> o.eClass().getName()).collect(Collectors.toList());
+    List<String> names2 = v2.getContents().stream()
+        .map(o -> o.eClass().getName()).collect(Collectors.toList());
+    assertEquals(names1, names2);
+
+    v1.unload();
+    assertTrue(v1.getModelLoadNanos().isEmpty());
+  }
+
+  @Test
+  public void lazyModelLoading() throws IOException {
+    // With the lazyModels key, the view is created without waiting for its
+    // contributing models, and waits for each one when it first needs it
+
+    String vPath = "views/minimal-assoc/view-lazy.eview";
+    Properties p = new Properties();
+    p.setProperty(ViewResource.EVIEW_VIEWPOINT, "../../viewpoints/minimal-assoc/viewpoint.eviewpoint");
+    p.setProperty(ViewResource.EVIEW_CONTRIBUTING_MODELS,
+                  "A::../../models/minimalA.xmi,B::../../models/minimalB.xmi");
+    p.setProperty(ViewResource.EVIEW_WEAVING_MODEL, "weaving.xmi");
+    p.setProperty(ViewResource.EVIEW_LAZY_MODELS, "true");
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vPath)), null);
+
+    try {
+      // Same view as when loading the models first
+      ViewResource lazy = new ViewResource(resourceURI(vPath));
+      lazy.load(null);
+      assertNoErrors(lazy);
+      View eager = loadView("views/minimal-assoc/view.eview");
+      EList<EObject> l = lazy.getContents();
+      assertEquals(eager.getVirtualContents().size(), l.size());
+      assertEquals(l.get(1), eGet(l.get(0), "assoc"));
+      lazy.unload();
+
+      // A model that cannot be loaded is reported once the view reaches its
+      // roots, and left out of the contents
+      p.setProperty(ViewResource.EVIEW_CONTRIBUTING_MODELS,
+                    "A::../../models/minimalA.xmi,B::../../models/missing.xmi");
+      p.remove(ViewResource.EVIEW_WEAVING_MODEL);
+      p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vPath)), null);
+
+      ViewResource missing = new ViewResource(resourceURI(vPath));
+      missing.load(null);
+      assertNoErrors(missing);
+      Resource A = missing.getView().getContributingModels().get(0);
+      assertEquals(1, A.getContents().size());
+
+      // The roots of A do not wait for B
+      Iterator<EObject> it = missing.getContents().iterator();
+      assertTrue(it.hasNext());
+      assertEquals(A.getContents().get(0), ((VirtualEObject) it.next()).getConcreteEObject());
+      assertNoErrors(missing);
+
+      // Reaching B reports it, only once
+      assertFalse(it.hasNext());
+      assertEquals(1, missing.getErrors().size());
+      for (int i = 0; i < 2; ++i) {
+        assertEquals(1, missing.getContents().size());
+        assertEquals(1, missing.getErrors().size());
+      }
+      missing.unload();
+    } finally {
+      new File(here + "/resources/" + vPath).delete();
+    }
+
+    // Match rules wait for all the models
+    vPath = "views/three-model-composition/view-lazy.eview";
+    p = new Properties();
+    p.load(URIConverter.INSTANCE.createInputStream(resourceURI("views/three-model-composition/view.eview")));
+    p.setProperty(ViewResource.EVIEW_LAZY_MODELS, "true");
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vPath)), null);
+
+    try {
+      ViewResource lazy = new ViewResource(resourceURI(vPath));
+      lazy.load(null);
+      assertNoErrors(lazy);
+
+      // The detailed process for "Booking a trip" links to a BPMN process
+      EObject ea = lazy.getContents().stream()
+        .filter(o -> "EnterpriseArchitecture".equals(o.eClass().getName())).findFirst().get();
+      EObject dp = (EObject) eGet(ea.eContents().get(1).eContents().get(0), "detailedProcess");
+      assertNotNull(dp);
+      assertEquals("bpmn2", eGet(dp.eClass().eContainer(), "name"));
+      assertNoErrors(lazy);
+      lazy.unload();
+    } finally {
+      new File(here + "/resources/" + vPath).delete();
+    }
+  }
+
+  @Test
+  public void sharedModels() throws IOException {
+    // Models acquired from a model cache are loaded once and shared, until
+    // their file changes or they are evicted
+
+    EPackage A = (EPackage) new ResourceSetImpl()
+      .getResource(resourceURI("metamodels/minimalA.ecore"), true).getContents().get(0);
+    ModelCache cache = new ModelCache(1);
+
+    File f = File.createTempFile("minimalA", ".xmi");
+    try {
+      Files.copy(new File(here + "/resources/models/minimalA.xmi").toPath(), f.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING);
+      URI uri = URI.createFileURI(f.getAbsolutePath());
+
+      Resource r1 = cache.acquire(uri, A);
+      assertSame(r1, cache.acquire(uri, A));
+      assertEquals(2, cache.getReferences(r1));
+      assertEquals(1, cache.getStats().loads);
+      assertEquals(1, cache.getStats().hits);
+
+      // Released models stay in the cache
+      cache.release(r1);
+      cache.release(r1);
+      assertEquals(0, cache.getReferences(r1));
+      assertEquals(1, cache.size());
+      assertSame(r1, cache.acquire(uri, A));
+
+      // A changed file is loaded again
+      assertTrue(f.setLastModified(f.lastModified() + 10_000));
+      Resource r2 = cache.acquire(uri, A);
+      assertNotSame(r1, r2);
+      assertEquals(1, cache.getStats().invalidations);
+
+      // Evicted models are not shared anymore
+      assertEquals(1, cache.evict(uri));
+      Resource r3 = cache.acquire(uri, A);
+      assertNotSame(r2, r3);
+
+      // Views with another instance of the metamodel get their own copy
+      EPackage A2 = (EPackage) new ResourceSetImpl()
+        .getResource(resourceURI("metamodels/minimalA.ecore"), true).getContents().get(0);
+      Resource r4 = cache.acquire(uri, A2);
+      assertNotSame(r3, r4);
+      assertEquals(0, cache.getReferences(r4));
+    } finally {
+      f.delete();
+    }
+
+    // Views with the sharedModels key use the same models, and release them
+    // when unloaded
+    String vPath = "views/minimal-assoc/view-shared.eview";
+    Properties p = new Properties();
+    p.setProperty(ViewResource.EVIEW_VIEWPOINT, "../../viewpoints/minimal-assoc/viewpoint.eviewpoint");
+    p.setProperty(ViewResource.EVIEW_CONTRIBUTING_MODELS,
+                  "A::../../models/minimalA.xmi,B::../../models/minimalB.xmi");
+    p.setProperty(ViewResource.EVIEW_WEAVING_MODEL, "weaving.xmi");
+    p.setProperty(ViewResource.EVIEW_SHARED_MODELS, "true");
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vPath)), null);
+
+    try {
+      ViewResource v1 = new ViewResource(resourceURI(vPath));
+      v1.load(null);
+      assertNoErrors(v1);
+      ViewResource v2 = new ViewResource(resourceURI(vPath));
+      v2.load(null);
+      assertNoErrors(v2);
+
+      List<Resource> models = v1.getView().getContributingModels();
+      assertEquals(new HashSet<>(models), new HashSet<>(v2.getView().getContributingModels()));
+      for (Resource r : models) {
+        assertEquals(2, ViewResource.modelCache.getReferences(r));
+      }
+
+      v1.unload();
+      v2.unload();
+      for (Resource r : models) {
+        assertEquals(0, ViewResource.modelCache.getReferences(r));
+      }
+    } finally {
+      new File(here + "/resources/" + vPath).delete();
+      ViewResource.modelCache.evict(resourceURI("models/minimalA.xmi"));
+      ViewResource.modelCache.evict(resourceURI("models/minimalB.xmi"));
+    }
+  }
+
+  @Test
+  public void binaryResourceCache() throws IOException {
+    // With the binaryCache keys, metamodels and models are saved in binary form
+    // next to their files, and read from there on later loads
+
+    String vpPath = "viewpoints/minimal-assoc/viewpoint-binary.eviewpoint";
+    String vPath = "views/minimal-assoc/view-binary.eview";
+    List<String> sidecars = Arrays.asList("metamodels/minimalA.ecore.binary",
+                                          "metamodels/minimalB.ecore.binary",
+                                          "models/minimalA.xmi.binary",
+                                          "models/minimalB.xmi.binary");
+
+    Properties p = new Properties();
+    p.setProperty(ViewpointResource.EVIEWPOINT_CONTRIBUTING_METAMODELS,
+                  "A::../../metamodels/minimalA.ecore,B::../../metamodels/minimalB.ecore");
+    p.setProperty(ViewpointResource.EVIEWPOINT_WEAVING_MODEL, "weaving.xmi");
+    p.setProperty(ViewpointResource.EVIEWPOINT_BINARY_CACHE, "true");
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vpPath)), null);
+
+    p = new Properties();
+    p.setProperty(ViewResource.EVIEW_VIEWPOINT, "../../" + vpPath);
+    p.setProperty(ViewResource.EVIEW_CONTRIBUTING_MODELS,
+                  "A::../../models/minimalA.xmi,B::../../models/minimalB.xmi");
+    p.setProperty(ViewResource.EVIEW_WEAVING_MODEL, "weaving.xmi");
+    p.setProperty(ViewResource.EVIEW_BINARY_CACHE, "true");
+    p.store(URIConverter.INSTANCE.createOutputStream(resourceURI(vPath)), null);
+
+    try {
+      // The first load writes the sidecars
+      View v1 = loadView(vPath);
+      for (String path : sidecars) {
+        assertTrue(path, new File(here + "/resources/" + path).exists());
+      }
+      // Sidecars are written to temporary files, and moved in place
+      for (String dir : Arrays.asList("metamodels", "models")) {
+        String[] tmp = new File(here + "/resources/" + dir).list((d, name) -> name.endsWith(".tmp"));
+        assertEquals(0, tmp.length);
+      }
+
+      // The second load reads them, and gets the same view
+      View v2 = loadView(vPath);
+      EList<EObject> l = v2.getVirtualContents();
+      assertEquals(v1.getVirtualContents().size(), l.size());
+      assertEquals(l.get(1), eGet(l.get(0), "assoc"));
+      assertTrue(eGet(l.get(0), "a") instanceof Boolean);
+
+      // Models read from a sidecar still have the URI of their source
+      for (Resource r : v2.getContributingModels()) {
+        assertTrue(r.getURI().toString().endsWith(".xmi"));
+        assertTrue(r.isLoaded());
+      }
+
+      // Corrupt sidecars are ignored and rebuilt
+      File f = new File(here + "/resources/models/minimalA.xmi.binary");
+      long length = f.length();
+      try (OutputStream out = new FileOutputStream(f)) {
+        out.write(new byte[] { 1, 2, 3 });
+      }
+      View v3 = loadView(vPath);
+      assertEquals(v1.getVirtualContents().size(), v3.getVirtualContents().size());
+      assertEquals(length, f.length());
+    } finally {
+      for (String path : sidecars) {
+        new File(here + "/resources/" + path).delete();
+      }
+      for (String path : Arrays.asList(vpPath, vPath)) {
+        new File(here + "/resources/" + path).delete();
+      }
+    }
+  }
+
+  @Test
+  public void lazyEContentsListContract() {
+    // The contents of virtual objects behave as an unmodifiable EList, with
+    // elements in the order of the containment features
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'N'"
+        + "                  :eStructuralFeatures [(EReference :name 'first' :eType @1)"
+        + "                                        (EReference :name 'none' :eType @1"
+        + "                                                    :upperBound -1)"
+        + "                                        (EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)"
+        + "                                        (EReference :name 'last' :eType @1)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass N = (EClass) P.getEClassifier("N");
+    for (EReference ref : N.getEReferences()) {
+      ref.setContainment(true);
+    }
+
+    EObject root = P.getEFactoryInstance().create(N);
+    root.eSet(N.getEStructuralFeature("first"), P.getEFactoryInstance().create(N));
+    for (int i = 0; i < 3; ++i) {
+      eList(root, "children").add(P.getEFactoryInstance().create(N));
+    }
+    Resource r = new ResourceImpl();
+    r.getContents().add(root);
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    View view = new View(new Viewpoint(m), Arrays.asList(r));
+
+    EObject vRoot = view.getVirtual(root);
+    EList<EObject> l = vRoot.eContents();
+    List<EObject> expected = root.eContents().stream()
+        .<EObject>map(view::getVirtual).collect(Collectors.toList());
+    assertEquals(4, expected.size());
+
+    // Access
+    assertEquals(4, l.size());
+    assertFalse(l.isEmpty());
+    for (int i = 0; i < expected.size(); ++i) {
+      assertSame(expected.get(i), l.get(i));
+    }
+    for (int i : new int[] { -1, 4 }) {
+      try {
+        l.get(i);
+        fail("Expected IndexOutOfBoundsException");
+      } catch (IndexOutOfBoundsException ex) {
+        // expected
+      }
+    }
+
+    // Iteration
+    Iterator<EObject> it = l.iterator();
+    for (EObject o : expected) {
+      assertTrue(it.hasNext());
+      assertSame(o, it.next());
+    }
+    assertFalse(it.hasNext());
+    try {
+      it.next();
+      fail("Expected NoSuchElementException");
+    } catch (NoSuchElementException ex) {
+      // expected
+    }
+    ListIterator<EObject> li = l.listIterator(4);
+    for (int i = 3; i >= 0; --i) {
+      assertEquals(i, li.previousIndex());
+      assertSame(expected.get(i), li.previous());
+    }
+    assertFalse(li.hasPrevious());
+
+    // Equality and copies
+    assertEquals(expected, l);
+    assertEquals(l, expected);
+    assertEquals(expected.hashCode(), l.hashCode());
+    assertEquals(expected, new ArrayList<>(l));
+    assertEquals(expected.subList(1, 3), l.subList(1, 3));
+    assertTrue(Arrays.equals(expected.toArray(), l.toArray()));
+    assertTrue(Arrays.equals(expected.toArray(), l.toArray(new EObject[0])));
+
+    // Searches
+    for (int i = 0; i < expected.size(); ++i) {
+      EObject o = expected.get(i);
+      assertTrue(l.contains(o));
+      assertEquals(i, l.indexOf(o));
+      assertEquals(i, l.lastIndexOf(o));
+    }
+    assertTrue(l.containsAll(expected));
+    assertFalse(l.contains(vRoot));
+    assertFalse(l.contains(null));
+    assertFalse(l.contains(root.eContents().get(0))); // the concrete object
+    assertEquals(-1, l.indexOf(vRoot));
+    assertEquals(-1, l.lastIndexOf(vRoot));
+
+    // Basic methods are the same, since there are no proxies
+    InternalEList<EObject> il = (InternalEList<EObject>) l;
+    assertSame(expected.get(2), il.basicGet(2));
+    assertEquals(2, il.basicIndexOf(expected.get(2)));
+    assertTrue(il.basicContains(expected.get(2)));
+    assertEquals(expected, il.basicList());
+    assertTrue(Arrays.equals(expected.toArray(), il.basicToArray()));
+
+    // The list cannot be modified
+    for (Runnable op : Arrays.<Runnable>asList(() -> l.add(vRoot),
+                                               () -> l.remove(0),
+                                               () -> l.set(0, vRoot),
+                                               () -> l.clear(),
+                                               () -> l.move(0, 1))) {
+      try {
+        op.run();
+        fail("Expected UnsupportedOperationException");
+      } catch (UnsupportedOperationException ex) {
+        // expected
+      }
+    }
+
+    // Offsets follow changes to the concrete object
+    EObject c2 = root.eContents().get(2);
+    eList(root, "children").remove(c2);
+    root.eSet(N.getEStructuralFeature("last"), c2);
+    assertEquals(4, l.size());
+    assertEquals(3, l.indexOf(view.getVirtual(c2)));
+    assertSame(view.getVirtual(c2), l.get(3));
+    assertSame(expected.get(3), l.get(2));
+  }
+
+  @Test
+  public void virtualContentsIterator() {
+    // eAllContents of virtual objects visits the same objects as a traversal
+    // of eContents, but never virtualizes hidden objects nor their contents
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'N'"
+        + "                  :eStructuralFeatures [(EReference :name 'first' :eType @1)"
+        + "                                        (EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass N = (EClass) P.getEClassifier("N");
+    for (EReference ref : N.getEReferences()) {
+      ref.setContainment(true);
+    }
+
+    // A tree of depth 3, with 3 children per node and a first child
+    EObject root = P.getEFactoryInstance().create(N);
+    List<EObject> level = Arrays.asList(root);
+    for (int d = 0; d < 3; ++d) {
+      List<EObject> next = new ArrayList<>();
+      for (EObject o : level) {
+        EObject first = P.getEFactoryInstance().create(N);
+        o.eSet(N.getEStructuralFeature("first"), first);
+        next.add(first);
+        for (int i = 0; i < 3; ++i) {
+          EObject c = P.getEFactoryInstance().create(N);
+          eList(o, "children").add(c);
+          next.add(c);
+        }
+      }
+      level = next;
+    }
+    Resource r = new ResourceImpl();
+    r.getContents().add(root);
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    View view = new View(new Viewpoint(m), Arrays.asList(r));
+    EObject hidden = root.eContents().get(2);
+    view.setHidden(hidden, true);
+    view.setHidden(root.eContents().get(0).eContents().get(0), true);
+
+    EObject vRoot = view.getVirtual(root);
+    List<EObject> visited = new ArrayList<>();
+    TreeIterator<EObject> it = vRoot.eAllContents();
+    while (it.hasNext()) {
+      visited.add(it.next());
+    }
+
+    // Only the visited objects were virtualized
+    assertEquals(visited.size() + 1, view.getCacheSize());
+    assertFalse(visited.contains(view.getVirtual(hidden)));
+    for (EObject o : hidden.eContents()) {
+      assertFalse(visited.contains(view.getVirtual(o)));
+    }
+
+    // Same objects in the same order as eContents
+    List<EObject> expected = new ArrayList<>();
+    Iterator<EObject> preorder = EcoreUtil.<EObject>getAllContents(vRoot.eContents(), false);
+    while (preorder.hasNext()) {
+      expected.add(preorder.next());
+    }
+    assertEquals(expected, visited);
+    // 84 objects, minus two hidden subtrees of 5 and 21
+    assertEquals(84 - 5 - 21, visited.size());
+
+    // Subtrees can be pruned
+    it = vRoot.eAllContents();
+    int n = 0;
+    while (it.hasNext()) {
+      it.next();
+      it.prune();
+      ++n;
+    }
+    assertEquals(vRoot.eContents().size(), n);
+
+    // The resource of a view iterates the same way
+    ViewResource vr = new ViewResource();
+    vr.setView(view);
+    List<EObject> all = new ArrayList<>();
+    vr.getAllContents().forEachRemaining(all::add);
+    assertSame(vRoot, all.get(0));
+    assertEquals(visited, all.subList(1, all.size()));
+  }
+
+  @Test
+  public void viewStreams() {
+    // Views stream their visible objects in the order of eAllContents,
+    // sequentially or in parallel
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'N'"
+        + "                  :eStructuralFeatures [(EReference :name 'first' :eType @2)"
+        + "                                        (EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)])"
+        + "               #2(EClass :name 'M')])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass N = (EClass) P.getEClassifier("N");
+    EClass M = (EClass) P.getEClassifier("M");
+    for (EReference ref : N.getEReferences()) {
+      ref.setContainment(true);
+    }
+
+    // A tree of N of depth 4, with 3 children per node, and an M in each N
+    EObject root = P.getEFactoryInstance().create(N);
+    List<EObject> level = Arrays.asList(root);
+    for (int d = 0; d <= 4; ++d) {
+      List<EObject> next = new ArrayList<>();
+      for (EObject o : level) {
+        o.eSet(N.getEStructuralFeature("first"), P.getEFactoryInstance().create(M));
+        for (int i = 0; d < 4 && i < 3; ++i) {
+          EObject c = P.getEFactoryInstance().create(N);
+          eList(o, "children").add(c);
+          next.add(c);
+        }
+      }
+      level = next;
+    }
+    Resource r = new ResourceImpl();
+    r.getContents().add(root);
+
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    Viewpoint viewpoint = new Viewpoint(m);
+    View view = new View(viewpoint, Arrays.asList(r));
+    // Hide a subtree of 40 N and 40 M
+    view.setHidden(eList(root, "children").get(1), true);
+
+    EObject vRoot = view.getVirtualContents().get(0);
+    List<EObject> expected = new ArrayList<>();
+    expected.add(vRoot);
+    vRoot.eAllContents().forEachRemaining(expected::add);
+    assertEquals(242 - 80, expected.size());
+
+    assertEquals(expected, view.stream().collect(Collectors.toList()));
+    EClass vN = vRoot.eClass();
+    EClass vM = ((EObject) eGet(vRoot, "first")).eClass();
+    assertEquals(81, view.stream(vN).count());
+    assertEquals(81, view.stream(vM).count());
+
+    // Parallel streams need a sealed viewpoint
+    try {
+      view.parallelStream();
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+      // expected
+    }
+    viewpoint.seal();
+
+    // Parallel streams keep the encounter order, and see the same objects
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(expected, view.parallelStream().collect(Collectors.toList()));
+      assertEquals(expected.stream().filter(vM::isInstance).collect(Collectors.toList()),
+                   view.parallelStream(vM).collect(Collectors.toList()));
+    }
+
+    // Splitting by subtree covers all objects exactly once
+    Spliterator<EObject> s1 = view.stream().spliterator();
+    Spliterator<EObject> s0 = s1.trySplit();
+    assertNotNull(s0);
+    Spliterator<EObject> s2 = s1.trySplit();
+    assertNotNull(s2);
+    List<EObject> split = new ArrayList<>();
+    s0.forEachRemaining(split::add);
+    s2.forEachRemaining(split::add);
+    s1.forEachRemaining(split::add);
+    assertEquals(expected, split);
+  }
+
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Helpers for dealing with EMF resources and packages
 
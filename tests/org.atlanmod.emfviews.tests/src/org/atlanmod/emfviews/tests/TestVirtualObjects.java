@@ -25,7 +25,9 @@ import static org.junit.Assert.fail;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.eclipse.emf.common.util.BasicEList;
 import org.eclipse.emf.common.util.EList;
 import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EClass;
@@ -55,6 +57,7 @@ import org.atlanmod.emfviews.elements.VirtualEObject;
 import org.atlanmod.emfviews.elements.VirtualEPackage;
 import org.atlanmod.emfviews.elements.VirtualEReference;
 import org.atlanmod.emfviews.elements.VirtualEStructuralFeature;
+import org.atlanmod.emfviews.util.ModificationCounter;
 import org.atlanmod.sexp2emf.Sexp2EMF;
 
 //Fix the run order since Eclipse is incapable of doing that for the output.
@@ -335,7 +338,7 @@ public class TestVirtualObjects {
     assertTrue(getClassifier(VP, "A").isPresent());
     assertTrue(getClassifier(VP, "B").isPresent());
 
-    ((VirtualEClassifier<?>) getClassifier(VP, "A").get()).filtered = true;
+    ((VirtualEClassifier<?>) getClassifier(VP, "A").get()).setFiltered(true);
 
     assertFalse(getClassifier(VP, "A").isPresent());
     assertTrue(getClassifier(VP, "B").isPresent());
@@ -378,7 +381,7 @@ public class TestVirtualObjects {
       assertEquals(2, eGet(Do, "b"));
 
       // But once we filter out a feature, dynamic object is lost
-      ((VirtualEStructuralFeature<?>) getFeature(VA, "a").get()).filtered = true;
+      ((VirtualEStructuralFeature<?>) getFeature(VA, "a").get()).setFiltered(true);
 
       // We should get 2, but we get null, because the feature "b" now has index 0
       // in the eSettings object of dynamic object.
@@ -412,7 +415,7 @@ public class TestVirtualObjects {
     assertEquals(1, eGet(VO, "a"));
 
     // Filter the first feature
-    ((VirtualEStructuralFeature<?>) getFeature(VA, "a").get()).filtered = true;
+    ((VirtualEStructuralFeature<?>) getFeature(VA, "a").get()).setFiltered(true);
 
     // We can still access the non-filtered feature 'b', through different means
     assertEquals(2, VO.eGet(Vb));
@@ -544,7 +547,7 @@ public class TestVirtualObjects {
     assertTrue(getFeature(VA, "a2").isPresent());
 
     // Filter the first one
-    ((VirtualEStructuralFeature<?>) getFeature(VA, "a").get()).filtered = true;
+    ((VirtualEStructuralFeature<?>) getFeature(VA, "a").get()).setFiltered(true);
 
     // Now you can't see it
     assertEquals(Optional.empty(), getFeature(VA, "a"));
@@ -644,6 +647,175 @@ public class TestVirtualObjects {
     assertEquals(Arrays.asList(vb1, vb3), eList(va, "manyB"));
   }
 
+  @Test
+  public void filteredListStaysCurrent() {
+    // A list of visible objects should follow the objects being hidden or
+    // shown, and the changes to its concrete list
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' " +
+      ":eClassifiers [(EClass :name 'A'" +
+      "                       :eStructuralFeatures [(EReference :name 'manyB' :eType @B :upperBound -1)])" +
+      "               #B(EClass :name 'B')" +
+      "])", EcoreFactory.eINSTANCE)[0];
+
+    EClass A = (EClass) P.getEClassifier("A");
+    EClass B = (EClass) P.getEClassifier("B");
+
+    EObject a = EcoreUtil.create(A);
+    EObject b1 = EcoreUtil.create(B);
+    EObject b2 = EcoreUtil.create(B);
+    EObject b3 = EcoreUtil.create(B);
+    eList(a, "manyB").addAll(Arrays.asList(b1, b2, b3));
+
+    VirtualEObject va = view.getVirtual(a);
+    VirtualEObject vb1 = view.getVirtual(b1);
+    VirtualEObject vb2 = view.getVirtual(b2);
+    VirtualEObject vb3 = view.getVirtual(b3);
+    vb2.setHidden(true);
+
+    // Hold on to the same list throughout
+    EList<EObject> list = eList(va, "manyB");
+    assertEquals(Arrays.asList(vb1, vb3), list);
+
+    // Showing an object again
+    vb2.setHidden(false);
+    assertEquals(Arrays.asList(vb1, vb2, vb3), list);
+
+    // Hiding another one
+    vb1.setHidden(true);
+    assertEquals(Arrays.asList(vb2, vb3), list);
+
+    // Replacing an element of the concrete list keeps its size
+    EObject b4 = EcoreUtil.create(B);
+    eList(a, "manyB").set(1, b4);
+    assertEquals(Arrays.asList(view.getVirtual(b4), vb3), list);
+
+    // Removing from the concrete list
+    eList(a, "manyB").remove(b3);
+    assertEquals(Arrays.asList(view.getVirtual(b4)), list);
+    assertEquals(1, list.size());
+
+    try {
+      list.get(1);
+      fail("Expected IndexOutOfBoundsException");
+    } catch (IndexOutOfBoundsException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void filteredListWithoutNotifications() {
+    // A list of visible objects over a list that does not notify is not
+    // scanned on each access, but still follows its changes
+
+    int n = 1000;
+    AtomicInteger reads = new AtomicInteger();
+    EList<EObject> concrete = new BasicEList<EObject>() {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      public EObject get(int index) {
+        reads.incrementAndGet();
+        return super.get(index);
+      }
+    };
+    for (int i = 0; i < n; ++i) {
+      concrete.add(EcoreUtil.create(B));
+    }
+    view.getVirtual(concrete.get(0)).setHidden(true);
+
+    EList<EObject> list = view.getVirtual(concrete);
+    reads.set(0);
+    int visited = 0;
+    for (EObject o : list) {
+      assertFalse(((VirtualEObject) o).isHidden());
+      ++visited;
+    }
+    assertEquals(n - 1, visited);
+    assertTrue(reads.get() < 4 * n);
+
+    // Replacing an element
+    EObject b = EcoreUtil.create(B);
+    concrete.set(1, b);
+    assertEquals(view.getVirtual(b), list.get(0));
+
+    // Showing one again, and removing another
+    view.getVirtual(concrete.get(0)).setHidden(false);
+    concrete.remove(2);
+    assertEquals(n - 1, list.size());
+    assertEquals(view.getVirtual(concrete.get(2)), list.get(2));
+  }
+
+  @Test
+  public void disposeDetachesAdapters() {
+    // Disposing of a view removes the adapters it attached to the concrete
+    // objects
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' " +
+      ":eClassifiers [#A(EClass :name 'A'" +
+      "                       :eStructuralFeatures [(EReference :name 'manyA' :eType @A :upperBound -1)])" +
+      "])", EcoreFactory.eINSTANCE)[0];
+
+    EClass A = (EClass) P.getEClassifier("A");
+    ((EReference) A.getEStructuralFeature("manyA")).setContainment(true);
+
+    EObject a = EcoreUtil.create(A);
+    EObject a1 = EcoreUtil.create(A);
+    EObject a2 = EcoreUtil.create(A);
+    eList(a, "manyA").addAll(Arrays.asList(a1, a2));
+
+    view.getVirtual(a1).setHidden(true);
+    VirtualEObject va = view.getVirtual(a);
+    assertEquals(1, eList(va, "manyA").size());
+    assertEquals(1, va.eContents().size());
+    assertTrue(a.eAdapters().stream().anyMatch(x -> x instanceof ModificationCounter));
+
+    view.dispose();
+    assertTrue(a.eAdapters().isEmpty());
+  }
+
+  @Test
+  public void hideWithoutVirtualizing() {
+    // Hidden objects are skipped without creating their virtual counterpart
+
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' " +
+      ":eClassifiers [(EClass :name 'A'" +
+      "                       :eStructuralFeatures [(EReference :name 'manyB' :eType @B :upperBound -1)])" +
+      "               #B(EClass :name 'B')" +
+      "])", EcoreFactory.eINSTANCE)[0];
+
+    EClass A = (EClass) P.getEClassifier("A");
+    EClass B = (EClass) P.getEClassifier("B");
+
+    EObject a = EcoreUtil.create(A);
+    EObject b1 = EcoreUtil.create(B);
+    EObject b2 = EcoreUtil.create(B);
+    EObject b3 = EcoreUtil.create(B);
+    eList(a, "manyB").addAll(Arrays.asList(b1, b2, b3));
+
+    view.setHidden(b2, true);
+    assertTrue(view.isHidden(b2));
+    assertEquals(0, view.getCacheSize());
+
+    // The size of a filtered list is known without virtualizing its elements
+    VirtualEObject va = view.getVirtual(a);
+    EList<EObject> list = eList(va, "manyB");
+    assertEquals(2, list.size());
+    assertEquals(1, view.getCacheSize());
+
+    // And only visible elements get virtualized
+    EObject vb1 = list.get(0);
+    EObject vb3 = list.get(1);
+    assertEquals(3, view.getCacheSize());
+
+    // The virtual object agrees with the view
+    VirtualEObject vb2 = view.getVirtual(b2);
+    assertTrue(vb2.isHidden());
+    vb2.setHidden(false);
+    assertFalse(view.isHidden(b2));
+    assertEquals(Arrays.asList(vb1, vb2, vb3), list);
+  }
+
   @Test
   public void addSuperclass() {
     // Create a virtual class that has a virtual class as subclass
@@ -670,7 +842,7 @@ public class TestVirtualObjects {
     assertEquals(1, VS.getESuperTypes().size());
 
     // Filter the superclass it through its package
-    viewpoint.getVirtual(A).filtered = true;
+    viewpoint.getVirtual(A).setFiltered(true);
 
     assertEquals(0, VS.getESuperTypes().size());
   }
@@ -692,6 +864,36 @@ public class TestVirtualObjects {
     assertTrue(VSup.isSuperTypeOf(VA));
   }
 
+  @Test
+  public void isSuperTypeOfFilteredIntermediate() {
+    // With A <- S <- T, filtering S should maintain A <- T
+
+    EClass T = EcoreFactory.eINSTANCE.createEClass();
+    T.setName("T");
+    T.getESuperTypes().add(S);
+    P.getEClassifiers().add(T);
+
+    VirtualEClass VA = viewpoint.getVirtual(A);
+    VirtualEClass VS = viewpoint.getVirtual(S);
+    VirtualEClass VT = viewpoint.getVirtual(T);
+
+    assertTrue(VA.isSuperTypeOf(VT));
+    assertTrue(VS.isSuperTypeOf(VT));
+    assertFalse(VT.isSuperTypeOf(VA));
+
+    VS.setFiltered(true);
+    assertTrue(VA.isSuperTypeOf(VT));
+    assertFalse(VS.isSuperTypeOf(VT));
+    assertEquals(Arrays.asList(VA), VT.getEAllSuperTypes());
+
+    // Supertypes added to the concrete classes are picked up
+    EClass U = EcoreFactory.eINSTANCE.createEClass();
+    U.setName("U");
+    P.getEClassifiers().add(U);
+    A.getESuperTypes().add(U);
+    assertTrue(viewpoint.getVirtual(U).isSuperTypeOf(VT));
+  }
+
   @Test
   public void inheritVirtualFeatures() {
     // If a superclass has a virtual feature, it should appear in the eAllFeature feature
@@ -864,6 +1066,130 @@ public class TestVirtualObjects {
     assertTrue(dt.getEPackage() instanceof VirtualEPackage);
   }
 
+  @Test
+  public void lookupByName() {
+    // Looking up features and classifiers by name should follow filtering and
+    // virtual additions.
+
+    VirtualEPackage VP = viewpoint.getVirtual(P);
+    VirtualEClass VS = viewpoint.getVirtual(S);
+
+    EStructuralFeature Va = VS.getEStructuralFeature("a");
+    EStructuralFeature Vs = VS.getEStructuralFeature("s");
+    assertEquals(viewpoint.getVirtual(a), Va);
+    assertEquals(viewpoint.getVirtual(s), Vs);
+    assertNull(VS.getEStructuralFeature("nope"));
+    assertEquals(Va, VS.getEStructuralFeature(VS.getFeatureID(Va)));
+    assertEquals(Vs, VS.getEStructuralFeature(VS.getFeatureID(Vs)));
+
+    // Filtering an inherited feature hides it from the subclass
+    viewpoint.getVirtual(a).setFiltered(true);
+    assertNull(VS.getEStructuralFeature("a"));
+    assertEquals(-1, VS.getFeatureID(Va));
+    assertEquals(0, VS.getFeatureID(Vs));
+
+    // Virtual features added to the superclass are found
+    EAttribute b = EcoreFactory.eINSTANCE.createEAttribute();
+    b.setName("b");
+    b.setEType(EcorePackage.Literals.EINT);
+    VirtualEAttribute Vb = viewpoint.getVirtual(b);
+    viewpoint.getVirtual(A).addVirtualFeature(Vb);
+    assertEquals(Vb, VS.getEStructuralFeature("b"));
+
+    // Filtered classifiers are not found, virtual ones are
+    viewpoint.getVirtual(B).setFiltered(true);
+    assertNull(VP.getEClassifier("B"));
+    assertEquals(VS, VP.getEClassifier("S"));
+
+    EClass c = EcoreFactory.eINSTANCE.createEClass();
+    c.setName("C");
+    VirtualEClass Vc = viewpoint.getVirtual(c);
+    assertNull(VP.getEClassifier("C"));
+    VP.addVirtualClassifier(Vc);
+    assertEquals(Vc, VP.getEClassifier("C"));
+  }
+
+  @Test
+  public void concreteFeatureMapping() {
+    // Virtual objects should find the concrete features of their concrete
+    // object, even when the concrete or virtual classes change after access.
+
+    EObject o = EcoreUtil.create(S);
+    o.eSet(a, 1);
+    o.eSet(s, "s");
+    VirtualEObject Vo = view.getVirtual(o);
+
+    assertEquals(1, eGet(Vo, "a"));
+    assertEquals("s", eGet(Vo, "s"));
+
+    // Add a concrete feature to the superclass, after the mapping is built
+    EAttribute a2 = EcoreFactory.eINSTANCE.createEAttribute();
+    a2.setName("a2");
+    a2.setEType(EcorePackage.Literals.EINT);
+    A.getEStructuralFeatures().add(a2);
+    o.eSet(a2, 2);
+
+    assertEquals(1, eGet(Vo, "a"));
+    assertEquals(2, eGet(Vo, "a2"));
+    assertEquals("s", eGet(Vo, "s"));
+
+    // Filter a feature, shifting the virtual feature IDs
+    viewpoint.getVirtual(a).setFiltered(true);
+    assertEquals(2, Vo.eGet(0, false, false));
+    assertEquals("s", Vo.eGet(1, false, false));
+
+    // Virtual features do not delegate to the concrete object
+    EAttribute v = EcoreFactory.eINSTANCE.createEAttribute();
+    v.setName("v");
+    v.setEType(EcorePackage.Literals.EINT);
+    viewpoint.getVirtual(S).addVirtualFeature(viewpoint.getVirtual(v));
+    Vo.eSet(2, 3);
+    assertEquals(3, Vo.eGet(2, false, false));
+    assertEquals(2, eGet(Vo, "a2"));
+    assertTrue(Vo.eIsSet(viewpoint.getVirtual(S).getEStructuralFeature("a2")));
+  }
+
+  @Test
+  public void virtualValueSlots() {
+    // Virtual values should stay attached to their feature when virtual
+    // features are added or filtered after the values are set.
+
+    VirtualEClass VA = viewpoint.getVirtual(A);
+    EObject o = EcoreUtil.create(A);
+    VirtualEObject Vo = view.getVirtual(o);
+
+    EAttribute x = EcoreFactory.eINSTANCE.createEAttribute();
+    x.setName("x");
+    x.setEType(EcorePackage.Literals.EINT);
+    VirtualEAttribute Vx = viewpoint.getVirtual(x);
+    VA.addVirtualFeature(Vx);
+    Vo.eSet(Vx, 1);
+
+    EAttribute y = EcoreFactory.eINSTANCE.createEAttribute();
+    y.setName("y");
+    y.setEType(EcorePackage.Literals.EINT);
+    VirtualEAttribute Vy = viewpoint.getVirtual(y);
+    VA.addVirtualFeature(Vy);
+    assertNull(eGet(Vo, "y"));
+    Vo.eSet(Vy, 2);
+
+    // Filtering 'x' shifts the ID of 'y', but not its value
+    Vx.setFiltered(true);
+    assertEquals(2, eGet(Vo, "y"));
+
+    // And the value of 'x' comes back with it
+    Vx.setFiltered(false);
+    assertEquals(1, eGet(Vo, "x"));
+    assertEquals(2, eGet(Vo, "y"));
+
+    // Other objects of the class start out unset
+    VirtualEObject Vo2 = view.getVirtual(EcoreUtil.create(A));
+    assertNull(eGet(Vo2, "x"));
+    Vo2.eSet(Vy, 3);
+    assertEquals(3, eGet(Vo2, "y"));
+    assertEquals(2, eGet(Vo, "y"));
+  }
+
   // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
   // Helpers for reducing the boilerplate of calling the reflective EMF API
 
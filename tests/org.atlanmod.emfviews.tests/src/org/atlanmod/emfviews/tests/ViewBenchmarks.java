@@ -0,0 +1,471 @@
+/*******************************************************************************
+ * Copyright (c) 2019 Armines
+ *
+ * This program and the accompanying materials are made available under the
+ * terms of the Eclipse Public License 2.0 which is available at
+ * https://www.eclipse.org/legal/epl-2.0/
+ *
+ * This Source Code may also be made available under the following Secondary
+ * Licenses when the conditions for such availability set forth in the Eclipse
+ * Public License, v. 2.0 are satisfied: GNU General Public License, version 3
+ * which is available at https://www.gnu.org/licenses/gpl-3.0.txt
+ *
+ * Contributors:
+ *   fmdkdd - initial API and implementation
+ *******************************************************************************/
+
+package org.atlanmod.emfviews.tests;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EPackage;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EcoreFactory;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.resource.impl.ResourceImpl;
+import org.eclipse.emf.ecore.resource.impl.ResourceSetImpl;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+import org.junit.FixMethodOrder;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runners.MethodSorters;
+
+import org.atlanmod.emfviews.core.View;
+import org.atlanmod.emfviews.core.ViewResource;
+import org.atlanmod.emfviews.core.Viewpoint;
+import org.atlanmod.emfviews.core.ViewpointResource;
+import org.atlanmod.emfviews.elements.VirtualContentsIterator;
+import org.atlanmod.emfviews.virtuallinks.ConcreteConcept;
+import org.atlanmod.emfviews.virtuallinks.ContributingModel;
+import org.atlanmod.emfviews.virtuallinks.VirtualAssociation;
+import org.atlanmod.emfviews.virtuallinks.VirtualLinksFactory;
+import org.atlanmod.emfviews.virtuallinks.WeavingModel;
+import org.atlanmod.sexp2emf.Sexp2EMF;
+
+/**
+ * Memory and time measurements of views on large models.  These take minutes
+ * and only print their results, so they are not run with the tests.  Run them
+ * by hand with a fixed heap (e.g., -Xms4g -Xmx4g) for comparable numbers.
+ */
+@Ignore("Benchmarks, run by hand")
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class ViewBenchmarks {
+
+  private static final int N = 200_000;
+  private static final Path EXAMPLES = Paths.get("../../examples");
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Virtual values
+
+  @Test
+  public void slotsMemory() {
+    // Per-object overhead of virtual objects, before and after they get
+    // virtual values
+
+    EPackage P = flatPackage();
+    Resource r = flatModel(P, N);
+    View view = new View(assocViewpoint(P), Arrays.asList(r));
+
+    long base = usedMemory();
+    List<EObject> virtuals = new ArrayList<>(N);
+    for (EObject o : r.getContents()) {
+      virtuals.add(view.getVirtual(o));
+    }
+    report("virtual objects", usedMemory() - base, N, "object");
+
+    base = usedMemory();
+    for (EObject v : virtuals) {
+      eList(v, "assoc").size();
+    }
+    report("read empty feature", usedMemory() - base, N, "object");
+
+    base = usedMemory();
+    for (int i = 0; i < N; ++i) {
+      eList(virtuals.get(i), "assoc").add(virtuals.get((i + 1) % N));
+    }
+    report("one virtual link", usedMemory() - base, N, "object");
+
+    if (view.getCacheSize() != N) {
+      throw new AssertionError();
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Virtual associations
+
+  @Test
+  public void associationStore() {
+    // Building and navigating many-valued virtual associations, kept in lists
+    // of virtual objects, or in an AssociationStore
+
+    int degree = 5;
+    EPackage P = flatPackage();
+    Resource r = flatModel(P, N);
+    Viewpoint viewpoint = assocViewpoint(P);
+    WeavingModel wm = linksModel(r, degree);
+
+    for (boolean store : new boolean[] {false, true}) {
+      String name = store ? "store" : "lists";
+      long base = usedMemory();
+      long start = System.nanoTime();
+      View view = new View(viewpoint, Arrays.asList(r), wm, store);
+      report(name + ": build", System.nanoTime() - start);
+      report(name + ": heap", usedMemory() - base, N * degree, "link");
+      if (store) {
+        report(name + ": off-heap", view.getAssociationStore().offHeapBytes(), N * degree, "link");
+      }
+
+      long[] links = new long[1];
+      report(name + ": navigate", time(2, 5, () -> {
+        for (EObject o : r.getContents()) {
+          for (EObject t : eList(view.getVirtual(o), "assoc")) {
+            links[0] += t != null ? 1 : 0;
+          }
+        }
+      }));
+      if (links[0] != 7L * N * degree) {
+        throw new AssertionError();
+      }
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Iterating over contents
+
+  @Test
+  public void contentsIterator() {
+    // Going through all the contents of a view that hides a quarter of its
+    // subtrees, with VirtualContentsIterator or with the generic tree
+    // iterator over eContents
+
+    EPackage P = treePackage();
+    Resource r = new ResourceImpl();
+    List<EObject> hidden = new ArrayList<>();
+    EClass A = (EClass) P.getEClassifier("A");
+    for (int i = 0; i < 1000; ++i) {
+      EObject root = P.getEFactoryInstance().create(A);
+      for (int j = 0; j < 20; ++j) {
+        EObject child = P.getEFactoryInstance().create(A);
+        for (int k = 0; k < 10; ++k) {
+          eList(child, "children").add(P.getEFactoryInstance().create(A));
+        }
+        eList(root, "children").add(child);
+        if (j % 4 == 0) {
+          hidden.add(child);
+        }
+      }
+      r.getContents().add(root);
+    }
+    int visible = 1000 * (1 + 15 * 11);
+
+    for (boolean generic : new boolean[] {true, false}) {
+      String name = generic ? "eContents" : "VirtualContentsIterator";
+      View view = new View(assocViewpoint(P), Arrays.asList(r));
+      for (EObject o : hidden) {
+        view.setHidden(o, true);
+      }
+      Supplier<Iterator<EObject>> contents = generic
+        ? () -> EcoreUtil.getAllContents(view.getVirtualContents(), false)
+        : () -> new VirtualContentsIterator(view.getVirtualContents());
+
+      // The first pass virtualizes the objects it visits.  The cache holds
+      // them weakly, so count them before they are collected.
+      long start = System.nanoTime();
+      int n = count(contents.get());
+      report(name + ": first pass", System.nanoTime() - start);
+      System.out.printf("%-30s %,12d virtual objects%n", name, view.getCacheSize());
+
+      report(name + ": next passes", time(2, 5, () -> count(contents.get())));
+      if (n != visible) {
+        throw new AssertionError(n);
+      }
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Loading the examples
+
+  @Test
+  public void loadTraceabilityDemo() throws IOException {
+    // The traceability demo, with each contributing model copied many times
+
+    Path dir = copyExample("traceability-demo");
+    try {
+      Path eview = dir.resolve("view/chain.eview");
+      scaleModels(eview, 1000);
+      loadTimes(eview);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  @Test
+  public void loadArtistUseCase() throws IOException {
+    // The class diagram and profile of the Artist use case, copied many times.
+    // The eview files of the example have absolute paths, so we write our own.
+
+    Path dir = copyExample("12_artist_use_case");
+    try {
+      String uml = "http://www.eclipse.org/uml2/4.0.0/UML";
+      Properties p = new Properties();
+      p.setProperty(ViewpointResource.EVIEWPOINT_CONTRIBUTING_METAMODELS,
+                    "app::" + uml + ",profile::" + uml);
+      store(p, dir.resolve("viewpoint/bench.eviewpoint"));
+
+      p = new Properties();
+      p.setProperty(ViewResource.EVIEW_VIEWPOINT, "../viewpoint/bench.eviewpoint");
+      p.setProperty(ViewResource.EVIEW_CONTRIBUTING_MODELS,
+                    "app::../models/petstore-app_class_diagram.uml,"
+                    + "profile::../models/petstore-app_profile.profile.uml");
+      Path eview = dir.resolve("view/bench.eview");
+      store(p, eview);
+
+      scaleModels(eview, 50);
+      loadTimes(eview);
+    } finally {
+      delete(dir);
+    }
+  }
+
+  // ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+  // Helpers
+
+  // A package with a single class A
+  static EPackage flatPackage() {
+    return (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [(EClass :name 'A')])",
+        EcoreFactory.eINSTANCE)[0];
+  }
+
+  // A package with a single class A, with containment children
+  static EPackage treePackage() {
+    EPackage P = (EPackage) Sexp2EMF.build("(EPackage :name 'P' :nsURI '00' :nsPrefix 'P0' "
+        + ":eClassifiers [#1(EClass :name 'A'"
+        + "                  :eStructuralFeatures [(EReference :name 'children' :eType @1"
+        + "                                                    :upperBound -1)])])",
+        EcoreFactory.eINSTANCE)[0];
+    EClass A = (EClass) P.getEClassifier("A");
+    ((EReference) A.getEStructuralFeature("children")).setContainment(true);
+    return P;
+  }
+
+  static Resource flatModel(EPackage P, int n) {
+    EClass A = (EClass) P.getEClassifier("A");
+    Resource r = new ResourceImpl();
+    for (int i = 0; i < n; ++i) {
+      r.getContents().add(P.getEFactoryInstance().create(A));
+    }
+    return r;
+  }
+
+  // A viewpoint on P, with a many-valued association 'assoc' from A to A
+  static Viewpoint assocViewpoint(EPackage P) {
+    WeavingModel vwm = (WeavingModel) Sexp2EMF.build("(WeavingModel :name 'WM' "
+        + ":contributingModels [(ContributingModel :URI '00'"
+        + "                      :concreteElements [#1(ConcreteConcept :path 'A')])]"
+        + ":virtualLinks [(VirtualAssociation :name 'assoc' :source @1 :target @1"
+        + "                                   :lowerBound 0 :upperBound -1)])",
+        VirtualLinksFactory.eINSTANCE)[0];
+    Map<String, EPackage> m = new HashMap<>();
+    m.put("P", P);
+    return new Viewpoint(m, vwm);
+  }
+
+  // A view weaving model linking each object of r to the next degree objects
+  static WeavingModel linksModel(Resource r, int degree) {
+    VirtualLinksFactory f = VirtualLinksFactory.eINSTANCE;
+    WeavingModel wm = f.createWeavingModel();
+    ContributingModel cm = f.createContributingModel();
+    cm.setURI("00");
+    wm.getContributingModels().add(cm);
+    List<ConcreteConcept> elems = new ArrayList<>();
+    for (EObject o : r.getContents()) {
+      ConcreteConcept c = f.createConcreteConcept();
+      c.setPath(r.getURIFragment(o));
+      cm.getConcreteElements().add(c);
+      elems.add(c);
+    }
+    int n = elems.size();
+    for (int i = 0; i < n; ++i) {
+      for (int d = 1; d <= degree; ++d) {
+        VirtualAssociation a = f.createVirtualAssociation();
+        a.setName("assoc");
+        a.setSource(elems.get(i));
+        a.setTarget(elems.get((i + d) % n));
+        wm.getVirtualLinks().add(a);
+      }
+    }
+    return wm;
+  }
+
+  // A copy of an example project in a temporary directory, so that benchmarks
+  // can change its files
+  static Path copyExample(String name) throws IOException {
+    Path from = EXAMPLES.resolve(name);
+    Path to = Files.createTempDirectory(name);
+    try (Stream<Path> files = Files.walk(from)) {
+      for (Path f : (Iterable<Path>) files::iterator) {
+        Path t = to.resolve(from.relativize(f).toString());
+        if (Files.isDirectory(f)) {
+          Files.createDirectories(t);
+        } else {
+          Files.copy(f, t, StandardCopyOption.REPLACE_EXISTING);
+        }
+      }
+    }
+    return to;
+  }
+
+  static void delete(Path dir) throws IOException {
+    try (Stream<Path> files = Files.walk(dir)) {
+      for (Path f : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(f);
+      }
+    }
+  }
+
+  static Properties properties(Path file) throws IOException {
+    Properties p = new Properties();
+    try (InputStream in = Files.newInputStream(file)) {
+      p.load(in);
+    }
+    return p;
+  }
+
+  static void store(Properties p, Path file) throws IOException {
+    try (OutputStream out = Files.newOutputStream(file)) {
+      p.store(out, null);
+    }
+  }
+
+  // Save the contributing models of the view in eview with their roots copied
+  // scale times over.  Links of the weaving model still point to the first
+  // copy, while match rules apply to all of them.
+  static void scaleModels(Path eview, int scale) throws IOException {
+    URI viewURI = URI.createFileURI(eview.toAbsolutePath().toString());
+    Properties p = properties(eview);
+    ViewpointResource vpr =
+      new ViewpointResource(URI.createURI(p.getProperty(ViewResource.EVIEW_VIEWPOINT)).resolve(viewURI));
+    vpr.load(null);
+    Map<String, EPackage> metamodels = vpr.getViewpoint().getContributingEPackages();
+
+    for (String model : p.getProperty(ViewResource.EVIEW_CONTRIBUTING_MODELS).split(",")) {
+      String[] parts = model.trim().split("::");
+      EPackage metamodel = metamodels.get(parts[0]);
+      ResourceSet rs = new ResourceSetImpl();
+      rs.getPackageRegistry().put(metamodel.getNsURI(), metamodel);
+      Resource r = rs.getResource(URI.createURI(parts[1]).resolve(viewURI), true);
+      List<EObject> roots = new ArrayList<>(r.getContents());
+      for (int i = 1; i < scale; ++i) {
+        r.getContents().addAll(EcoreUtil.copyAll(roots));
+      }
+      r.save(null);
+    }
+  }
+
+  // Time to load the view in eview, and to go through all its contents, when
+  // models are parsed from XMI, read from binary sidecars, or loaded lazily
+  static void loadTimes(Path eview) throws IOException {
+    Properties base = properties(eview);
+    Path variant = eview.resolveSibling("variant.eview");
+    URI uri = URI.createFileURI(variant.toAbsolutePath().toString());
+
+    String[][] variants = {
+      { "xmi (warmup)", null },
+      { "xmi", null },
+      { "binary (writes sidecars)", ViewResource.EVIEW_BINARY_CACHE },
+      { "binary (reads sidecars)", ViewResource.EVIEW_BINARY_CACHE },
+      { "lazy", ViewResource.EVIEW_LAZY_MODELS },
+    };
+    for (String[] v : variants) {
+      Properties p = new Properties();
+      p.putAll(base);
+      if (v[1] != null) {
+        p.setProperty(v[1], "true");
+      }
+      store(p, variant);
+
+      long start = System.nanoTime();
+      ViewResource vr = new ViewResource(uri);
+      vr.load(null);
+      long loaded = System.nanoTime();
+      int n = count(vr.getAllContents());
+      long iterated = System.nanoTime();
+      if (!vr.getErrors().isEmpty()) {
+        throw new AssertionError(vr.getErrors().get(0).getMessage());
+      }
+      vr.unload();
+
+      report(v[0] + ": load", loaded - start);
+      report(v[0] + ": load, iterate", iterated - start);
+      System.out.printf("%-30s %,12d objects%n", v[0], n);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  static EList<EObject> eList(EObject o, String feature) {
+    return (EList<EObject>) o.eGet(o.eClass().getEStructuralFeature(feature));
+  }
+
+  static int count(Iterator<?> it) {
+    int n = 0;
+    for (; it.hasNext(); it.next()) {
+      ++n;
+    }
+    return n;
+  }
+
+  // Heap in use, once the garbage collector has settled
+  static long usedMemory() {
+    Runtime rt = Runtime.getRuntime();
+    long used = Long.MAX_VALUE;
+    for (int i = 0; i < 5; ++i) {
+      System.gc();
+      used = Math.min(used, rt.totalMemory() - rt.freeMemory());
+    }
+    return used;
+  }
+
+  static void report(String what, long bytes, int n, String unit) {
+    System.out.printf("%-30s %,12d bytes  %8.1f bytes/%s%n", what, bytes, (double) bytes / n, unit);
+  }
+
+  static void report(String what, long nanos) {
+    System.out.printf("%-30s %,12d ms%n", what, nanos / 1_000_000);
+  }
+
+  // Best time of runs of task, in nanoseconds, after warmups
+  static long time(int warmups, int runs, Runnable task) {
+    for (int i = 0; i < warmups; ++i) {
+      task.run();
+    }
+    long best = Long.MAX_VALUE;
+    for (int i = 0; i < runs; ++i) {
+      long start = System.nanoTime();
+      task.run();
+      best = Math.min(best, System.nanoTime() - start);
+    }
+    return best;
+  }
+}